@@ -0,0 +1,274 @@
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.*;
+
+/**
+ * Benchmarks dos caminhos quentes do catálogo, das buscas e das playlists.
+ * Não há arquivo de build para trazer o JMH, então a medição é feita aqui mesmo:
+ * cada cenário tem rodadas de aquecimento (para o JIT compilar) e rodadas medidas
+ * de tempo fixo, e o resultado de cada operação é acumulado num campo volátil para
+ * o JIT não eliminar o trabalho.
+ *
+ * Os cenários e o formato da saída são os mesmos do "--benchmark" do
+ * Mini_Spotify_ChatGPT, para as duas implementações serem comparadas linha a linha.
+ * Saída: arvore;cenario;tamanho;ns_op_media;ns_op_melhor
+ *
+ * Uso: java BenchmarkCatalago [tamanhos] [filtro]
+ *   tamanhos: lista separada por vírgula (padrão 1000,100000,1000000)
+ *   filtro:   só os cenários cujo nome contém o texto (ex.: buscar)
+ * Catálogos de 10 milhões precisam de heap grande (ex.: -Xmx16g).
+ * Sobrecarga das métricas: rode o mesmo filtro em duas JVMs, uma delas com
+ * -Dminispotify.metricas=false (na mesma JVM o segundo cenário já pega o JIT aquecido).
+ */
+public class BenchmarkCatalago {
+    private static final int RODADAS_AQUECIMENTO = 3;
+    private static final int RODADAS_MEDIDAS = 5;
+    private static final long NANOS_POR_RODADA = 200_000_000L;
+    // Playlists maiores que isso não são realistas; o catálogo pode ser bem maior.
+    private static final int MAXIMO_PLAYLIST = 100_000;
+
+    // Playlists da carga sintética de edições
+    private static final int PLAYLISTS_CARGA = 1000;
+
+    // Cache pequeno dos cenários cache_zipf_*, para forçar despejos
+    private static final long CAPACIDADE_CACHE_ZIPF = 256L << 10;
+
+    // Recebe o resultado das operações medidas, para o JIT não descartá-las.
+    private static volatile long consumo;
+
+    private interface Operacao {
+        long executar(int i);
+    }
+
+    public static void main(String[] args) {
+        int[] tamanhos = Arrays.stream((args.length > 0 ? args[0] : "1000,100000,1000000").split(","))
+                .mapToInt(t -> Integer.parseInt(t.trim())).toArray();
+        String filtro = args.length > 1 ? args[1] : "";
+        System.out.println("arvore;cenario;tamanho;ns_op_media;ns_op_melhor");
+        for (int tamanho : tamanhos) {
+            executar(tamanho, filtro);
+        }
+    }
+
+    private static void executar(int tamanho, String filtro) {
+        List<Midia> midias = gerar(tamanho, 42);
+        Random aleatorio = new Random(7);
+
+        if (ativo("catalogo_adicionar", filtro)) {
+            // Monta o catálogo inteiro a cada operação; o resultado sai por item.
+            double[] porItem = medir(i -> {
+                Catalago catalogo = new Catalago();
+                for (Midia midia : midias) {
+                    catalogo.adicionarMidia(midia);
+                }
+                return catalogo.buscarPorGenero(Genero.ROCK).size();
+            });
+            imprimir("catalogo_adicionar", tamanho, porItem[0] / tamanho, porItem[1] / tamanho);
+        }
+
+        // Sem cache de consultas: as buscas medem os índices (o cache tem cenários próprios, no fim).
+        Catalago catalogo = montar(midias, new CacheConsultas(CacheConsultas.Politica.NENHUMA, 0));
+        int[] sorteados = aleatorio.ints(4096, 0, tamanho).toArray();
+
+        rodar("buscar_titulo", tamanho, filtro,
+                i -> catalogo.buscarPorTitulo(midias.get(sorteados[i & 4095]).getTitulo()).size());
+        // Referência: a busca linear que o catálogo fazia antes dos índices.
+        rodar("buscar_titulo_linear", tamanho, filtro, i -> {
+            String termo = Normalizador.normalizar(midias.get(sorteados[i & 4095]).getTitulo());
+            int achadas = 0;
+            for (Midia midia : midias) {
+                if (midia.getTituloNormalizado().equals(termo)) {
+                    achadas++;
+                }
+            }
+            return achadas;
+        });
+        rodar("buscar_artista", tamanho, filtro,
+                i -> catalogo.buscarPorArtista(midias.get(sorteados[i & 4095]).getArtista()).size());
+        // Custo do registro sozinho (contador + latência amostrada) menos o do laço de medição (referencia_vazia)
+        rodar("metricas_registro", tamanho, filtro, i -> {
+            long inicio = Metricas.iniciar(Metricas.Operacao.BUSCAR_TITULO);
+            Metricas.concluir(Metricas.Operacao.BUSCAR_TITULO, inicio);
+            return inicio;
+        });
+        rodar("referencia_vazia", tamanho, filtro, i -> i);
+        rodar("buscar_genero", tamanho, filtro,
+                i -> catalogo.buscarPorGenero(Genero.values()[i % Genero.values().length]).size());
+
+        int paginas = Math.max(1, tamanho / 50);
+        PrintStream saidaOriginal = System.out;
+        if (ativo("listar_pagina", filtro)) {
+            double[] r;
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+            try {
+                r = medir(i -> {
+                    catalogo.listarMidias(new SaidaConsole.Pagina(1 + sorteados[i & 4095] % paginas, 50));
+                    return i;
+                });
+            } finally {
+                System.setOut(saidaOriginal);
+            }
+            imprimir("listar_pagina", tamanho, r[0], r[1]);
+        }
+
+        int tamanhoPlaylist = Math.min(tamanho, MAXIMO_PLAYLIST);
+        Playlist playlist = new Playlist("bench");
+        for (int i = 0; i < tamanhoPlaylist; i++) {
+            playlist.adicionarMidia(midias.get(i));
+        }
+        Midia avulsa = new Musica("Fora da playlist", "Ninguém", 3.5, Genero.JAZZ);
+        rodar("playlist_adicionar_remover", tamanhoPlaylist, filtro, i -> {
+            playlist.adicionarMidia(avulsa);
+            playlist.removerMidia(avulsa);
+            return playlist.getQuantidadeMusicas();
+        });
+        rodar("playlist_contem", tamanhoPlaylist, filtro,
+                i -> playlist.contem(midias.get(sorteados[i & 4095] % tamanhoPlaylist)) ? 1 : 0);
+        rodar("playlist_duracao", tamanhoPlaylist, filtro, i -> (long) playlist.getDuracaoTotal());
+        // Referência: somar as durações percorrendo a playlist.
+        rodar("playlist_duracao_soma", tamanhoPlaylist, filtro, i -> {
+            double total = 0;
+            for (Midia midia : playlist.getMidias()) {
+                total += midia.getDuracao();
+            }
+            return (long) total;
+        });
+
+        rodar("normalizar", tamanho, filtro,
+                i -> Normalizador.normalizar(midias.get(sorteados[i & 4095]).getTitulo()).length());
+        StringBuilder sb = new StringBuilder(256);
+        rodar("formatar_midia", tamanho, filtro, i -> {
+            sb.setLength(0);
+            return midias.get(sorteados[i & 4095]).acrescentar(sb).length();
+        });
+        // Referência: a mesma linha montada com String.format.
+        rodar("formatar_string_format", tamanho, filtro, i -> {
+            Midia midia = midias.get(sorteados[i & 4095]);
+            return String.format("Música - Título: %s / Artista: %s / Gênero: (%s) / Duração: %s Minutos",
+                    midia.getTitulo(), midia.getArtista(), midia.getGenero(), midia.getDuracao()).length();
+        });
+
+        GeradorCarga gerador = new GeradorCarga(42, tamanho);
+        rodar("gerar_midia", tamanho, filtro, i -> gerador.midia(i % tamanho).getTitulo().length());
+        if (ativo("carga_playlists", filtro)) {
+            // Edições da carga sintética em PLAYLISTS_CARGA playlists; inclui o custo do gerador (ver gerar_midia).
+            Iterator<GeradorCarga.Acao> carga = gerador.carga(PLAYLISTS_CARGA, Long.MAX_VALUE);
+            Playlist[] playlists = new Playlist[PLAYLISTS_CARGA];
+            double[] r = medir(i -> aplicar(carga.next(), playlists, midias));
+            imprimir("carga_playlists", tamanho, r[0], r[1]);
+        }
+
+        medirCache(midias, tamanho, filtro);
+    }
+
+    /**
+     * Cenários do cache de consultas. buscar_genero_cache repete buscar_genero com o
+     * cache padrão (só acertos). cache_zipf_* misturam buscas por artistas
+     * populares (os artistas das mídias sorteadas seguem a Zipf do gerador) com 30%
+     * de títulos quase sempre inéditos, num cache pequeno (CAPACIDADE_CACHE_ZIPF)
+     * para haver despejos; a taxa de acertos de cada política sai no stderr.
+     */
+    private static void medirCache(List<Midia> midias, int tamanho, String filtro) {
+        if (ativo("buscar_genero_cache", filtro)) {
+            Catalago catalogo = montar(midias, new CacheConsultas(CacheConsultas.Politica.TINY_LFU, 8L << 20));
+            double[] r = medir(i -> catalogo.buscarPorGenero(Genero.values()[i % Genero.values().length]).size());
+            imprimir("buscar_genero_cache", tamanho, r[0], r[1]);
+        }
+        int[] sorteados = new Random(11).ints(1 << 16, 0, tamanho).toArray();
+        for (CacheConsultas.Politica politica : CacheConsultas.Politica.values()) {
+            String cenario = "cache_zipf_" + politica.name().toLowerCase(Locale.ROOT);
+            if (!ativo(cenario, filtro)) {
+                continue;
+            }
+            CacheConsultas cache = new CacheConsultas(politica, CAPACIDADE_CACHE_ZIPF);
+            Catalago catalogo = montar(midias, cache);
+            double[] r = medir(i -> {
+                Midia midia = midias.get(sorteados[i & 0xFFFF]);
+                return (i % 10 < 3 ? catalogo.buscarPorTitulo(midia.getTitulo()) : catalogo.buscarPorArtista(midia.getArtista())).size();
+            });
+            imprimir(cenario, tamanho, r[0], r[1]);
+            System.err.printf(Locale.ROOT, "# %s;%d: acertos %.1f%%, despejos %d%n", cenario, tamanho,
+                    100 * cache.getTaxaAcertos(), cache.getDespejos());
+        }
+    }
+
+    private static Catalago montar(List<Midia> midias, CacheConsultas cache) {
+        Catalago catalogo = new Catalago(cache);
+        for (Midia midia : midias) {
+            catalogo.adicionarMidia(midia);
+        }
+        return catalogo;
+    }
+
+    private static long aplicar(GeradorCarga.Acao acao, Playlist[] playlists, List<Midia> midias) {
+        switch (acao.getTipo()) {
+            case CRIAR_PLAYLIST:
+                playlists[acao.getPlaylist()] = new Playlist("carga " + acao.getPlaylist());
+                return 0;
+            case ADICIONAR:
+                playlists[acao.getPlaylist()].adicionarMidia(midias.get((int) acao.getMidia()));
+                return 1;
+            default:
+                // A Playlist ignora repetidas, então o tamanho real pode ser menor que o esperado pela carga.
+                List<Midia> itens = playlists[acao.getPlaylist()].getMidias();
+                if (itens.isEmpty()) {
+                    return 0;
+                }
+                playlists[acao.getPlaylist()].removerMidia(itens.get(acao.getPosicao() % itens.size()));
+                return 2;
+        }
+    }
+
+    // Catálogo do GeradorCarga (artistas em Zipf, gêneros e durações por tipo), em memória.
+    static List<Midia> gerar(int quantidade, long semente) {
+        List<Midia> midias = new ArrayList<>(quantidade);
+        for (Midia midia : new GeradorCarga(semente, quantidade)) {
+            midias.add(midia);
+        }
+        return midias;
+    }
+
+    private static boolean ativo(String cenario, String filtro) {
+        return cenario.contains(filtro);
+    }
+
+    private static void rodar(String cenario, int tamanho, String filtro, Operacao operacao) {
+        if (ativo(cenario, filtro)) {
+            double[] r = medir(operacao);
+            imprimir(cenario, tamanho, r[0], r[1]);
+        }
+    }
+
+    // Devolve {média, melhor} em ns por operação nas rodadas medidas.
+    private static double[] medir(Operacao operacao) {
+        for (int r = 0; r < RODADAS_AQUECIMENTO; r++) {
+            rodada(operacao);
+        }
+        double soma = 0;
+        double melhor = Double.MAX_VALUE;
+        for (int r = 0; r < RODADAS_MEDIDAS; r++) {
+            double ns = rodada(operacao);
+            soma += ns;
+            melhor = Math.min(melhor, ns);
+        }
+        return new double[] { soma / RODADAS_MEDIDAS, melhor };
+    }
+
+    // Repete a operação até passar NANOS_POR_RODADA (ao menos uma vez).
+    private static double rodada(Operacao operacao) {
+        long acumulado = 0;
+        int operacoes = 0;
+        long inicio = System.nanoTime();
+        long agora;
+        do {
+            acumulado += operacao.executar(operacoes++);
+            agora = System.nanoTime();
+        } while (agora - inicio < NANOS_POR_RODADA);
+        consumo += acumulado;
+        return (agora - inicio) / (double) operacoes;
+    }
+
+    private static void imprimir(String cenario, int tamanho, double media, double melhor) {
+        System.out.printf(Locale.ROOT, "corrigido;%s;%d;%.1f;%.1f%n", cenario, tamanho, media, melhor);
+    }
+}
@@ -0,0 +1,382 @@
+import java.util.*;
+import java.util.function.Predicate;
+
+/**
+ * Cache dos resultados das buscas do catálogo, pela consulta já normalizada
+ * (ex.: "genero:ROCK", "artista:queen"). O tamanho é limitado em bytes: cada
+ * entrada pesa uma estimativa da chave e da lista de resultados (as mídias em si
+ * são do catálogo e não contam).
+ *
+ * Políticas de despejo (-Dminispotify.cache=tinylfu|lru|nenhum, padrão tinylfu;
+ * -Dminispotify.cache.bytes, padrão 8 MB):
+ * - LRU: sai a entrada usada há mais tempo.
+ * - W-TinyLFU: uma janela LRU pequena (1%) recebe as entradas novas; quem sai dela
+ *   só entra na área principal (LRU segmentada: 20% em teste, 80% protegida) se foi
+ *   consultado mais vezes que a vítima que daria lugar, segundo um contador de
+ *   frequência aproximado (count-min de 4 linhas, reduzido à metade de tempos em
+ *   tempos). Assim uma varredura de consultas únicas não expulsa as populares.
+ *
+ * Invalidação: cada entrada diz de que chaves depende (ex.: "genero:ROCK", a
+ * primeira palavra da consulta) e qual o critério exato de uma mídia afetá-la.
+ * Ao incluir ou excluir uma mídia, o catálogo passa as chaves dela; só as entradas
+ * registradas nessas chaves são testadas, e só as que a mídia afeta são removidas.
+ *
+ * Como o Catalago, não é seguro para várias threads.
+ */
+public class CacheConsultas {
+    public enum Politica {
+        NENHUMA, LRU, TINY_LFU
+    }
+
+    private static final long PADRAO_BYTES = 8L << 20;
+    // Estimativa do peso fixo de uma entrada: nó, entrada do mapa, lista e dependências
+    private static final int PESO_ENTRADA = 160;
+    private static final int PESO_REFERENCIA = 4;
+    private static final int JANELA = 0, EM_TESTE = 1, PROTEGIDA = 2;
+
+    private final Politica politica;
+    private final long capacidade;
+    private final long capacidadeJanela;
+    private final long capacidadeProtegida;
+    // Entradas mais pesadas que isso não caberiam sem esvaziar o cache; não são guardadas
+    private final long maiorEntrada;
+    private final Map<String, No> entradas = new HashMap<>();
+    // Chave de dependência -> entradas que uma mídia com essa chave pode afetar
+    private final Map<String, Set<No>> porDependencia = new HashMap<>();
+    private final Fila[] filas = { new Fila(), new Fila(), new Fila() };
+    private final Frequencias frequencias;
+
+    private long acertos;
+    private long faltas;
+    private long despejos;
+    private long invalidacoes;
+
+    public CacheConsultas(Politica politica, long capacidadeBytes) {
+        this.politica = capacidadeBytes <= 0 ? Politica.NENHUMA : politica;
+        this.capacidade = this.politica == Politica.NENHUMA ? 0 : capacidadeBytes;
+        if (this.politica == Politica.TINY_LFU) {
+            this.capacidadeJanela = Math.max(1, capacidade / 100);
+            this.capacidadeProtegida = (capacidade - capacidadeJanela) * 8 / 10;
+            this.maiorEntrada = capacidade - capacidadeJanela;
+            this.frequencias = new Frequencias(capacidade);
+        } else {
+            // LRU: tudo fica na "janela", que ocupa o cache inteiro
+            this.capacidadeJanela = capacidade;
+            this.capacidadeProtegida = 0;
+            this.maiorEntrada = capacidade;
+            this.frequencias = null;
+        }
+    }
+
+    // Cache configurado pelas propriedades -Dminispotify.cache e -Dminispotify.cache.bytes.
+    public static CacheConsultas configurado() {
+        String nome = System.getProperty("minispotify.cache", "tinylfu").trim().toLowerCase(Locale.ROOT);
+        Politica politica;
+        switch (nome) {
+            case "lru":
+                politica = Politica.LRU;
+                break;
+            case "nenhum":
+            case "nenhuma":
+                politica = Politica.NENHUMA;
+                break;
+            case "tinylfu":
+                politica = Politica.TINY_LFU;
+                break;
+            default:
+                throw new IllegalArgumentException("Política de cache desconhecida: " + nome + " (use tinylfu, lru ou nenhum)");
+        }
+        return new CacheConsultas(politica, Long.getLong("minispotify.cache.bytes", PADRAO_BYTES));
+    }
+
+    public Politica getPolitica() {
+        return politica;
+    }
+
+    // Resultado guardado para a consulta, ou null. Toda consulta conta para a frequência.
+    public List<Midia> obter(String chave) {
+        if (politica == Politica.NENHUMA) {
+            return null;
+        }
+        if (frequencias != null) {
+            frequencias.registrar(chave);
+        }
+        No no = entradas.get(chave);
+        if (no == null) {
+            faltas++;
+            return null;
+        }
+        acertos++;
+        tocar(no);
+        return no.valor;
+    }
+
+    /**
+     * Guarda o resultado de uma consulta que acabou de faltar e devolve a lista que
+     * deve ir para quem buscou (somente leitura, porque pode ser devolvida de novo).
+     * "afeta" diz se uma mídia incluída ou excluída muda o resultado; "dependencias"
+     * são as chaves em que essa mídia precisa aparecer para ser testada.
+     */
+    public List<Midia> guardar(String chave, List<Midia> resultado, Predicate<Midia> afeta, Collection<String> dependencias) {
+        List<Midia> somenteLeitura = Collections.unmodifiableList(resultado);
+        long peso = PESO_ENTRADA + 2L * chave.length() + (long) PESO_REFERENCIA * resultado.size();
+        if (politica == Politica.NENHUMA || peso > maiorEntrada) {
+            return somenteLeitura;
+        }
+        No antigo = entradas.get(chave);
+        if (antigo != null) {
+            remover(antigo);
+        }
+        No no = new No(chave, somenteLeitura, peso, afeta, dependencias);
+        entradas.put(chave, no);
+        for (String dependencia : dependencias) {
+            porDependencia.computeIfAbsent(dependencia, k -> new HashSet<>()).add(no);
+        }
+        filas[JANELA].adicionar(no, JANELA);
+        while (filas[JANELA].peso > capacidadeJanela) {
+            No candidato = filas[JANELA].primeiro();
+            if (politica == Politica.LRU) {
+                despejar(candidato);
+            } else {
+                admitir(candidato);
+            }
+        }
+        return somenteLeitura;
+    }
+
+    // Remove as entradas que a mídia (incluída ou excluída) afeta; "chaves" são as dependências dela.
+    public void invalidar(Midia midia, Collection<String> chaves) {
+        if (entradas.isEmpty()) {
+            return;
+        }
+        for (String chave : chaves) {
+            Set<No> candidatas = porDependencia.get(chave);
+            if (candidatas == null) {
+                continue;
+            }
+            for (No no : new ArrayList<>(candidatas)) {
+                if (no.afeta.test(midia)) {
+                    remover(no);
+                    invalidacoes++;
+                }
+            }
+        }
+    }
+
+    public void limpar() {
+        for (No no : new ArrayList<>(entradas.values())) {
+            remover(no);
+        }
+    }
+
+    public long getAcertos() {
+        return acertos;
+    }
+
+    public long getFaltas() {
+        return faltas;
+    }
+
+    public long getDespejos() {
+        return despejos;
+    }
+
+    public long getInvalidacoes() {
+        return invalidacoes;
+    }
+
+    public int getEntradas() {
+        return entradas.size();
+    }
+
+    public long getPeso() {
+        return filas[JANELA].peso + filas[EM_TESTE].peso + filas[PROTEGIDA].peso;
+    }
+
+    public double getTaxaAcertos() {
+        long total = acertos + faltas;
+        return total == 0 ? 0 : acertos / (double) total;
+    }
+
+    // Estatísticas para as métricas (menu e JMX).
+    public Map<String, Long> medidores() {
+        Map<String, Long> valores = new LinkedHashMap<>();
+        valores.put("cache.acertos", acertos);
+        valores.put("cache.faltas", faltas);
+        valores.put("cache.taxa_acertos_por_mil", Math.round(getTaxaAcertos() * 1000));
+        valores.put("cache.despejos", despejos);
+        valores.put("cache.invalidacoes", invalidacoes);
+        valores.put("cache.entradas", (long) entradas.size());
+        valores.put("cache.bytes", getPeso());
+        return valores;
+    }
+
+    // Acerto: renova a posição; no W-TinyLFU, quem estava em teste passa a protegido.
+    private void tocar(No no) {
+        Fila fila = filas[no.regiao];
+        if (no.regiao != EM_TESTE) {
+            fila.remover(no);
+            fila.adicionar(no, no.regiao);
+            return;
+        }
+        fila.remover(no);
+        filas[PROTEGIDA].adicionar(no, PROTEGIDA);
+        while (filas[PROTEGIDA].peso > capacidadeProtegida && filas[PROTEGIDA].primeiro() != no) {
+            No rebaixado = filas[PROTEGIDA].primeiro();
+            filas[PROTEGIDA].remover(rebaixado);
+            filas[EM_TESTE].adicionar(rebaixado, EM_TESTE);
+        }
+    }
+
+    // Candidato saindo da janela: entra na área principal se for mais frequente que as vítimas.
+    private void admitir(No candidato) {
+        long capacidadePrincipal = capacidade - capacidadeJanela;
+        int frequenciaCandidato = frequencias.estimar(candidato.chave);
+        while (filas[EM_TESTE].peso + filas[PROTEGIDA].peso + candidato.peso > capacidadePrincipal) {
+            No vitima = filas[EM_TESTE].primeiro() != null ? filas[EM_TESTE].primeiro() : filas[PROTEGIDA].primeiro();
+            if (vitima == null || frequenciaCandidato <= frequencias.estimar(vitima.chave)) {
+                // Recusado: sai do cache sem tirar mais ninguém
+                despejar(candidato);
+                return;
+            }
+            despejar(vitima);
+        }
+        filas[JANELA].remover(candidato);
+        filas[EM_TESTE].adicionar(candidato, EM_TESTE);
+    }
+
+    private void despejar(No no) {
+        remover(no);
+        despejos++;
+    }
+
+    private void remover(No no) {
+        filas[no.regiao].remover(no);
+        entradas.remove(no.chave);
+        for (String dependencia : no.dependencias) {
+            Set<No> registradas = porDependencia.get(dependencia);
+            if (registradas != null && registradas.remove(no) && registradas.isEmpty()) {
+                porDependencia.remove(dependencia);
+            }
+        }
+    }
+
+    private static class No {
+        private final String chave;
+        private final List<Midia> valor;
+        private final long peso;
+        private final Predicate<Midia> afeta;
+        private final Collection<String> dependencias;
+        private int regiao;
+        private No anterior;
+        private No proximo;
+
+        No(String chave, List<Midia> valor, long peso, Predicate<Midia> afeta, Collection<String> dependencias) {
+            this.chave = chave;
+            this.valor = valor;
+            this.peso = peso;
+            this.afeta = afeta;
+            this.dependencias = dependencias;
+        }
+    }
+
+    // Lista duplamente ligada da menos para a mais recente, com o peso total.
+    private static class Fila {
+        private No primeiro;
+        private No ultimo;
+        private long peso;
+
+        No primeiro() {
+            return primeiro;
+        }
+
+        void adicionar(No no, int regiao) {
+            no.regiao = regiao;
+            no.anterior = ultimo;
+            no.proximo = null;
+            if (ultimo == null) {
+                primeiro = no;
+            } else {
+                ultimo.proximo = no;
+            }
+            ultimo = no;
+            peso += no.peso;
+        }
+
+        void remover(No no) {
+            if (no.anterior == null) {
+                primeiro = no.proximo;
+            } else {
+                no.anterior.proximo = no.proximo;
+            }
+            if (no.proximo == null) {
+                ultimo = no.anterior;
+            } else {
+                no.proximo.anterior = no.anterior;
+            }
+            no.anterior = null;
+            no.proximo = null;
+            peso -= no.peso;
+        }
+    }
+
+    /**
+     * Frequência aproximada das consultas (count-min sketch): 4 linhas de
+     * contadores de até 15, a estimativa é o menor dos 4. Depois de 10 registros
+     * por contador de linha, todos caem pela metade, para o histórico antigo pesar
+     * menos que o recente.
+     */
+    private static class Frequencias {
+        private static final int LINHAS = 4;
+        private static final int MAXIMO = 15;
+        private static final long[] SEMENTES = { 0x5851F42DL, 0x14057B7EL, 0x2545F491L, 0x7A1C3E6DL };
+        private final byte[][] contadores;
+        private final int deslocamento;
+        private final int limiteAmostras;
+        private int amostras;
+
+        Frequencias(long capacidadeBytes) {
+            // ~1 contador por entrada pequena que caberia no cache
+            int largura = Integer.highestOneBit((int) Math.max(64, Math.min(1 << 20, capacidadeBytes / PESO_ENTRADA)));
+            contadores = new byte[LINHAS][largura];
+            deslocamento = 64 - Integer.numberOfTrailingZeros(largura);
+            limiteAmostras = 10 * largura;
+        }
+
+        void registrar(String chave) {
+            int hash = chave.hashCode();
+            for (int linha = 0; linha < LINHAS; linha++) {
+                int i = indice(hash, linha);
+                if (contadores[linha][i] < MAXIMO) {
+                    contadores[linha][i]++;
+                }
+            }
+            if (++amostras >= limiteAmostras) {
+                envelhecer();
+            }
+        }
+
+        int estimar(String chave) {
+            int hash = chave.hashCode();
+            int menor = MAXIMO;
+            for (int linha = 0; linha < LINHAS; linha++) {
+                menor = Math.min(menor, contadores[linha][indice(hash, linha)]);
+            }
+            return menor;
+        }
+
+        private void envelhecer() {
+            for (byte[] linha : contadores) {
+                for (int i = 0; i < linha.length; i++) {
+                    linha[i] >>= 1;
+                }
+            }
+            amostras /= 2;
+        }
+
+        // Uma função de espalhamento por linha: bits altos do hash misturado com a semente dela.
+        private int indice(int hash, int linha) {
+            return (int) (((hash ^ SEMENTES[linha]) * 0x9E3779B97F4A7C15L) >>> deslocamento);
+        }
+    }
+}
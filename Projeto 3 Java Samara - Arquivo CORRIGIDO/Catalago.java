@@ -1,21 +1,62 @@
 import java.util.*;
+import java.util.function.Function;
 
 public class Catalago {
 private List<Midia> midias = new ArrayList<>();
 private List<Playlist> playLists = new ArrayList<>();
 private Scanner scan = new Scanner(System.in);
+// Índices de busca, mantidos junto com a lista de mídias
+private IndiceInvertido indiceTitulos = new IndiceInvertido();
+private IndiceInvertido indiceArtistas = new IndiceInvertido();
+// Índice reverso: mídia -> playlists que a contêm. Mantido por vincular/desvincular,
+// para a exclusão de uma mídia mexer só nas playlists que a usam.
+private Map<Midia, Set<Playlist>> playlistsPorMidia = new HashMap<>();
+// Resultados das buscas por título, artista e gênero, invalidados a cada inclusão/exclusão
+private final CacheConsultas cache;
+
+    public Catalago() {
+        this(CacheConsultas.configurado());
+    }
+
+    public Catalago(CacheConsultas cache) {
+        this.cache = cache;
+    }
 
 //  1 - Listagem de mídias
     public void listarMidias() {
         if (midias.isEmpty()) {
             System.out.println("Erro! Nenhuma mídia cadastrada.");
-        } else {
-            System.out.println("Lista de mídias: ");
-            for (Midia m : midias) {
-                System.out.println(m.toString());
+            return;
+        }
+        System.out.print("Paginação (ex: --page 2 --limit 50; Enter para listar tudo): ");
+        try {
+            listarMidias(SaidaConsole.Pagina.ler(scan.nextLine()));
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+        }
+    }
+
+    // Escreve a página pedida em blocos, e não com um println por mídia.
+    public void listarMidias(SaidaConsole.Pagina pagina) {
+        if (midias.isEmpty()) {
+            System.out.println("Erro! Nenhuma mídia cadastrada.");
+            return;
+        }
+        long inicio = Metricas.iniciar(Metricas.Operacao.LISTAR);
+        int total = midias.size();
+        try (SaidaConsole saida = new SaidaConsole()) {
+            saida.linha("Lista de mídias: ");
+            for (int i = pagina.inicio(total); i < pagina.fim(total); i++) {
+                saida.linha("", midias.get(i));
+            }
+            String rodape = pagina.rodape(total);
+            if (!rodape.isEmpty()) {
+                saida.linha(rodape);
             }
+        } finally {
+            Metricas.concluir(Metricas.Operacao.LISTAR, inicio);
         }
-    } 
+    }
     
 //  2 - Adicionar uma nova mídia
     public void adicionarMidia() {
@@ -82,7 +123,7 @@ private Scanner scan = new Scanner(System.in);
                     return;
             }
 
-            midias.add(novaMidia);
+            adicionarMidia(novaMidia);
             System.out.println("Mídia adicionada com sucesso!");
 
         } catch (NumberFormatException e ) {
@@ -90,6 +131,21 @@ private Scanner scan = new Scanner(System.in);
         }
     }
 
+    public void adicionarMidia(Midia midia) {
+        long inicio = Metricas.iniciar(Metricas.Operacao.ADICIONAR_MIDIA);
+        EventosJfr.Mutacao mutacao = new EventosJfr.Mutacao();
+        mutacao.begin();
+        midias.add(midia);
+        EventosJfr.ManutencaoIndice manutencao = new EventosJfr.ManutencaoIndice();
+        manutencao.begin();
+        indiceTitulos.adicionar(midia.getTituloNormalizado(), midia);
+        indiceArtistas.adicionar(midia.getArtistaNormalizado(), midia);
+        registrarManutencao(manutencao, "indexar");
+        invalidarCache(midia);
+        registrarMutacao(mutacao, "adicionar_midia", 1, 0);
+        Metricas.concluir(Metricas.Operacao.ADICIONAR_MIDIA, inicio);
+    }
+
     public Genero selecionarGenero(){
         int generoOpcao = -1;
         Genero genero = null;
@@ -126,8 +182,15 @@ private Scanner scan = new Scanner(System.in);
         try {
             int index = (Integer.parseInt(scan.nextLine())-1);
             if (index >= 0 && index < midias.size()) {
+                long inicio = Metricas.iniciar(Metricas.Operacao.EXCLUIR_MIDIA);
+                EventosJfr.Mutacao mutacao = new EventosJfr.Mutacao();
+                mutacao.begin();
                 Midia midiaRemovida = midias.remove(index);
-                System.out.println("Mídia '" + midiaRemovida.getTitulo() + "' removida com sucesso.");
+                int playlistsAfetadas = desindexar(midiaRemovida);
+                registrarMutacao(mutacao, "excluir_midia", 1, playlistsAfetadas);
+                Metricas.concluir(Metricas.Operacao.EXCLUIR_MIDIA, inicio);
+                System.out.println("Mídia '" + midiaRemovida.getTitulo() + "' removida com sucesso."
+                        + (playlistsAfetadas > 0 ? " Retirada também de " + playlistsAfetadas + " playlist(s)." : ""));
             } else {
                 System.out.println("Índice inválido.");
             }
@@ -137,6 +200,119 @@ private Scanner scan = new Scanner(System.in);
     }
 
 
+//  11 - Excluir todas as mídias de um artista.
+    public void excluirMidiasArtista() {
+        System.out.print("Artista: ");
+        String artista = scan.nextLine();
+        List<Midia> doArtista = indiceArtistas.buscarExato(artista);
+        if (doArtista.isEmpty()) {
+            System.out.println("Nenhuma mídia encontrada para esse artista.");
+            return;
+        }
+        System.out.print("Excluir " + doArtista.size() + " mídia(s) de '" + doArtista.get(0).getArtista() + "'? (s/n): ");
+        if (!scan.nextLine().trim().equalsIgnoreCase("s")) {
+            System.out.println("Exclusão cancelada.");
+            return;
+        }
+        int playlistsAfetadas = excluirMidias(doArtista);
+        System.out.println(doArtista.size() + " mídia(s) removida(s); " + playlistsAfetadas + " playlist(s) alterada(s).");
+    }
+
+    /**
+     * Remove as mídias do catálogo, dos índices e de todas as playlists que as contêm.
+     * A lista de mídias é filtrada numa passada só; as playlists vêm do índice reverso,
+     * então o custo é proporcional às referências existentes, e não ao total de playlists.
+     * Devolve quantas playlists foram alteradas.
+     */
+    public int excluirMidias(Collection<Midia> remover) {
+        long inicio = Metricas.iniciar(Metricas.Operacao.EXCLUIR_MIDIAS);
+        EventosJfr.Mutacao mutacao = new EventosJfr.Mutacao();
+        mutacao.begin();
+        Set<Midia> conjunto = Collections.newSetFromMap(new IdentityHashMap<>());
+        conjunto.addAll(remover);
+        midias.removeIf(conjunto::contains);
+        Set<Playlist> afetadas = new HashSet<>();
+        for (Midia midia : conjunto) {
+            Set<Playlist> contendo = playlistsPorMidia.get(midia);
+            if (contendo != null) {
+                afetadas.addAll(contendo);
+            }
+            desindexar(midia);
+        }
+        registrarMutacao(mutacao, "excluir_midias", conjunto.size(), afetadas.size());
+        Metricas.concluir(Metricas.Operacao.EXCLUIR_MIDIAS, inicio);
+        return afetadas.size();
+    }
+
+    // Tira a mídia dos índices de busca e das playlists; devolve quantas playlists a tinham.
+    private int desindexar(Midia midia) {
+        EventosJfr.ManutencaoIndice manutencao = new EventosJfr.ManutencaoIndice();
+        manutencao.begin();
+        indiceTitulos.remover(midia.getTituloNormalizado(), midia);
+        indiceArtistas.remover(midia.getArtistaNormalizado(), midia);
+        registrarManutencao(manutencao, "desindexar");
+        invalidarCache(midia);
+        Set<Playlist> contendo = playlistsPorMidia.remove(midia);
+        if (contendo == null) {
+            return 0;
+        }
+        for (Playlist playlist : contendo) {
+            playlist.removerMidia(midia);
+        }
+        return contendo.size();
+    }
+
+    // Os eventos JFR só recebem os campos se alguma gravação os tiver ligado (ver EventosJfr).
+    private static void registrarMutacao(EventosJfr.Mutacao evento, String operacao, int midias, int playlistsAfetadas) {
+        if (evento.shouldCommit()) {
+            evento.operacao = operacao;
+            evento.midias = midias;
+            evento.playlistsAfetadas = playlistsAfetadas;
+            evento.commit();
+        }
+    }
+
+    private void registrarManutencao(EventosJfr.ManutencaoIndice evento, String operacao) {
+        if (evento.shouldCommit()) {
+            evento.operacao = operacao;
+            evento.chavesTitulos = indiceTitulos.quantidadeChaves();
+            evento.chavesArtistas = indiceArtistas.quantidadeChaves();
+            evento.commit();
+        }
+    }
+
+    private static List<Midia> registrarBusca(EventosJfr.Busca evento, String modo, String termo, List<Midia> resultados) {
+        if (evento.shouldCommit()) {
+            evento.modo = modo;
+            evento.tamanhoTermo = termo == null ? 0 : termo.length();
+            evento.resultados = resultados.size();
+            evento.commit();
+        }
+        return resultados;
+    }
+
+    // Toda inclusão/remoção de mídia em playlist passa por aqui, para o índice reverso acompanhar.
+    private void vincular(Playlist playlist, Midia midia) {
+        long inicio = Metricas.iniciar(Metricas.Operacao.ADICIONAR_NA_PLAYLIST);
+        playlist.adicionarMidia(midia);
+        playlistsPorMidia.computeIfAbsent(midia, k -> new HashSet<>()).add(playlist);
+        Metricas.concluir(Metricas.Operacao.ADICIONAR_NA_PLAYLIST, inicio);
+    }
+
+    private void desvincular(Playlist playlist, Midia midia) {
+        long inicio = Metricas.iniciar(Metricas.Operacao.REMOVER_DA_PLAYLIST);
+        playlist.removerMidia(midia);
+        Set<Playlist> contendo = playlistsPorMidia.get(midia);
+        if (contendo != null) {
+            contendo.remove(playlist);
+            if (contendo.isEmpty()) {
+                playlistsPorMidia.remove(midia);
+            }
+        }
+        Metricas.concluir(Metricas.Operacao.REMOVER_DA_PLAYLIST, inicio);
+    }
+
+
 //  4 - Pesquisar uma mídia.
     public void pesquisarMidia()throws CodigoInvalidoException{
         System.out.println("Como deseja pesquisar a mídia?");
@@ -146,24 +322,25 @@ private Scanner scan = new Scanner(System.in);
         System.out.print("Opção: ");
         String opcao = scan.nextLine();
         List<Midia> resultados = new ArrayList<>();
+        boolean aproximado = false;
 
         switch (opcao) {
             case "1":
                 System.out.print("Digite o título: ");
                 String titulo = scan.nextLine();
-                for (Midia midia : midias) {
-                    if (midia.getTitulo().equalsIgnoreCase(titulo)) {
-                        resultados.add(midia);
-                    }
+                resultados = buscarPorTitulo(titulo);
+                if (resultados.isEmpty()) {
+                    resultados = buscarTituloAproximado(titulo);
+                    aproximado = true;
                 }
                 break;
             case "2":
                 System.out.print("Digite o nome do artista: ");
                 String artista = scan.nextLine();
-                for (Midia midia : midias) {
-                    if (midia.getArtista().equalsIgnoreCase(artista)) {
-                        resultados.add(midia);
-                    }
+                resultados = buscarPorArtista(artista);
+                if (resultados.isEmpty()) {
+                    resultados = buscarArtistaAproximado(artista);
+                    aproximado = true;
                 }
                 break;
             case "3":
@@ -171,11 +348,7 @@ private Scanner scan = new Scanner(System.in);
                 String generoString = scan.nextLine();
                 Genero genero = Genero.fromVariavelTemporaria(generoString);
                 if (genero != null) {
-                    for (Midia midia : midias) {
-                        if (midia.getGenero() == genero) {
-                            resultados.add(midia);
-                        }
-                    }
+                    resultados = buscarPorGenero(genero);
                 } else {
                     System.out.println("Gênero inválido.");
                 }
@@ -188,11 +361,171 @@ private Scanner scan = new Scanner(System.in);
         if (resultados == null || resultados.isEmpty()) {
             throw new CodigoInvalidoException("Código inválido! O código não pode ser encontrado ou estar vazio.");
         } else {
-            System.out.println("Resultados da pesquisa:");
-            for (Midia m : resultados) {
-                System.out.println(m.toString());
+            try (SaidaConsole saida = new SaidaConsole()) {
+                saida.linha(aproximado ? "Nenhum resultado exato. Você quis dizer:" : "Resultados da pesquisa:");
+                for (Midia m : resultados) {
+                    saida.linha("", m);
+                }
+            }
+        }
+    }
+
+    // Título exato; se não houver, mídias cujo título contém todas as palavras digitadas.
+    public List<Midia> buscarPorTitulo(String titulo) {
+        long inicio = Metricas.iniciar(Metricas.Operacao.BUSCAR_TITULO);
+        EventosJfr.Busca evento = new EventosJfr.Busca();
+        evento.begin();
+        try {
+            return registrarBusca(evento, "titulo", titulo, buscarTexto(indiceTitulos, "titulo", titulo, Midia::getTituloNormalizado));
+        } finally {
+            Metricas.concluir(Metricas.Operacao.BUSCAR_TITULO, inicio);
+        }
+    }
+
+    // Artista exato; se não houver, artistas que contêm todas as palavras digitadas.
+    public List<Midia> buscarPorArtista(String artista) {
+        long inicio = Metricas.iniciar(Metricas.Operacao.BUSCAR_ARTISTA);
+        EventosJfr.Busca evento = new EventosJfr.Busca();
+        evento.begin();
+        try {
+            return registrarBusca(evento, "artista", artista, buscarTexto(indiceArtistas, "artista", artista, Midia::getArtistaNormalizado));
+        } finally {
+            Metricas.concluir(Metricas.Operacao.BUSCAR_ARTISTA, inicio);
+        }
+    }
+
+    /**
+     * Busca exata e, sem resultado, por palavras, passando pelo cache. A entrada
+     * guardada depende do texto exato e da primeira palavra da consulta, e só é
+     * invalidada por uma mídia que a busca encontraria (ver {@link #combinaTexto}).
+     */
+    private List<Midia> buscarTexto(IndiceInvertido indice, String campo, String termo, Function<Midia, String> chaveDaMidia) {
+        String consulta = Normalizador.normalizar(termo);
+        String chave = campo + ":" + consulta;
+        List<Midia> resultados = cache.obter(chave);
+        if (resultados != null) {
+            return resultados;
+        }
+        resultados = indice.buscarExato(consulta);
+        if (resultados.isEmpty()) {
+            resultados = indice.buscarPalavras(consulta);
+        }
+        return cache.guardar(chave, resultados, midia -> combinaTexto(chaveDaMidia.apply(midia), consulta),
+                dependenciasTexto(campo, consulta));
+    }
+
+    // Títulos parecidos com o digitado (erros de digitação), dos mais próximos aos mais distantes.
+    public List<Midia> buscarTituloAproximado(String titulo) {
+        long inicio = Metricas.iniciar(Metricas.Operacao.BUSCAR_TITULO_APROXIMADO);
+        EventosJfr.Busca evento = new EventosJfr.Busca();
+        evento.begin();
+        try {
+            return registrarBusca(evento, "titulo_aproximado", titulo, indiceTitulos.buscarAproximado(titulo, distanciaTolerada(titulo)));
+        } finally {
+            Metricas.concluir(Metricas.Operacao.BUSCAR_TITULO_APROXIMADO, inicio);
+        }
+    }
+
+    public List<Midia> buscarArtistaAproximado(String artista) {
+        long inicio = Metricas.iniciar(Metricas.Operacao.BUSCAR_ARTISTA_APROXIMADO);
+        EventosJfr.Busca evento = new EventosJfr.Busca();
+        evento.begin();
+        try {
+            return registrarBusca(evento, "artista_aproximado", artista, indiceArtistas.buscarAproximado(artista, distanciaTolerada(artista)));
+        } finally {
+            Metricas.concluir(Metricas.Operacao.BUSCAR_ARTISTA_APROXIMADO, inicio);
+        }
+    }
+
+    // Termos curtos toleram só um erro; os demais, até dois.
+    private static int distanciaTolerada(String termo) {
+        return Normalizador.normalizar(termo).length() <= 4 ? 1 : 2;
+    }
+
+    public List<Midia> buscarPorGenero(Genero genero) {
+        long inicio = Metricas.iniciar(Metricas.Operacao.BUSCAR_GENERO);
+        EventosJfr.Busca evento = new EventosJfr.Busca();
+        evento.begin();
+        String chave = "genero:" + genero;
+        List<Midia> resultados = cache.obter(chave);
+        if (resultados == null) {
+            resultados = new ArrayList<>();
+            for (Midia midia : midias) {
+                if (midia.getGenero() == genero) {
+                    resultados.add(midia);
+                }
+            }
+            resultados = cache.guardar(chave, resultados, midia -> midia.getGenero() == genero, List.of(chave));
+        }
+        registrarBusca(evento, "genero", genero == null ? null : genero.name(), resultados);
+        Metricas.concluir(Metricas.Operacao.BUSCAR_GENERO, inicio);
+        return resultados;
+    }
+
+    // Retira do cache as buscas cujo resultado muda com a mídia incluída ou excluída.
+    private void invalidarCache(Midia midia) {
+        if (cache.getEntradas() == 0) {
+            return;
+        }
+        Set<String> chaves = new LinkedHashSet<>();
+        chaves.add("genero:" + midia.getGenero());
+        dependenciasMidia("titulo", midia.getTituloNormalizado(), chaves);
+        dependenciasMidia("artista", midia.getArtistaNormalizado(), chaves);
+        cache.invalidar(midia, chaves);
+    }
+
+    /**
+     * Chaves de que depende uma busca por texto: "campo=texto" para a busca exata e,
+     * para a busca por palavras, a primeira palavra. Se há outras depois, ela tem de
+     * aparecer inteira ("campo~palavra"); se é a única, vale como prefixo, e só as
+     * duas primeiras letras dela são certas ("campo^pr").
+     */
+    private static List<String> dependenciasTexto(String campo, String consulta) {
+        List<String> chaves = new ArrayList<>(2);
+        chaves.add(campo + "=" + consulta);
+        List<String> termos = IndiceInvertido.tokens(consulta);
+        if (termos.size() > 1) {
+            chaves.add(campo + "~" + termos.get(0));
+        } else if (termos.size() == 1) {
+            chaves.add(campo + "^" + termos.get(0).substring(0, Math.min(2, termos.get(0).length())));
+        }
+        return chaves;
+    }
+
+    // As mesmas chaves do lado da mídia: texto inteiro, cada palavra e o começo (1 e 2 letras) de cada uma.
+    private static void dependenciasMidia(String campo, String chave, Set<String> chaves) {
+        chaves.add(campo + "=" + chave);
+        for (String palavra : IndiceInvertido.tokens(chave)) {
+            chaves.add(campo + "~" + palavra);
+            chaves.add(campo + "^" + palavra.charAt(0));
+            if (palavra.length() > 1) {
+                chaves.add(campo + "^" + palavra.substring(0, 2));
+            }
+        }
+    }
+
+    // Se a busca por "consulta" encontraria uma mídia com esse texto (exato ou por palavras, como no IndiceInvertido).
+    private static boolean combinaTexto(String chave, String consulta) {
+        if (chave.equals(consulta)) {
+            return true;
+        }
+        List<String> termos = IndiceInvertido.tokens(consulta);
+        if (termos.isEmpty()) {
+            return false;
+        }
+        List<String> palavras = IndiceInvertido.tokens(chave);
+        for (int i = 0; i < termos.size() - 1; i++) {
+            if (!palavras.contains(termos.get(i))) {
+                return false;
             }
         }
+        String ultimo = termos.get(termos.size() - 1);
+        for (String palavra : palavras) {
+            if (palavra.startsWith(ultimo)) {
+                return true;
+            }
+        }
+        return false;
     }
 
 //  5 - Exibir quantidade total de mídias e playlists.
@@ -212,14 +545,18 @@ private Scanner scan = new Scanner(System.in);
             System.out.println("Nome da playlist não pode ser vazio.");
             return;
         }
-        for (Playlist p : playLists) {
-            if (p.getNome().equalsIgnoreCase(nomePlaylist)) {
-                System.out.println("Já existe uma playlist com esse nome.");
-                return;
+        long inicio = Metricas.iniciar(Metricas.Operacao.CRIAR_PLAYLIST);
+        try {
+            for (Playlist p : playLists) {
+                if (p.getNome().equalsIgnoreCase(nomePlaylist)) {
+                    System.out.println("Já existe uma playlist com esse nome.");
+                    return;
+                }
             }
+            playLists.add(new Playlist(nomePlaylist));
+        } finally {
+            Metricas.concluir(Metricas.Operacao.CRIAR_PLAYLIST, inicio);
         }
-        Playlist novaPlaylist = new Playlist(nomePlaylist);
-        playLists.add(novaPlaylist);
         System.out.println("Playlist '" + nomePlaylist + "' criada com sucesso.");
     }
 
@@ -238,7 +575,13 @@ private Scanner scan = new Scanner(System.in);
         try {
             int index = (Integer.parseInt(scan.nextLine())-1);
             if (index >= 0 && index < playLists.size()) {
+                long inicio = Metricas.iniciar(Metricas.Operacao.EXCLUIR_PLAYLIST);
                 Playlist playlistRemovida = playLists.remove(index);
+                // Cópia: getMidias() acompanha a playlist, que muda a cada desvincular
+                for (Midia midia : new ArrayList<>(playlistRemovida.getMidias())) {
+                    desvincular(playlistRemovida, midia);
+                }
+                Metricas.concluir(Metricas.Operacao.EXCLUIR_PLAYLIST, inicio);
                 System.out.println("Playlist '" + playlistRemovida.getNome() + "' removida com sucesso.");
             } else {
                 System.out.println("Índice inválido.");
@@ -273,12 +616,12 @@ private Scanner scan = new Scanner(System.in);
         try {
             Playlist playlist = playLists.get(indexPlaylist);
             Midia midia = midias.get(indexMidia);
-            if (playlist.getMidias().contains(midia)) {
+            if (playlist.contem(midia)) {
                 System.out.println("Mídia já está na playlist.");
                 return;
             }
             else
-            playlist.adicionarMidia(midia);
+            vincular(playlist, midia);
             System.out.println("Mídia '" + midia.getTitulo() + "' adicionada à playlist '" + playlist.getNome() + "' com sucesso.");
         } catch (IllegalArgumentException e) {
             System.out.println("Não é permitido usar a mesma mídia em mais de uma playlist.");
@@ -304,19 +647,22 @@ private Scanner scan = new Scanner(System.in);
 
         try {
             Playlist playlist = playLists.get(indexPlaylist);
-            if (playlist.getMidias().isEmpty()) {
+            List<Midia> midiasPlaylist = playlist.getMidias();
+            if (midiasPlaylist.isEmpty()) {
                 System.out.println("Esta playlist não possui mídias.");
                 return;
             }
-            System.out.println("Selecione a mídia para remover:");
-            for (int i = 0; i < playlist.getMidias().size(); i++) {
-                System.out.println(i+1 + " - " + playlist.getMidias().get(i).getTitulo());
+            try (SaidaConsole saida = new SaidaConsole()) {
+                saida.linha("Selecione a mídia para remover:");
+                for (int i = 0; i < midiasPlaylist.size(); i++) {
+                    saida.linha(i+1 + " - " + midiasPlaylist.get(i).getTitulo());
+                }
             }
             System.out.print("Número da mídia: ");
             int indexMidia = (Integer.parseInt(scan.nextLine())-1);
 
-            Midia midiaRemover = playlist.getMidias().get(indexMidia);
-            playlist.removerMidia(midiaRemover);
+            Midia midiaRemover = midiasPlaylist.get(indexMidia);
+            desvincular(playlist, midiaRemover);
             System.out.println("Mídia '" + midiaRemover.getTitulo() + "' removida da playlist '" + playlist.getNome() + "' com sucesso.");
         } catch (IndexOutOfBoundsException e) {
             System.out.println("Índice de playlist ou mídia inválido.");
@@ -332,15 +678,38 @@ private Scanner scan = new Scanner(System.in);
             System.out.println("Nenhuma playlist cadastrada.");
             return;
         }
-        for (Playlist playlist : playLists) {
-            System.out.println(playlist.toString());
-            if (playlist.getMidias().isEmpty()) {
-                System.out.println("  - Playlist vazia");
-            } else {
-                for (Midia midia : playlist.getMidias()) {
-                    System.out.println("  - " + midia.toString());
+        long inicio = Metricas.iniciar(Metricas.Operacao.VISUALIZAR_PLAYLISTS);
+        try (SaidaConsole saida = new SaidaConsole()) {
+            for (Playlist playlist : playLists) {
+                saida.linha(playlist.toString());
+                if (playlist.getMidias().isEmpty()) {
+                    saida.linha("  - Playlist vazia");
+                } else {
+                    for (Midia midia : playlist.getMidias()) {
+                        saida.linha("  - ", midia);
+                    }
                 }
             }
+        } finally {
+            Metricas.concluir(Metricas.Operacao.VISUALIZAR_PLAYLISTS, inicio);
         }
     }
+
+    /**
+     * Medidores de tamanho para as métricas (ver Metricas#registrarMedidores).
+     * Lidos também pela thread do JMX: são só contagens de coleções, e um valor
+     * lido no meio de uma alteração não causa problema.
+     */
+    public Map<String, Long> medidores() {
+        Map<String, Long> valores = new LinkedHashMap<>();
+        valores.put("catalogo.midias", (long) midias.size());
+        valores.put("catalogo.playlists", (long) playLists.size());
+        valores.put("indice.titulos.chaves", (long) indiceTitulos.quantidadeChaves());
+        valores.put("indice.titulos.palavras", (long) indiceTitulos.quantidadePalavras());
+        valores.put("indice.artistas.chaves", (long) indiceArtistas.quantidadeChaves());
+        valores.put("indice.artistas.palavras", (long) indiceArtistas.quantidadePalavras());
+        valores.put("indice.midias_em_playlists", (long) playlistsPorMidia.size());
+        valores.putAll(cache.medidores());
+        return valores;
+    }
 }
\ No newline at end of file
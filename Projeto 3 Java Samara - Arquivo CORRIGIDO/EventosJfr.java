@@ -0,0 +1,85 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Eventos do Java Flight Recorder do catálogo, para cruzar uma busca ou uma
+ * exclusão lenta com o GC e o I/O da mesma gravação. Todos vêm desligados: sem
+ * gravação, ou com uma gravação que não os liga, begin/commit não fazem nada e o
+ * JIT elimina até a criação do evento. Para ligá-los, use o perfil
+ * minispotify.jfc desta pasta junto com o padrão da JVM:
+ *
+ *   java -XX:StartFlightRecording:settings=default,settings=minispotify.jfc,filename=gravacao.jfr Main
+ *   jcmd <pid> JFR.start settings=default settings=minispotify.jfc
+ *
+ * Uso (os campos só são preenchidos se o evento for gravado):
+ *   EventosJfr.Busca evento = new EventosJfr.Busca();
+ *   evento.begin();
+ *   ...
+ *   if (evento.shouldCommit()) { evento.modo = "titulo"; ...; evento.commit(); }
+ */
+public final class EventosJfr {
+    private EventosJfr() {
+    }
+
+    @Name("minispotify.Busca")
+    @Label("Busca no catálogo")
+    @Category({ "Mini Spotify", "Catálogo" })
+    @Enabled(false)
+    @StackTrace(false)
+    public static final class Busca extends Event {
+        @Label("Modo")
+        @Description("titulo, artista, genero, titulo_aproximado ou artista_aproximado")
+        public String modo;
+
+        @Label("Tamanho do termo")
+        public int tamanhoTermo;
+
+        @Label("Resultados")
+        public int resultados;
+    }
+
+    @Name("minispotify.Mutacao")
+    @Label("Alteração do catálogo")
+    @Category({ "Mini Spotify", "Catálogo" })
+    @Enabled(false)
+    @StackTrace(false)
+    public static final class Mutacao extends Event {
+        @Label("Operação")
+        @Description("adicionar_midia, excluir_midia ou excluir_midias")
+        public String operacao;
+
+        @Label("Mídias")
+        public int midias;
+
+        @Label("Playlists afetadas")
+        @Description("Playlists de onde as mídias excluídas foram retiradas")
+        public int playlistsAfetadas;
+    }
+
+    /**
+     * Atualização dos índices de título e de artista (e dos trigramas deles) por
+     * causa de uma mídia incluída ou excluída. Os índices são mantidos a cada
+     * alteração, sem reconstrução; os tamanhos são os de depois da atualização.
+     */
+    @Name("minispotify.ManutencaoIndice")
+    @Label("Manutenção dos índices")
+    @Category({ "Mini Spotify", "Índices" })
+    @Enabled(false)
+    @StackTrace(false)
+    public static final class ManutencaoIndice extends Event {
+        @Label("Operação")
+        @Description("indexar ou desindexar")
+        public String operacao;
+
+        @Label("Títulos indexados")
+        public int chavesTitulos;
+
+        @Label("Artistas indexados")
+        public int chavesArtistas;
+    }
+}
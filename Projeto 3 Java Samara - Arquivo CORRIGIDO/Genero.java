@@ -7,16 +7,19 @@ public enum Genero {
     CLASSICA("Clássica"),;
 
     public final String variavelTemporaria;
+    private final String chave;
 
     Genero(String variavelTemporaria) {
         this.variavelTemporaria = variavelTemporaria;
+        this.chave = Normalizador.normalizar(variavelTemporaria);
     }
     public String getVariavelTemporaria() {
         return variavelTemporaria;
     }
     public static Genero fromVariavelTemporaria(String nome) {
+        String chave = Normalizador.normalizar(nome);
         for (Genero genero : Genero.values()) {
-            if (genero.variavelTemporaria.equalsIgnoreCase(nome)) {
+            if (genero.chave.equals(chave)) {
                 return genero;
             }
         }
@@ -0,0 +1,268 @@
+import java.util.*;
+
+/**
+ * Gerador determinístico de catálogos e de cargas de playlists, para os
+ * benchmarks e testes de carga. A mesma semente gera sempre os mesmos dados, e
+ * nada fica guardado: a mídia de índice i sai só de (semente, i), então um
+ * catálogo de 100 milhões de itens pode ser percorrido com memória constante.
+ *
+ * Distribuições do catálogo:
+ * - artistas em Zipf (expoente 1): poucos artistas com muitas mídias e muitos
+ *   com poucas, ~20 mídias por artista em média;
+ * - gêneros com pesos diferentes (POP e ROCK na frente, JAZZ e CLASSICA no fim),
+ *   e cada artista tem um gênero principal, usado em ~85% das suas mídias;
+ * - 80% músicas, 15% podcasts e 5% audiobooks, com duração log-normal por tipo
+ *   (medianas de 3,5 min, 45 min e 8 h).
+ *
+ * Uso: for (Midia midia : new GeradorCarga(42, 1_000_000)) { ... }
+ */
+public class GeradorCarga implements Iterable<Midia> {
+    private static final double EXPOENTE_ARTISTAS = 1.0;
+    // Popularidade das mídias nas playlists: as primeiras do catálogo são as mais incluídas
+    private static final double EXPOENTE_POPULARIDADE = 0.9;
+    private static final int MIDIAS_POR_ARTISTA = 20;
+    private static final double FIDELIDADE_GENERO = 0.85;
+    private static final int PERCENTUAL_REMOCOES = 25;
+
+    private static final String[] PALAVRAS = {
+        "amor", "noite", "sol", "mar", "cidade", "estrada", "coração", "tempo", "luz", "sonho",
+        "rio", "vento", "fogo", "lua", "céu", "saudade", "caminho", "festa", "silêncio", "janela",
+        "azul", "chuva", "verão", "distante", "segredo", "madrugada", "estrela", "viagem", "carnaval", "horizonte"
+    };
+    // Pesos na ordem de Genero.values(): ROCK, POP, MPB, JAZZ, ELETRONICA, CLASSICA
+    private static final double[] PESOS_GENEROS = { 22, 30, 18, 8, 15, 7 };
+    private static final double[] GENEROS_ACUMULADOS = acumular(PESOS_GENEROS);
+
+    private final long semente;
+    private final long quantidade;
+    private final Zipf artistas;
+
+    public GeradorCarga(long semente, long quantidade) {
+        if (quantidade < 0) {
+            throw new IllegalArgumentException("Quantidade deve ser >= 0.");
+        }
+        this.semente = semente;
+        this.quantidade = quantidade;
+        this.artistas = new Zipf(Math.max(1, quantidade / MIDIAS_POR_ARTISTA), EXPOENTE_ARTISTAS);
+    }
+
+    public long getQuantidade() {
+        return quantidade;
+    }
+
+    // Percorre as mídias 0..quantidade-1, geradas na hora.
+    @Override
+    public Iterator<Midia> iterator() {
+        return new Iterator<Midia>() {
+            private long proxima = 0;
+
+            @Override
+            public boolean hasNext() {
+                return proxima < quantidade;
+            }
+
+            @Override
+            public Midia next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return midia(proxima++);
+            }
+        };
+    }
+
+    // A mídia de índice i; chamadas repetidas devolvem mídias iguais (não o mesmo objeto).
+    public Midia midia(long i) {
+        SplittableRandom aleatorio = new SplittableRandom(misturar(semente + i * 0x9E3779B97F4A7C15L));
+        long artista = artistas.sortear(aleatorio);
+        String titulo = PALAVRAS[aleatorio.nextInt(PALAVRAS.length)] + " " + PALAVRAS[aleatorio.nextInt(PALAVRAS.length)] + " " + i;
+        Genero genero = aleatorio.nextDouble() < FIDELIDADE_GENERO
+                ? generoPrincipal(artista)
+                : sortearGenero(aleatorio.nextDouble());
+        int tipo = aleatorio.nextInt(100);
+        if (tipo < 80) {
+            return new Musica(titulo, "Artista " + artista, minutos(aleatorio, 3.5, 0.25, 0.5, 20), genero);
+        } else if (tipo < 95) {
+            return new Podcast(titulo, "Apresentador " + artista, minutos(aleatorio, 45, 0.5, 5, 240), genero);
+        }
+        return new Audiobook(titulo, "Autor " + artista, minutos(aleatorio, 480, 0.45, 60, 2400), genero);
+    }
+
+    /**
+     * Carga de edições em "playlists" playlists, com "operacoes" ações (use
+     * Long.MAX_VALUE para uma carga sem fim). Cada ação escolhe uma playlist ao
+     * acaso; a primeira ação de cada uma a cria. Depois, 25% das ações removem uma
+     * posição e o resto inclui uma mídia sorteada por popularidade (Zipf sobre os
+     * índices do catálogo). Só o tamanho esperado de cada playlist é guardado.
+     *
+     * Como a Playlist ignora mídias repetidas, o tamanho real pode ficar abaixo do
+     * esperado: quem aplica a carga deve usar a posição módulo o tamanho real.
+     */
+    public Iterator<Acao> carga(int playlists, long operacoes) {
+        if (playlists < 1) {
+            throw new IllegalArgumentException("Informe ao menos uma playlist.");
+        }
+        SplittableRandom aleatorio = new SplittableRandom(misturar(~semente));
+        Zipf popularidade = new Zipf(Math.max(1, quantidade), EXPOENTE_POPULARIDADE);
+        int[] tamanhos = new int[playlists];
+        Arrays.fill(tamanhos, -1);
+        return new Iterator<Acao>() {
+            private long restantes = operacoes;
+
+            @Override
+            public boolean hasNext() {
+                return restantes > 0;
+            }
+
+            @Override
+            public Acao next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                restantes--;
+                int playlist = aleatorio.nextInt(playlists);
+                if (tamanhos[playlist] < 0) {
+                    tamanhos[playlist] = 0;
+                    return new Acao(TipoAcao.CRIAR_PLAYLIST, playlist, -1, -1);
+                }
+                if (tamanhos[playlist] > 0 && aleatorio.nextInt(100) < PERCENTUAL_REMOCOES) {
+                    return new Acao(TipoAcao.REMOVER, playlist, -1, aleatorio.nextInt(tamanhos[playlist]--));
+                }
+                return new Acao(TipoAcao.ADICIONAR, playlist, popularidade.sortear(aleatorio) - 1, tamanhos[playlist]++);
+            }
+        };
+    }
+
+    public enum TipoAcao {
+        CRIAR_PLAYLIST, ADICIONAR, REMOVER
+    }
+
+    /**
+     * Uma ação da carga. "midia" é o índice no catálogo gerado (ADICIONAR) e
+     * "posicao" a posição na playlist (REMOVER; em ADICIONAR, o fim); -1 quando não se aplica.
+     */
+    public static class Acao {
+        private final TipoAcao tipo;
+        private final int playlist;
+        private final long midia;
+        private final int posicao;
+
+        Acao(TipoAcao tipo, int playlist, long midia, int posicao) {
+            this.tipo = tipo;
+            this.playlist = playlist;
+            this.midia = midia;
+            this.posicao = posicao;
+        }
+
+        public TipoAcao getTipo() {
+            return tipo;
+        }
+
+        public int getPlaylist() {
+            return playlist;
+        }
+
+        public long getMidia() {
+            return midia;
+        }
+
+        public int getPosicao() {
+            return posicao;
+        }
+    }
+
+    // Gênero principal do artista: fixo para cada (semente, artista).
+    private Genero generoPrincipal(long artista) {
+        return sortearGenero((misturar(semente ^ (artista * 0xC2B2AE3D27D4EB4FL)) >>> 11) * 0x1.0p-53);
+    }
+
+    private static Genero sortearGenero(double u) {
+        double alvo = u * GENEROS_ACUMULADOS[GENEROS_ACUMULADOS.length - 1];
+        int i = 0;
+        while (i < GENEROS_ACUMULADOS.length - 1 && GENEROS_ACUMULADOS[i] <= alvo) {
+            i++;
+        }
+        return Genero.values()[i];
+    }
+
+    // Log-normal com a mediana dada, limitada a [minimo, maximo] e arredondada a centésimos.
+    private static double minutos(SplittableRandom aleatorio, double mediana, double desvio, double minimo, double maximo) {
+        double valor = mediana * Math.exp(desvio * aleatorio.nextGaussian());
+        return Math.round(Math.max(minimo, Math.min(maximo, valor)) * 100) / 100.0;
+    }
+
+    private static double[] acumular(double[] pesos) {
+        double[] acumulados = new double[pesos.length];
+        double soma = 0;
+        for (int i = 0; i < pesos.length; i++) {
+            soma += pesos[i];
+            acumulados[i] = soma;
+        }
+        return acumulados;
+    }
+
+    // Finalizador do MurmurHash3: espalha sementes vizinhas por todos os bits.
+    private static long misturar(long x) {
+        x ^= x >>> 33;
+        x *= 0xFF51AFD7ED558CCDL;
+        x ^= x >>> 33;
+        x *= 0xC4CEB9FE1A85EC53L;
+        return x ^ (x >>> 33);
+    }
+
+    /**
+     * Sorteio de 1..n com P(k) proporcional a 1/k^s, por rejeição-inversão
+     * (Hörmann e Derflinger): custo e memória constantes mesmo com n na casa dos
+     * bilhões, sem tabela de probabilidades acumuladas.
+     */
+    static class Zipf {
+        private final long n;
+        private final double s;
+        private final double integralX1;
+        private final double integralN;
+        private final double limiteAceite;
+
+        Zipf(long n, double s) {
+            this.n = n;
+            this.s = s;
+            this.integralX1 = integral(1.5) - 1;
+            this.integralN = integral(n + 0.5);
+            this.limiteAceite = 2 - inversaIntegral(integral(2.5) - h(2));
+        }
+
+        long sortear(SplittableRandom aleatorio) {
+            while (true) {
+                double u = integralN + aleatorio.nextDouble() * (integralX1 - integralN);
+                double x = inversaIntegral(u);
+                long k = Math.max(1, Math.min(n, (long) (x + 0.5)));
+                if (k - x <= limiteAceite || u >= integral(k + 0.5) - h(k)) {
+                    return k;
+                }
+            }
+        }
+
+        private double h(double x) {
+            return Math.exp(-s * Math.log(x));
+        }
+
+        // Primitiva de h: (x^(1-s) - 1) / (1-s), ou log(x) quando s = 1.
+        private double integral(double x) {
+            double logX = Math.log(x);
+            return auxiliar2((1 - s) * logX) * logX;
+        }
+
+        private double inversaIntegral(double x) {
+            double t = Math.max(-1, x * (1 - s));
+            return Math.exp(auxiliar1(t) * x);
+        }
+
+        // log(1+x)/x e (e^x-1)/x, estáveis perto de zero
+        private static double auxiliar1(double x) {
+            return Math.abs(x) > 1e-8 ? Math.log1p(x) / x : 1 - x * (0.5 - x * (1.0 / 3 - 0.25 * x));
+        }
+
+        private static double auxiliar2(double x) {
+            return Math.abs(x) > 1e-8 ? Math.expm1(x) / x : 1 + x * 0.5 * (1 + x / 3 * (1 + 0.25 * x));
+        }
+    }
+}
@@ -0,0 +1,108 @@
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histograma de latências em nanossegundos, no estilo do HdrHistogram: um balde
+ * por valor até 15 ns e, daí em diante, 16 baldes por potência de 2. O erro
+ * relativo fica abaixo de 1/16 (6,25%) em qualquer faixa, de 1 ns a ~36 minutos,
+ * com 608 baldes fixos. Cada balde é um LongAdder, então registrar é uma soma
+ * sem disputa entre threads; os percentis saem de uma foto dos baldes.
+ */
+public class HistogramaLatencia {
+    private static final int BITS_SUBBALDE = 4;
+    private static final int SUBBALDES = 1 << BITS_SUBBALDE;
+    private static final int MAIOR_EXPOENTE = 40;
+    // Valores acima disso caem no último balde
+    private static final long MAXIMO = (1L << (MAIOR_EXPOENTE + 1)) - 1;
+    private static final int BALDES = SUBBALDES + (MAIOR_EXPOENTE - BITS_SUBBALDE + 1) * SUBBALDES;
+
+    private final LongAdder[] baldes = new LongAdder[BALDES];
+    private final LongAdder soma = new LongAdder();
+    private final LongAccumulator maximo = new LongAccumulator(Math::max, 0);
+
+    public HistogramaLatencia() {
+        for (int i = 0; i < BALDES; i++) {
+            baldes[i] = new LongAdder();
+        }
+    }
+
+    public void registrar(long nanos) {
+        long valor = Math.max(0, Math.min(MAXIMO, nanos));
+        baldes[balde(valor)].increment();
+        soma.add(valor);
+        maximo.accumulate(valor);
+    }
+
+    public Foto foto() {
+        long[] contagens = new long[BALDES];
+        long total = 0;
+        for (int i = 0; i < BALDES; i++) {
+            contagens[i] = baldes[i].sum();
+            total += contagens[i];
+        }
+        return new Foto(contagens, total, soma.sum(), maximo.get());
+    }
+
+    static int balde(long valor) {
+        if (valor < SUBBALDES) {
+            return (int) valor;
+        }
+        int expoente = 63 - Long.numberOfLeadingZeros(valor);
+        int sub = (int) (valor >>> (expoente - BITS_SUBBALDE)) & (SUBBALDES - 1);
+        return SUBBALDES + (expoente - BITS_SUBBALDE) * SUBBALDES + sub;
+    }
+
+    // Maior valor que cai no balde.
+    static long fimBalde(int balde) {
+        if (balde < SUBBALDES) {
+            return balde;
+        }
+        int expoente = (balde - SUBBALDES) / SUBBALDES + BITS_SUBBALDE;
+        int sub = (balde - SUBBALDES) % SUBBALDES;
+        return ((long) (SUBBALDES + sub + 1) << (expoente - BITS_SUBBALDE)) - 1;
+    }
+
+    /**
+     * Contagens do histograma num instante. Como os baldes são lidos um a um
+     * enquanto outras threads registram, a foto pode misturar registros feitos
+     * durante a leitura; para métricas isso basta.
+     */
+    public static class Foto {
+        private final long[] contagens;
+        private final long total;
+        private final long soma;
+        private final long maximo;
+
+        Foto(long[] contagens, long total, long soma, long maximo) {
+            this.contagens = contagens;
+            this.total = total;
+            this.soma = soma;
+            this.maximo = maximo;
+        }
+
+        public long getTotal() {
+            return total;
+        }
+
+        public long getMaximo() {
+            return maximo;
+        }
+
+        public double getMedia() {
+            return total == 0 ? 0 : soma / (double) total;
+        }
+
+        // Valor (ns) abaixo do qual está a fração "p" dos registros, arredondado para cima no balde.
+        public long percentil(double p) {
+            long alvo = Math.max(1, (long) Math.ceil(p * total));
+            long acumulado = 0;
+            for (int i = 0; i < contagens.length; i++) {
+                acumulado += contagens[i];
+                if (acumulado >= alvo) {
+                    return Math.min(maximo, fimBalde(i));
+                }
+            }
+            return maximo;
+        }
+    }
+}
@@ -0,0 +1,133 @@
+import java.util.*;
+
+/**
+ * Índice invertido de um campo de texto das mídias (título ou artista).
+ * Guarda o texto completo normalizado (busca exata) e cada palavra dele
+ * (busca por palavras e por prefixo), apontando para as mídias que os contêm.
+ * As chaves chegam já normalizadas (ver {@link Midia#getTituloNormalizado()});
+ * só o termo da consulta é normalizado aqui, uma vez por busca.
+ */
+public class IndiceInvertido {
+    // texto completo normalizado -> mídias
+    private Map<String, Set<Midia>> porChave = new HashMap<>();
+    // palavra -> mídias; o TreeMap deixa as palavras com o mesmo prefixo lado a lado
+    private TreeMap<String, Set<Midia>> porToken = new TreeMap<>();
+    // trigramas das chaves completas, para a busca aproximada
+    private IndiceTrigramas trigramas = new IndiceTrigramas();
+
+    public void adicionar(String chave, Midia midia) {
+        porChave.computeIfAbsent(chave, k -> {
+            trigramas.adicionar(k);
+            return new LinkedHashSet<>();
+        }).add(midia);
+        for (String token : tokens(chave)) {
+            porToken.computeIfAbsent(token, k -> new LinkedHashSet<>()).add(midia);
+        }
+    }
+
+    public void remover(String chave, Midia midia) {
+        if (removerDe(porChave, chave, midia)) {
+            trigramas.remover(chave);
+        }
+        for (String token : tokens(chave)) {
+            removerDe(porToken, token, midia);
+        }
+    }
+
+    // Busca exata (ignorando acentos, maiúsculas/minúsculas e pontuação).
+    public List<Midia> buscarExato(String texto) {
+        return new ArrayList<>(porChave.getOrDefault(Normalizador.normalizar(texto), Collections.emptySet()));
+    }
+
+    // Mídias com alguma palavra começando por "prefixo".
+    public List<Midia> buscarPorPrefixo(String prefixo) {
+        return new ArrayList<>(uniaoPrefixo(Normalizador.normalizar(prefixo)));
+    }
+
+    /**
+     * Mídias que contêm TODAS as palavras da consulta. A última palavra vale
+     * como prefixo, para a busca funcionar enquanto o usuário ainda digita.
+     */
+    public List<Midia> buscarPalavras(String consulta) {
+        List<String> termos = tokens(Normalizador.normalizar(consulta));
+        if (termos.isEmpty()) {
+            return new ArrayList<>();
+        }
+        List<Set<Midia>> conjuntos = new ArrayList<>();
+        for (int i = 0; i < termos.size(); i++) {
+            Set<Midia> conjunto = (i == termos.size() - 1)
+                    ? uniaoPrefixo(termos.get(i))
+                    : porToken.getOrDefault(termos.get(i), Collections.emptySet());
+            if (conjunto.isEmpty()) {
+                return new ArrayList<>();
+            }
+            conjuntos.add(conjunto);
+        }
+        // Percorre o menor conjunto e confere nos outros: custo proporcional ao resultado.
+        conjuntos.sort(Comparator.comparingInt(Set::size));
+        List<Midia> resultados = new ArrayList<>();
+        for (Midia midia : conjuntos.get(0)) {
+            boolean emTodos = true;
+            for (int i = 1; i < conjuntos.size() && emTodos; i++) {
+                emTodos = conjuntos.get(i).contains(midia);
+            }
+            if (emTodos) {
+                resultados.add(midia);
+            }
+        }
+        return resultados;
+    }
+
+    /**
+     * Busca tolerante a erros de digitação: mídias cuja chave completa está a
+     * no máximo "maxDistancia" edições do termo, das mais próximas às mais distantes.
+     */
+    public List<Midia> buscarAproximado(String termo, int maxDistancia) {
+        List<Midia> resultados = new ArrayList<>();
+        for (String chave : trigramas.buscar(Normalizador.normalizar(termo), maxDistancia)) {
+            resultados.addAll(porChave.get(chave));
+        }
+        return resultados;
+    }
+
+    private Set<Midia> uniaoPrefixo(String prefixo) {
+        if (prefixo.isEmpty()) {
+            return Collections.emptySet();
+        }
+        SortedMap<String, Set<Midia>> faixa = porToken.subMap(prefixo, prefixo + Character.MAX_VALUE);
+        if (faixa.size() == 1) {
+            return faixa.values().iterator().next();
+        }
+        Set<Midia> uniao = new LinkedHashSet<>();
+        for (Set<Midia> conjunto : faixa.values()) {
+            uniao.addAll(conjunto);
+        }
+        return uniao;
+    }
+
+    // Devolve true quando a chave ficou sem mídias e saiu do mapa.
+    private static boolean removerDe(Map<String, Set<Midia>> mapa, String chave, Midia midia) {
+        Set<Midia> conjunto = mapa.get(chave);
+        if (conjunto != null) {
+            conjunto.remove(midia);
+            if (conjunto.isEmpty()) {
+                mapa.remove(chave);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public int quantidadeChaves() {
+        return porChave.size();
+    }
+
+    public int quantidadePalavras() {
+        return porToken.size();
+    }
+
+    // Palavras de um texto já normalizado (separadas por um único espaço).
+    static List<String> tokens(String chave) {
+        return chave.isEmpty() ? Collections.emptyList() : Arrays.asList(chave.split(" "));
+    }
+}
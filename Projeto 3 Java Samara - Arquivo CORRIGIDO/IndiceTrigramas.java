@@ -0,0 +1,167 @@
+import java.util.*;
+
+/**
+ * Índice de trigramas das chaves normalizadas, para busca tolerante a erros
+ * de digitação. Cada chave vira "$chave$" e é quebrada em sequências de 3
+ * caracteres; a segunda ocorrência de um mesmo trigrama conta como outro
+ * ("aaa", "aaa#1"), então uma chave de n caracteres tem exatamente n trigramas.
+ * Como uma edição destrói no máximo 3 trigramas, uma chave a distância <= d da
+ * consulta compartilha pelo menos (n - 3d) deles; só essas candidatas passam
+ * pelo cálculo de Levenshtein.
+ * <p>
+ * Quando n <= 3d o filtro não corta nada. Nesse caso as candidatas têm no
+ * máximo n + d <= 4d caracteres, e saem de um índice de vizinhança por
+ * deleção das chaves curtas: se duas chaves estão a distância <= d, apagando
+ * até d caracteres de cada uma se chega ao mesmo texto.
+ */
+public class IndiceTrigramas {
+    /** Maior distância aceita por {@link #buscar(String, int)}. */
+    public static final int DISTANCIA_MAXIMA = 2;
+    // Chaves até este tamanho entram também no índice por deleção
+    private static final int TAMANHO_CURTA = 4 * DISTANCIA_MAXIMA;
+
+    private Map<String, Set<String>> chavesPorTrigrama = new HashMap<>();
+    // Texto com até DISTANCIA_MAXIMA caracteres apagados -> chaves curtas que o geram
+    private Map<String, Set<String>> chavesPorDelecao = new HashMap<>();
+
+    public void adicionar(String chave) {
+        for (String trigrama : trigramas(chave)) {
+            chavesPorTrigrama.computeIfAbsent(trigrama, k -> new HashSet<>()).add(chave);
+        }
+        if (chave.length() <= TAMANHO_CURTA) {
+            for (String variante : delecoes(chave, DISTANCIA_MAXIMA)) {
+                chavesPorDelecao.computeIfAbsent(variante, k -> new HashSet<>()).add(chave);
+            }
+        }
+    }
+
+    public void remover(String chave) {
+        for (String trigrama : trigramas(chave)) {
+            removerDe(chavesPorTrigrama, trigrama, chave);
+        }
+        if (chave.length() <= TAMANHO_CURTA) {
+            for (String variante : delecoes(chave, DISTANCIA_MAXIMA)) {
+                removerDe(chavesPorDelecao, variante, chave);
+            }
+        }
+    }
+
+    /**
+     * Chaves a no máximo "maxDistancia" edições do termo (já normalizado),
+     * da mais próxima para a mais distante.
+     *
+     * @throws IllegalArgumentException se maxDistancia estiver fora de 0..{@link #DISTANCIA_MAXIMA}
+     */
+    public List<String> buscar(String termo, int maxDistancia) {
+        if (maxDistancia < 0 || maxDistancia > DISTANCIA_MAXIMA) {
+            throw new IllegalArgumentException("Distância deve estar entre 0 e " + DISTANCIA_MAXIMA);
+        }
+        List<String> gramasConsulta = trigramas(termo);
+        int minimoComum = gramasConsulta.size() - 3 * maxDistancia;
+
+        Collection<String> candidatas;
+        if (minimoComum > 0) {
+            Map<String, Integer> comuns = new HashMap<>();
+            for (String trigrama : gramasConsulta) {
+                for (String chave : chavesPorTrigrama.getOrDefault(trigrama, Collections.emptySet())) {
+                    comuns.merge(chave, 1, Integer::sum);
+                }
+            }
+            candidatas = new ArrayList<>();
+            for (Map.Entry<String, Integer> e : comuns.entrySet()) {
+                if (e.getValue() >= minimoComum) {
+                    candidatas.add(e.getKey());
+                }
+            }
+        } else {
+            candidatas = new HashSet<>();
+            for (String variante : delecoes(termo, maxDistancia)) {
+                candidatas.addAll(chavesPorDelecao.getOrDefault(variante, Collections.emptySet()));
+            }
+        }
+
+        List<String> encontradas = new ArrayList<>();
+        Map<String, Integer> distancias = new HashMap<>();
+        for (String chave : candidatas) {
+            if (Math.abs(chave.length() - termo.length()) > maxDistancia) {
+                continue;
+            }
+            int distancia = distancia(termo, chave, maxDistancia);
+            if (distancia <= maxDistancia) {
+                encontradas.add(chave);
+                distancias.put(chave, distancia);
+            }
+        }
+        encontradas.sort(Comparator.comparing((String c) -> distancias.get(c)).thenComparing(c -> c));
+        return encontradas;
+    }
+
+    /**
+     * Distância de Levenshtein limitada: devolve max + 1 assim que uma linha
+     * inteira da matriz passa do limite, sem terminar o cálculo.
+     */
+    static int distancia(String a, String b, int max) {
+        int[] anterior = new int[b.length() + 1];
+        int[] atual = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) {
+            anterior[j] = j;
+        }
+        for (int i = 1; i <= a.length(); i++) {
+            atual[0] = i;
+            int menorDaLinha = atual[0];
+            for (int j = 1; j <= b.length(); j++) {
+                int custo = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                atual[j] = Math.min(Math.min(atual[j - 1] + 1, anterior[j] + 1), anterior[j - 1] + custo);
+                menorDaLinha = Math.min(menorDaLinha, atual[j]);
+            }
+            if (menorDaLinha > max) {
+                return max + 1;
+            }
+            int[] troca = anterior;
+            anterior = atual;
+            atual = troca;
+        }
+        return anterior[b.length()];
+    }
+
+    // Trigramas de "$chave$"; repetições ganham o número da ocorrência ("aaa#1").
+    private static List<String> trigramas(String chave) {
+        String marcada = "$" + chave + "$";
+        List<String> trigramas = new ArrayList<>();
+        Map<String, Integer> ocorrencias = new HashMap<>();
+        for (int i = 0; i + 3 <= marcada.length(); i++) {
+            String trigrama = marcada.substring(i, i + 3);
+            int vezes = ocorrencias.merge(trigrama, 1, Integer::sum);
+            trigramas.add(vezes == 1 ? trigrama : trigrama + "#" + (vezes - 1));
+        }
+        return trigramas;
+    }
+
+    // O próprio texto e tudo o que se obtém dele apagando até "max" caracteres.
+    private static Set<String> delecoes(String texto, int max) {
+        Set<String> todas = new HashSet<>();
+        todas.add(texto);
+        Set<String> nivel = todas;
+        for (int d = 1; d <= max; d++) {
+            Set<String> proximo = new HashSet<>();
+            for (String s : nivel) {
+                for (int i = 0; i < s.length(); i++) {
+                    proximo.add(s.substring(0, i) + s.substring(i + 1));
+                }
+            }
+            todas.addAll(proximo);
+            nivel = proximo;
+        }
+        return todas;
+    }
+
+    private static <K> void removerDe(Map<K, Set<String>> mapa, K chave, String valor) {
+        Set<String> conjunto = mapa.get(chave);
+        if (conjunto != null) {
+            conjunto.remove(valor);
+            if (conjunto.isEmpty()) {
+                mapa.remove(chave);
+            }
+        }
+    }
+}
@@ -4,6 +4,9 @@ public class Main {
     public static void main(String[] args) {
         Scanner scan = new Scanner(System.in);
         Catalago catalago = new Catalago();
+        // Métricas das operações: opção 12 do menu ou JMX (MiniSpotify:type=Metricas)
+        Metricas.registrarMedidores(catalago::medidores);
+        Metricas.registrarJmx();
         String nomepessoa;
         String email;
 
@@ -39,6 +42,8 @@ public class Main {
             System.out.println("8 - ➕ Adicionar mídia a uma playlist");
             System.out.println("9 - ❌ Excluir mídia de uma playlist");
             System.out.println("10 - 📊 Visualizar playlists e mídias contidas");
+            System.out.println("11 - ❌ Excluir todas as mídias de um artista");
+            System.out.println("12 - 📈 Métricas de desempenho");
             System.out.println("0 - 🚪 Sair do sistema\n");
 
             try {
@@ -91,6 +96,14 @@ public class Main {
                                        "---------------------------------");
                     catalago.visualizarMidiasPlaylists();
                     break;
+                case 11:
+                    // 11 - Excluir todas as mídias de um artista
+                    catalago.excluirMidiasArtista();
+                    break;
+                case 12:
+                    // 12 - Métricas de desempenho
+                    System.out.print(Metricas.relatorio());
+                    break;
                 case 0:
                     // 0 - Sair do sistema
                     System.out.println("Sistema encerrado com sucesso!");
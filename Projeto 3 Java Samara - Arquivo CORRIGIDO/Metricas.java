@@ -0,0 +1,278 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+import javax.management.*;
+
+/**
+ * Métricas das operações do catálogo e das playlists: quantas vezes cada uma
+ * rodou e um histograma da latência (ver {@link HistogramaLatencia}), mais
+ * medidores com o tamanho do catálogo e dos índices. Médias e percentis só são
+ * calculados quando alguém lê as métricas (opção 12 do menu ou JMX, em
+ * MiniSpotify:type=Metricas).
+ *
+ * O caminho quente é uma soma atômica num de poucos blocos fixos de contadores
+ * (2 por processador, escolhido pelo id da thread, cada bloco na sua linha de
+ * cache), como faz o LongAdder: threads diferentes raramente disputam o mesmo
+ * bloco, a memória não cresce com o número de threads (nem com threads virtuais)
+ * e a leitura soma os blocos. Nas operações rápidas a latência é medida nas 256
+ * primeiras chamadas de cada bloco e depois em 1 de cada 64, para as leituras de
+ * relógio (dezenas de ns cada) não pesarem; a contagem de chamadas é sempre exata.
+ * -Dminispotify.metricas=false desliga tudo.
+ *
+ * Uso:
+ *   long inicio = Metricas.iniciar(Metricas.Operacao.BUSCAR_TITULO);
+ *   try { ... } finally { Metricas.concluir(Metricas.Operacao.BUSCAR_TITULO, inicio); }
+ */
+public class Metricas {
+    public enum Operacao {
+        LISTAR(false),
+        ADICIONAR_MIDIA(true),
+        EXCLUIR_MIDIA(false),
+        EXCLUIR_MIDIAS(false),
+        BUSCAR_TITULO(true),
+        BUSCAR_ARTISTA(true),
+        BUSCAR_GENERO(true),
+        BUSCAR_TITULO_APROXIMADO(true),
+        BUSCAR_ARTISTA_APROXIMADO(true),
+        CRIAR_PLAYLIST(false),
+        EXCLUIR_PLAYLIST(false),
+        ADICIONAR_NA_PLAYLIST(true),
+        REMOVER_DA_PLAYLIST(true),
+        VISUALIZAR_PLAYLISTS(false);
+
+        // Operações rápidas têm a latência amostrada; as demais são medidas sempre
+        private final boolean amostrada;
+
+        Operacao(boolean amostrada) {
+            this.amostrada = amostrada;
+        }
+
+        public String getNome() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    // Marca de "esta chamada não foi amostrada"
+    private static final long NAO_MEDIDA = Long.MIN_VALUE;
+    private static final int SEMPRE_MEDIDAS = 256;
+    private static final int MASCARA_AMOSTRA = 63;
+    private static final Operacao[] OPERACOES = Operacao.values();
+    private static final HistogramaLatencia[] LATENCIAS = new HistogramaLatencia[OPERACOES.length];
+    // Blocos de contadores lado a lado num só vetor: bloco b, operação i em b * PASSO + i.
+    // PASSO deixa ao menos 64 bytes entre blocos vizinhos, para não dividirem linha de cache.
+    private static final int BLOCOS = Math.min(64,
+            Integer.highestOneBit(Math.max(1, 2 * Runtime.getRuntime().availableProcessors() - 1)) << 1);
+    private static final int PASSO = (OPERACOES.length + 15) & ~7;
+    private static final long[] CHAMADAS = new long[BLOCOS * PASSO];
+    private static final VarHandle CONTADOR = MethodHandles.arrayElementVarHandle(long[].class);
+    // Fontes dos medidores; cada uma devolve nome -> valor quando as métricas são lidas
+    private static final List<Supplier<Map<String, Long>>> MEDIDORES = new CopyOnWriteArrayList<>();
+
+    private static final boolean ATIVAS = !"false".equals(System.getProperty("minispotify.metricas"));
+
+    static {
+        for (int i = 0; i < OPERACOES.length; i++) {
+            LATENCIAS[i] = new HistogramaLatencia();
+        }
+    }
+
+    private Metricas() {
+    }
+
+    // Conta a chamada e, se ela for medida, devolve o instante de início.
+    public static long iniciar(Operacao operacao) {
+        if (!ATIVAS) {
+            return NAO_MEDIDA;
+        }
+        long chamadas = (long) CONTADOR.getAndAdd(CHAMADAS, bloco() + operacao.ordinal(), 1L) + 1;
+        if (operacao.amostrada && chamadas > SEMPRE_MEDIDAS
+                && (ThreadLocalRandom.current().nextInt() & MASCARA_AMOSTRA) != 0) {
+            return NAO_MEDIDA;
+        }
+        return System.nanoTime();
+    }
+
+    public static void concluir(Operacao operacao, long inicio) {
+        if (inicio != NAO_MEDIDA) {
+            LATENCIAS[operacao.ordinal()].registrar(System.nanoTime() - inicio);
+        }
+    }
+
+    // Início do bloco da thread atual: o id da thread espalhado pelo hash de Fibonacci.
+    private static int bloco() {
+        long id = Thread.currentThread().getId();
+        return ((int) ((id * 0x9E3779B97F4A7C15L) >>> 32) & (BLOCOS - 1)) * PASSO;
+    }
+
+    public static void registrarMedidores(Supplier<Map<String, Long>> fonte) {
+        MEDIDORES.add(fonte);
+    }
+
+    public static long getChamadas(Operacao operacao) {
+        long total = 0;
+        for (int bloco = 0; bloco < BLOCOS; bloco++) {
+            total += (long) CONTADOR.getOpaque(CHAMADAS, bloco * PASSO + operacao.ordinal());
+        }
+        return total;
+    }
+
+    public static HistogramaLatencia.Foto getLatencias(Operacao operacao) {
+        return LATENCIAS[operacao.ordinal()].foto();
+    }
+
+    public static Map<String, Long> getMedidores() {
+        Map<String, Long> valores = new TreeMap<>();
+        for (Supplier<Map<String, Long>> fonte : MEDIDORES) {
+            valores.putAll(fonte.get());
+        }
+        return valores;
+    }
+
+    // Tabela com as operações já chamadas e os medidores, para o menu.
+    public static String relatorio() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%-26s %10s %9s %10s %10s %10s %10s %10s%n",
+                "Operação", "chamadas", "medidas", "média µs", "p50 µs", "p99 µs", "p99,9 µs", "máx µs"));
+        for (Operacao operacao : OPERACOES) {
+            long chamadas = getChamadas(operacao);
+            if (chamadas == 0) {
+                continue;
+            }
+            HistogramaLatencia.Foto foto = getLatencias(operacao);
+            sb.append(String.format("%-26s %10d %9d %10.1f %10.1f %10.1f %10.1f %10.1f%n",
+                    operacao.getNome(), chamadas, foto.getTotal(), foto.getMedia() / 1000,
+                    foto.percentil(0.50) / 1000.0, foto.percentil(0.99) / 1000.0,
+                    foto.percentil(0.999) / 1000.0, foto.getMaximo() / 1000.0));
+        }
+        for (Map.Entry<String, Long> medidor : getMedidores().entrySet()) {
+            sb.append(String.format("%-26s %10d%n", medidor.getKey(), medidor.getValue()));
+        }
+        return sb.toString();
+    }
+
+    // Publica as métricas no servidor JMX da JVM (jconsole, VisualVM...).
+    public static void registrarJmx() {
+        try {
+            ObjectName nome = new ObjectName("MiniSpotify:type=Metricas");
+            MBeanServer servidor = ManagementFactory.getPlatformMBeanServer();
+            if (!servidor.isRegistered(nome)) {
+                servidor.registerMBean(new Jmx(), nome);
+            }
+        } catch (JMException e) {
+            System.out.println("Aviso: métricas não publicadas no JMX: " + e.getMessage());
+        }
+    }
+
+    /**
+     * MBean dinâmico: os atributos são "operacao.campo" (ex.: buscar_titulo.p99Micros)
+     * e "medidor.nome", todos somente leitura; a operação "relatorio" devolve a tabela do menu.
+     */
+    private static class Jmx implements DynamicMBean {
+        private static final String[] CAMPOS = {
+            "chamadas", "medidas", "mediaMicros", "p50Micros", "p99Micros", "p999Micros", "maximoMicros"
+        };
+
+        @Override
+        public Object getAttribute(String atributo) throws AttributeNotFoundException {
+            int ponto = atributo.indexOf('.');
+            if (ponto > 0) {
+                String prefixo = atributo.substring(0, ponto);
+                String campo = atributo.substring(ponto + 1);
+                if (prefixo.equals("medidor")) {
+                    Long valor = getMedidores().get(campo);
+                    if (valor != null) {
+                        return valor;
+                    }
+                } else {
+                    for (Operacao operacao : OPERACOES) {
+                        if (operacao.getNome().equals(prefixo)) {
+                            Object valor = valor(operacao, campo);
+                            if (valor != null) {
+                                return valor;
+                            }
+                        }
+                    }
+                }
+            }
+            throw new AttributeNotFoundException("Atributo desconhecido: " + atributo);
+        }
+
+        private static Object valor(Operacao operacao, String campo) {
+            if (campo.equals("chamadas")) {
+                return getChamadas(operacao);
+            }
+            HistogramaLatencia.Foto foto = getLatencias(operacao);
+            switch (campo) {
+                case "medidas":
+                    return foto.getTotal();
+                case "mediaMicros":
+                    return foto.getMedia() / 1000;
+                case "p50Micros":
+                    return foto.percentil(0.50) / 1000.0;
+                case "p99Micros":
+                    return foto.percentil(0.99) / 1000.0;
+                case "p999Micros":
+                    return foto.percentil(0.999) / 1000.0;
+                case "maximoMicros":
+                    return foto.getMaximo() / 1000.0;
+                default:
+                    return null;
+            }
+        }
+
+        @Override
+        public AttributeList getAttributes(String[] atributos) {
+            AttributeList lista = new AttributeList();
+            for (String atributo : atributos) {
+                try {
+                    lista.add(new Attribute(atributo, getAttribute(atributo)));
+                } catch (AttributeNotFoundException e) {
+                    // atributos desconhecidos ficam de fora, como pede a interface
+                }
+            }
+            return lista;
+        }
+
+        @Override
+        public void setAttribute(Attribute atributo) throws AttributeNotFoundException {
+            throw new AttributeNotFoundException("As métricas são somente leitura: " + atributo.getName());
+        }
+
+        @Override
+        public AttributeList setAttributes(AttributeList atributos) {
+            return new AttributeList();
+        }
+
+        @Override
+        public Object invoke(String acao, Object[] parametros, String[] assinatura) throws ReflectionException {
+            if (acao.equals("relatorio")) {
+                return relatorio();
+            }
+            throw new ReflectionException(new NoSuchMethodException(acao));
+        }
+
+        @Override
+        public MBeanInfo getMBeanInfo() {
+            List<MBeanAttributeInfo> atributos = new ArrayList<>();
+            for (Operacao operacao : OPERACOES) {
+                for (String campo : CAMPOS) {
+                    String tipo = campo.endsWith("Micros") ? Double.class.getName() : Long.class.getName();
+                    atributos.add(new MBeanAttributeInfo(operacao.getNome() + "." + campo, tipo,
+                            campo + " de " + operacao.getNome(), true, false, false));
+                }
+            }
+            for (String medidor : getMedidores().keySet()) {
+                atributos.add(new MBeanAttributeInfo("medidor." + medidor, Long.class.getName(),
+                        medidor, true, false, false));
+            }
+            MBeanOperationInfo relatorio = new MBeanOperationInfo("relatorio", "Tabela de métricas em texto",
+                    new MBeanParameterInfo[0], String.class.getName(), MBeanOperationInfo.INFO);
+            return new MBeanInfo(Metricas.class.getName(), "Métricas do Mini Spotify",
+                    atributos.toArray(new MBeanAttributeInfo[0]), null, new MBeanOperationInfo[] { relatorio }, null);
+        }
+    }
+}
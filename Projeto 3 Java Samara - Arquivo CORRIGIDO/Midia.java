@@ -3,12 +3,17 @@ public abstract class Midia {
     private String artista;
     private double duracao;
     private Genero genero;
+    // Formas normalizadas calculadas uma única vez, usadas pelos índices de busca
+    private String tituloNormalizado;
+    private String artistaNormalizado;
 
     public Midia(String titulo, String artista, double duracao, Genero genero) {
         this.titulo = titulo;
         this.artista = artista;
         this.duracao = duracao;
         this.genero = genero;
+        this.tituloNormalizado = Normalizador.normalizar(titulo);
+        this.artistaNormalizado = Normalizador.normalizar(artista);
     }
 
     public String getTitulo() {
@@ -27,8 +32,26 @@ public abstract class Midia {
         return genero;
     }
 
+    public String getTituloNormalizado() {
+        return tituloNormalizado;
+    }
+
+    public String getArtistaNormalizado() {
+        return artistaNormalizado;
+    }
+
+    /**
+     * Escreve a descrição da mídia direto em "sb", sem criar Strings
+     * intermediárias; as listagens reaproveitam o mesmo StringBuilder para
+     * todas as linhas. As subclasses trocam o formato sobrescrevendo este método.
+     */
+    public StringBuilder acrescentar(StringBuilder sb) {
+        return sb.append(titulo).append(" - ").append(artista)
+                .append(" (").append(genero).append(") ").append(duracao).append(" min");
+    }
+
     @Override
     public String toString() {
-        return titulo + " - " + artista + " (" + genero + ") " + duracao + " min";
+        return acrescentar(new StringBuilder(96)).toString();
     }
 }
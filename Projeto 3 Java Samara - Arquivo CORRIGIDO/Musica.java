@@ -4,7 +4,8 @@ public class Musica extends Midia {
     }
 
     @Override
-    public String toString() {
-        return "Música - Título: " + getTitulo() + " / Artista: " + getArtista() + " / Gênero: (" + getGenero() + ") " + "/ Duração: "  + getDuracao() + " Minutos";
+    public StringBuilder acrescentar(StringBuilder sb) {
+        return sb.append("Música - Título: ").append(getTitulo()).append(" / Artista: ").append(getArtista())
+                .append(" / Gênero: (").append(getGenero()).append(") / Duração: ").append(getDuracao()).append(" Minutos");
     }
 }
@@ -0,0 +1,48 @@
+import java.text.Normalizer;
+
+/**
+ * Normalização única usada em todas as buscas do catálogo: remove acentos,
+ * passa para minúsculas e reduz pontuação/espaços a um único espaço.
+ * Ex.: "  Clássica:  Op.9 " -> "classica op 9".
+ */
+public final class Normalizador {
+
+    private Normalizador() {
+    }
+
+    public static String normalizar(String texto) {
+        if (texto == null) {
+            return "";
+        }
+        String base = texto;
+        // Só decompõe (NFD) quando há algum caractere fora do ASCII.
+        for (int i = 0; i < texto.length(); i++) {
+            if (texto.charAt(i) > 127) {
+                base = Normalizer.normalize(texto, Normalizer.Form.NFD);
+                break;
+            }
+        }
+        StringBuilder sb = new StringBuilder(base.length());
+        boolean separar = false;
+        for (int i = 0; i < base.length(); i++) {
+            char c = base.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                if (separar && sb.length() > 0) {
+                    sb.append(' ');
+                }
+                separar = false;
+                sb.append(Character.toLowerCase(c));
+            } else if (!ehAcento(c)) {
+                separar = true;
+            }
+        }
+        return sb.toString();
+    }
+
+    private static boolean ehAcento(char c) {
+        int tipo = Character.getType(c);
+        return tipo == Character.NON_SPACING_MARK
+                || tipo == Character.COMBINING_SPACING_MARK
+                || tipo == Character.ENCLOSING_MARK;
+    }
+}
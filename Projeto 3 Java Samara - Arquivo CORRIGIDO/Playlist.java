@@ -1,31 +1,225 @@
-import java.util.*;
-
-public class Playlist {
-    private String nome;
-    private List<Midia> midias = new ArrayList<>();
-
-    public Playlist(String nome) {
-        this.nome = nome;
-    }
-
-    public String getNome() {
-        return nome;
-    }
-
-    public List<Midia> getMidias() {
-        return midias;
-    }
-
-    public void adicionarMidia(Midia midia) {
-        midias.add(midia);
-    }
-
-    public void removerMidia(Midia midia) {
-        midias.remove(midia);
-    }
-
-    @Override
-    public String toString() {
-        return "Playlist: " + nome;
-    }
-}
\ No newline at end of file
+import java.util.*;
+
+public class Playlist {
+    private String nome;
+    // Mídias na ordem de inclusão: cada uma ocupa a próxima posição do vetor, e uma
+    // removida deixa a posição vazia (null) até a próxima compactação. A árvore de
+    // Fenwick conta as posições ocupadas, o que acha a i-ésima mídia em O(log n)
+    // sem copiar a playlist para uma lista a cada alteração.
+    private Midia[] posicoes = new Midia[16];
+    private int[] ocupadas = new int[posicoes.length + 1];   // Fenwick, índices a partir de 1
+    private int usadas;                                       // posições já usadas, vazias ou não
+    // Mídia -> posição no vetor: contém/remove em O(1) mesmo com milhares de mídias.
+    private Map<Midia, Integer> posicaoPorMidia = new HashMap<>();
+    private int alteracoes;                                   // para os iteradores detectarem mudanças
+    private final List<Midia> visao = new Itens();
+    // Totais atualizados a cada inclusão/remoção, para o resumo não percorrer a lista
+    private double duracaoTotal;
+    private int musicas;
+    private int podcasts;
+    private int audiobooks;
+    private Map<Genero, Integer> generos = new EnumMap<>(Genero.class);
+
+    public Playlist(String nome) {
+        this.nome = nome;
+    }
+
+    public String getNome() {
+        return nome;
+    }
+
+    // Visão somente leitura que acompanha a playlist: get(i) em O(log n), iteração em O(n).
+    // Alterar a playlist durante uma iteração lança ConcurrentModificationException;
+    // para remover enquanto percorre, copie a lista antes.
+    public List<Midia> getMidias() {
+        return visao;
+    }
+
+    public boolean contem(Midia midia) {
+        return posicaoPorMidia.containsKey(midia);
+    }
+
+    // Cada mídia entra uma vez só; adicionar de novo não muda a playlist.
+    public void adicionarMidia(Midia midia) {
+        if (posicaoPorMidia.containsKey(midia)) {
+            return;
+        }
+        // Totais antes da estrutura: se algo falhar aqui, a playlist fica como estava
+        contabilizar(midia, 1, posicaoPorMidia.size() + 1);
+        if (usadas == posicoes.length) {
+            abrirEspaco();
+        }
+        posicoes[usadas] = midia;
+        somar(usadas, 1);
+        posicaoPorMidia.put(midia, usadas++);
+        alteracoes++;
+    }
+
+    public void removerMidia(Midia midia) {
+        Integer posicao = posicaoPorMidia.get(midia);
+        if (posicao == null) {
+            return;
+        }
+        contabilizar(midia, -1, posicaoPorMidia.size() - 1);
+        posicaoPorMidia.remove(midia);
+        posicoes[posicao] = null;
+        somar(posicao, -1);
+        alteracoes++;
+        // Mais da metade das posições vazias: compacta, para a iteração continuar O(n)
+        if (usadas > 16 && posicaoPorMidia.size() < usadas / 2) {
+            compactar(posicoes.length);
+        }
+    }
+
+    // Vetor cheio: se há muitas posições vazias basta compactar; senão dobra.
+    private void abrirEspaco() {
+        compactar(posicaoPorMidia.size() < usadas / 2 ? posicoes.length : posicoes.length * 2);
+    }
+
+    // Junta as mídias no começo de um vetor com a capacidade dada e refaz a árvore em O(n).
+    private void compactar(int capacidade) {
+        Midia[] novas = new Midia[capacidade];
+        int n = 0;
+        for (int i = 0; i < usadas; i++) {
+            if (posicoes[i] != null) {
+                novas[n] = posicoes[i];
+                posicaoPorMidia.put(novas[n], n);
+                n++;
+            }
+        }
+        posicoes = novas;
+        usadas = n;
+        ocupadas = new int[capacidade + 1];
+        for (int i = 1; i <= capacidade; i++) {
+            ocupadas[i] += i <= n ? 1 : 0;
+            int pai = i + (i & -i);
+            if (pai <= capacidade) {
+                ocupadas[pai] += ocupadas[i];
+            }
+        }
+    }
+
+    private void somar(int posicao, int valor) {
+        for (int i = posicao + 1; i < ocupadas.length; i += i & -i) {
+            ocupadas[i] += valor;
+        }
+    }
+
+    // Posição no vetor da i-ésima mídia (a partir de 0), descendo pela árvore.
+    private int posicaoDoItem(int i) {
+        int posicao = 0;
+        for (int passo = Integer.highestOneBit(posicoes.length); passo > 0; passo >>= 1) {
+            int proxima = posicao + passo;
+            if (proxima < ocupadas.length && ocupadas[proxima] <= i) {
+                posicao = proxima;
+                i -= ocupadas[proxima];
+            }
+        }
+        return posicao;
+    }
+
+    private final class Itens extends AbstractList<Midia> {
+        @Override
+        public Midia get(int i) {
+            Objects.checkIndex(i, posicaoPorMidia.size());
+            return posicoes[posicaoDoItem(i)];
+        }
+
+        @Override
+        public int size() {
+            return posicaoPorMidia.size();
+        }
+
+        @Override
+        public Iterator<Midia> iterator() {
+            return new Iterator<Midia>() {
+                private final int esperadas = alteracoes;
+                private int proxima = avancar(0);
+
+                private int avancar(int i) {
+                    while (i < usadas && posicoes[i] == null) {
+                        i++;
+                    }
+                    return i;
+                }
+
+                @Override
+                public boolean hasNext() {
+                    return proxima < usadas;
+                }
+
+                @Override
+                public Midia next() {
+                    if (alteracoes != esperadas) {
+                        throw new ConcurrentModificationException();
+                    }
+                    if (proxima >= usadas) {
+                        throw new NoSuchElementException();
+                    }
+                    Midia midia = posicoes[proxima];
+                    proxima = avancar(proxima + 1);
+                    return midia;
+                }
+            };
+        }
+    }
+
+    // "restantes": quantas mídias a playlist terá depois da alteração.
+    private void contabilizar(Midia midia, int sinal, int restantes) {
+        duracaoTotal = restantes == 0 ? 0 : duracaoTotal + sinal * midia.getDuracao();
+        if (midia instanceof Podcast) {
+            podcasts += sinal;
+        } else if (midia instanceof Audiobook) {
+            audiobooks += sinal;
+        } else {
+            musicas += sinal;
+        }
+        // Podcasts e audiobooks criados pelo menu não têm gênero: ficam fora da contagem
+        if (midia.getGenero() == null) {
+            return;
+        }
+        int quantidade = generos.getOrDefault(midia.getGenero(), 0) + sinal;
+        if (quantidade == 0) {
+            generos.remove(midia.getGenero());
+        } else {
+            generos.put(midia.getGenero(), quantidade);
+        }
+    }
+
+    // Duração total em minutos.
+    public double getDuracaoTotal() {
+        return duracaoTotal;
+    }
+
+    public int getQuantidadeMusicas() {
+        return musicas;
+    }
+
+    public int getQuantidadePodcasts() {
+        return podcasts;
+    }
+
+    public int getQuantidadeAudiobooks() {
+        return audiobooks;
+    }
+
+    // Quantidade de mídias por gênero (só os gêneros presentes; mídias sem gênero não entram).
+    public Map<Genero, Integer> getGeneros() {
+        return Collections.unmodifiableMap(generos);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("Playlist: ").append(nome);
+        if (posicaoPorMidia.isEmpty()) {
+            return sb.toString();
+        }
+        sb.append(" (").append(posicaoPorMidia.size()).append(" mídias, ")
+          .append(Math.round(duracaoTotal * 10) / 10.0).append(" min | Músicas: ").append(musicas)
+          .append(", Podcasts: ").append(podcasts).append(", Audiobooks: ").append(audiobooks);
+        for (Map.Entry<Genero, Integer> e : generos.entrySet()) {
+            sb.append(" | ").append(e.getKey().getVariavelTemporaria()).append(": ").append(e.getValue());
+        }
+        return sb.append(')').toString();
+    }
+}
@@ -4,7 +4,8 @@ public class Podcast extends Midia {
     }
 
     @Override
-    public String toString() {
-        return "Podcast - Título: " + getTitulo() + " / Artista: " + getArtista() + " / Duração: "  + getDuracao() + " Minutos";
+    public StringBuilder acrescentar(StringBuilder sb) {
+        return sb.append("Podcast - Título: ").append(getTitulo()).append(" / Artista: ").append(getArtista())
+                .append(" / Duração: ").append(getDuracao()).append(" Minutos");
     }
 }
\ No newline at end of file
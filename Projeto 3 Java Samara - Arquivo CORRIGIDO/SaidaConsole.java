@@ -0,0 +1,103 @@
+/**
+ * Saída em lote para as listagens: acumula as linhas e escreve no System.out
+ * em blocos de 64 KB. O System.out faz flush a cada println, então listar item
+ * por item vira uma escrita no terminal (ou arquivo) por linha.
+ * Uso: try (SaidaConsole saida = new SaidaConsole()) { saida.linha(...); }
+ */
+public class SaidaConsole implements AutoCloseable {
+    private static final int BLOCO = 1 << 16;
+    private final StringBuilder buffer = new StringBuilder(BLOCO + 1024);
+
+    public SaidaConsole linha(String texto) {
+        buffer.append(texto).append('\n');
+        if (buffer.length() >= BLOCO) {
+            descarregar();
+        }
+        return this;
+    }
+
+    // Linha "prefixo + mídia", escrita direto no buffer (ver Midia#acrescentar).
+    public SaidaConsole linha(String prefixo, Midia midia) {
+        midia.acrescentar(buffer.append(prefixo)).append('\n');
+        if (buffer.length() >= BLOCO) {
+            descarregar();
+        }
+        return this;
+    }
+
+    @Override
+    public void close() {
+        descarregar();
+        System.out.flush();
+    }
+
+    private void descarregar() {
+        if (buffer.length() > 0) {
+            System.out.print(buffer);
+            buffer.setLength(0);
+        }
+    }
+
+    /**
+     * Página de uma listagem, lida de "--page N --limit M" (ou "--page=N").
+     * Páginas começam em 1; sem --limit a listagem sai inteira.
+     */
+    public static class Pagina {
+        public static final Pagina TUDO = new Pagina(1, 0);
+
+        private final int numero;
+        private final int limite;
+
+        public Pagina(int numero, int limite) {
+            if (numero < 1 || limite < 0) {
+                throw new IllegalArgumentException("Página deve ser >= 1 e limite >= 0.");
+            }
+            this.numero = numero;
+            this.limite = limite;
+        }
+
+        public static Pagina ler(String texto) {
+            int numero = 1;
+            int limite = 0;
+            String[] partes = texto.trim().split("[\\s=]+");
+            for (int i = 0; i < partes.length; i++) {
+                String opcao = partes[i];
+                if (opcao.isEmpty()) {
+                    continue;
+                }
+                if ((!opcao.equals("--page") && !opcao.equals("--limit")) || i + 1 >= partes.length) {
+                    throw new IllegalArgumentException("Use --page N e/ou --limit N.");
+                }
+                int valor;
+                try {
+                    valor = Integer.parseInt(partes[++i]);
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Valor inválido para " + opcao + ": " + partes[i]);
+                }
+                if (opcao.equals("--page")) {
+                    numero = valor;
+                } else {
+                    limite = valor;
+                }
+            }
+            return new Pagina(numero, limite);
+        }
+
+        public int inicio(int total) {
+            return limite == 0 ? 0 : (int) Math.min(total, (long) (numero - 1) * limite);
+        }
+
+        public int fim(int total) {
+            return limite == 0 ? total : (int) Math.min(total, (long) inicio(total) + limite);
+        }
+
+        // "Página 2 de 7", ou vazio quando a listagem saiu inteira.
+        public String rodape(int total) {
+            if (limite == 0) {
+                return "";
+            }
+            int paginas = Math.max(1, (total + limite - 1) / limite);
+            return "Página " + numero + " de " + paginas + " (" + total + " itens; --page N --limit " + limite + ")";
+        }
+    }
+}
@@ -1,509 +1,5073 @@
-/*
- Mini Spotify — Solução ChatGPT (Projeto Console em Java)
- --------------------------------------------------------
- Como compilar e executar (sem pacotes):
- 1) Salve este arquivo como Main.java
- 2) Compile:  javac Main.java
- 3) Execute:  java Main
- 
- O que este projeto demonstra:
- - POO: encapsulamento, herança e polimorfismo
- - Estruturas: List, Set, Map (ArrayList, HashSet, HashMap)
- - Tratamento de exceções customizadas
- - Enum de gêneros musicais
- - Catálogo com busca por título, artista/autor/host ou gênero
- - Usuário pode criar/gerenciar playlists, adicionar/remover mídias e ver conteúdo
-
- Observação: Mantive tudo em um único arquivo (Main.java) para facilitar a correção.
- Somente a classe Main é pública; as demais são package-private.
-*/
-
-import java.util.*;
-import java.util.concurrent.atomic.AtomicInteger;
-
-/************************************
- * EXCEÇÕES ESPECÍFICAS DO DOMÍNIO  *
- ************************************/
-class DomainException extends RuntimeException {
-    public DomainException(String message) { super(message); }
-}
-
-class DuplicateMediaException extends DomainException {
-    public DuplicateMediaException(String message) { super(message); }
-}
-
-class MediaNotFoundException extends DomainException {
-    public MediaNotFoundException(String message) { super(message); }
-}
-
-class PlaylistNotFoundException extends DomainException {
-    public PlaylistNotFoundException(String message) { super(message); }
-}
-
-class UserNotFoundException extends DomainException {
-    public UserNotFoundException(String message) { super(message); }
-}
-
-/***********************
- * ENUM DE GÊNEROS     *
- ***********************/
-enum Genero {
-    ROCK, POP, MPB, JAZZ, CLASSICA, HIPHOP, ELETRONICA, SERTANEJO, FORRO, FUNK,
-    METAL, BLUES, REGGAE, COUNTRY, INDIE, KPOP,
-
-    // Para permitir buscas uniformes no catálogo, tratamos Podcast/Audiobook
-    // como "gêneros" de mídia não-musical também:
-    PODCAST, AUDIOBOOK
-}
-
-/********************************
- * MODELO PRINCIPAL DAS MÍDIAS  *
- ********************************/
-abstract class Midia {
-    private final String id;           // imutável, único
-    private String titulo;             // encapsulado
-    private String artistaOuAutor;     // pode ser artista (música), host (podcast) ou autor (audiobook)
-    private int duracaoSegundos;       // duração total em segundos
-    private Genero genero;
-
-    protected Midia(String titulo, String artistaOuAutor, int duracaoSegundos, Genero genero) {
-        if (titulo == null || titulo.isBlank()) throw new IllegalArgumentException("Título é obrigatório");
-        if (artistaOuAutor == null || artistaOuAutor.isBlank()) throw new IllegalArgumentException("Artista/Autor/Host é obrigatório");
-        if (duracaoSegundos <= 0) throw new IllegalArgumentException("Duração deve ser positiva (em segundos)");
-        if (genero == null) throw new IllegalArgumentException("Gênero é obrigatório");
-        this.id = UUID.randomUUID().toString();
-        this.titulo = titulo.trim();
-        this.artistaOuAutor = artistaOuAutor.trim();
-        this.duracaoSegundos = duracaoSegundos;
-        this.genero = genero;
-    }
-
-    public String getId() { return id; }
-    public String getTitulo() { return titulo; }
-    public String getArtistaOuAutor() { return artistaOuAutor; }
-    public int getDuracaoSegundos() { return duracaoSegundos; }
-    public Genero getGenero() { return genero; }
-
-    public void setTitulo(String titulo) {
-        if (titulo == null || titulo.isBlank()) throw new IllegalArgumentException("Título inválido");
-        this.titulo = titulo.trim();
-    }
-
-    public void setArtistaOuAutor(String artistaOuAutor) {
-        if (artistaOuAutor == null || artistaOuAutor.isBlank()) throw new IllegalArgumentException("Artista/Autor/Host inválido");
-        this.artistaOuAutor = artistaOuAutor.trim();
-    }
-
-    public void setDuracaoSegundos(int duracaoSegundos) {
-        if (duracaoSegundos <= 0) throw new IllegalArgumentException("Duração deve ser positiva");
-        this.duracaoSegundos = duracaoSegundos;
-    }
-
-    public void setGenero(Genero genero) {
-        if (genero == null) throw new IllegalArgumentException("Gênero inválido");
-        this.genero = genero;
-    }
-
-    // Polimorfismo: cada tipo de mídia pode customizar a forma de "toString"/detalhes
-    public abstract String tipo();
-
-    @Override
-    public String toString() {
-        return String.format("[%s] %s — %s (%s, %s)", tipo(), titulo, artistaOuAutor, formatarDuracao(duracaoSegundos), genero);
-    }
-
-    public static String formatarDuracao(int totalSegundos) {
-        int horas = totalSegundos / 3600;
-        int resto = totalSegundos % 3600;
-        int minutos = resto / 60;
-        int segundos = resto % 60;
-        if (horas > 0) return String.format("%d:%02d:%02d", horas, minutos, segundos);
-        return String.format("%d:%02d", minutos, segundos);
-    }
-
-    @Override
-    public boolean equals(Object o) {
-        if (this == o) return true;
-        if (o == null || getClass() != o.getClass()) return false;
-        Midia midia = (Midia) o;
-        return Objects.equals(id, midia.id);
-    }
-
-    @Override
-    public int hashCode() { return Objects.hash(id); }
-}
-
-class Musica extends Midia {
-    public Musica(String titulo, String artista, int duracaoSegundos, Genero generoMusical) {
-        super(titulo, artista, duracaoSegundos, generoMusical);
-        if (generoMusical == Genero.PODCAST || generoMusical == Genero.AUDIOBOOK) {
-            throw new IllegalArgumentException("Gênero de música não pode ser PODCAST/AUDIOBOOK");
-        }
-    }
-    @Override public String tipo() { return "Música"; }
-}
-
-class Podcast extends Midia {
-    private int episodios; // exemplo de campo específico
-    public Podcast(String titulo, String host, int duracaoSegundos) {
-        super(titulo, host, duracaoSegundos, Genero.PODCAST);
-        this.episodios = 1;
-    }
-    public int getEpisodios() { return episodios; }
-    public void setEpisodios(int episodios) { this.episodios = Math.max(1, episodios); }
-    @Override public String tipo() { return "Podcast"; }
-}
-
-class Audiobook extends Midia {
-    private String narrador; // campo específico
-    public Audiobook(String titulo, String autor, String narrador, int duracaoSegundos) {
-        super(titulo, autor, duracaoSegundos, Genero.AUDIOBOOK);
-        this.narrador = (narrador == null || narrador.isBlank()) ? "Desconhecido" : narrador.trim();
-    }
-    public String getNarrador() { return narrador; }
-    public void setNarrador(String narrador) { this.narrador = (narrador == null || narrador.isBlank()) ? this.narrador : narrador.trim(); }
-    @Override public String tipo() { return "Audiobook"; }
-}
-
-/****************
- * CATÁLOGO     *
- ****************/
-class Catalogo {
-    // Armazenamento principal: id -> Mídia
-    private final Map<String, Midia> porId = new HashMap<>();
-
-    // Índices simples para busca rápida
-    private final Map<String, Set<String>> idsPorTitulo = new HashMap<>();     // tituloLower -> ids
-    private final Map<String, Set<String>> idsPorArtista = new HashMap<>();    // artistaLower -> ids
-    private final Map<Genero, Set<String>> idsPorGenero = new HashMap<>();     // genero -> ids
-
-    public void adicionar(Midia midia) {
-        Objects.requireNonNull(midia, "Midia não pode ser nula");
-        if (porId.containsKey(midia.getId())) {
-            throw new DuplicateMediaException("Mídia já cadastrada no catálogo: " + midia.getTitulo());
-        }
-        porId.put(midia.getId(), midia);
-        indexar(midia);
-    }
-
-    public Midia obterPorId(String id) {
-        Midia m = porId.get(id);
-        if (m == null) throw new MediaNotFoundException("Mídia não encontrada por id");
-        return m;
-    }
-
-    public List<Midia> buscarPorTitulo(String termo) {
-        if (termo == null) return List.of();
-        String key = termo.toLowerCase();
-        Set<String> ids = idsPorTitulo.getOrDefault(key, Set.of());
-        return coletar(ids);
-    }
-
-    public List<Midia> buscarPorArtista(String termo) {
-        if (termo == null) return List.of();
-        String key = termo.toLowerCase();
-        Set<String> ids = idsPorArtista.getOrDefault(key, Set.of());
-        return coletar(ids);
-    }
-
-    public List<Midia> buscarPorGenero(Genero genero) {
-        if (genero == null) return List.of();
-        Set<String> ids = idsPorGenero.getOrDefault(genero, Set.of());
-        return coletar(ids);
-    }
-
-    public List<Midia> listarTudo() { return new ArrayList<>(porId.values()); }
-
-    private List<Midia> coletar(Set<String> ids) {
-        List<Midia> lista = new ArrayList<>();
-        for (String id : ids) {
-            Midia m = porId.get(id);
-            if (m != null) lista.add(m);
-        }
-        return lista;
-    }
-
-    private void indexar(Midia m) {
-        idsPorTitulo.computeIfAbsent(m.getTitulo().toLowerCase(), k -> new HashSet<>()).add(m.getId());
-        idsPorArtista.computeIfAbsent(m.getArtistaOuAutor().toLowerCase(), k -> new HashSet<>()).add(m.getId());
-        idsPorGenero.computeIfAbsent(m.getGenero(), k -> new HashSet<>()).add(m.getId());
-    }
-}
-
-/****************
- * PLAYLIST     *
- ****************/
-class Playlist {
-    private final String nome;
-    private final List<Midia> itens = new ArrayList<>();
-
-    public Playlist(String nome) {
-        if (nome == null || nome.isBlank()) throw new IllegalArgumentException("Nome da playlist é obrigatório");
-        this.nome = nome.trim();
-    }
-
-    public String getNome() { return nome; }
-    public List<Midia> getItens() { return Collections.unmodifiableList(itens); }
-
-    public void adicionar(Midia m) {
-        Objects.requireNonNull(m, "Midia não pode ser nula");
-        itens.add(m);
-    }
-
-    public boolean removerPrimeiraOcorrenciaPorId(String id) {
-        for (int i = 0; i < itens.size(); i++) {
-            if (itens.get(i).getId().equals(id)) {
-                itens.remove(i);
-                return true;
-            }
-        }
-        return false;
-    }
-
-    public int duracaoTotalSegundos() {
-        int total = 0;
-        for (Midia m : itens) total += m.getDuracaoSegundos();
-        return total;
-    }
-
-    public String resumo() {
-        StringBuilder sb = new StringBuilder();
-        sb.append("Playlist: ").append(nome)
-          .append(" | Itens: ").append(itens.size())
-          .append(" | Duração: ").append(Midia.formatarDuracao(duracaoTotalSegundos()))
-          .append("\n");
-        AtomicInteger idx = new AtomicInteger(1);
-        itens.forEach(m -> sb.append(String.format("%02d. %s\n", idx.getAndIncrement(), m.toString())));
-        return sb.toString();
-    }
-}
-
-/************
- * USUÁRIO  *
- ************/
-class Usuario {
-    private final String nome;
-    private final String email;
-    private final Map<String, Playlist> playlists = new LinkedHashMap<>(); // preserva ordem de inserção
-
-    public Usuario(String nome, String email) {
-        if (nome == null || nome.isBlank()) throw new IllegalArgumentException("Nome é obrigatório");
-        if (email == null || email.isBlank() || !email.contains("@")) throw new IllegalArgumentException("E-mail inválido");
-        this.nome = nome.trim();
-        this.email = email.trim();
-    }
-
-    public String getNome() { return nome; }
-    public String getEmail() { return email; }
-
-    public void criarPlaylist(String nome) {
-        String key = nome.trim().toLowerCase();
-        if (playlists.containsKey(key)) throw new DomainException("Já existe uma playlist com esse nome");
-        playlists.put(key, new Playlist(nome));
-    }
-
-    public Playlist obterPlaylist(String nome) {
-        Playlist p = playlists.get(nome.trim().toLowerCase());
-        if (p == null) throw new PlaylistNotFoundException("Playlist não encontrada: " + nome);
-        return p;
-    }
-
-    public void removerPlaylist(String nome) {
-        if (playlists.remove(nome.trim().toLowerCase()) == null) throw new PlaylistNotFoundException("Playlist não encontrada");
-    }
-
-    public Collection<Playlist> listarPlaylists() { return Collections.unmodifiableCollection(playlists.values()); }
-}
-
-/************************
- * APLICAÇÃO (CLI)      *
- ************************/
-public class Mini_Spotify_ChatGPT {
-    private static final Scanner scan = new Scanner(System.in);
-    private static final Catalogo catalogo = new Catalogo();
-    private static Usuario usuarioAtual = null;
-
-    public static void main(String[] args) {
-        seedCatalogo(); // dados iniciais
-        System.out.println("=== Bem-vindo ao Mini Spotify ===");
-        boolean rodando = true;
-        while (rodando) {
-            try {
-                mostrarMenu();
-                String opc = scan.nextLine().trim();
-                switch (opc) {
-                    case "1" -> cadastrarUsuario();
-                    case "2" -> criarPlaylist();
-                    case "3" -> adicionarMidiaNaPlaylist();
-                    case "4" -> removerMidiaDaPlaylist();
-                    case "5" -> visualizarPlaylists();
-                    case "6" -> buscarNoCatalogo();
-                    case "7" -> listarCatalogo();
-                    case "0" -> { System.out.println("Saindo. Até mais!"); rodando = false; }
-                    default -> System.out.println("Opção inválida. Tente novamente.\n");
-                }
-            } catch (DomainException | IllegalArgumentException e) {
-                System.out.println("[Erro] " + e.getMessage() + "\n");
-            } catch (Exception e) {
-                System.out.println("[Erro inesperado] " + e.getClass().getSimpleName() + ": " + e.getMessage());
-            }
-        }
-    }
-
-    private static void mostrarMenu() {
-        System.out.println("\n--- Menu ---");
-        System.out.println("1) Cadastrar usuário");
-        System.out.println("2) Criar playlist");
-        System.out.println("3) Adicionar mídia em playlist");
-        System.out.println("4) Remover mídia da playlist");
-        System.out.println("5) Visualizar minhas playlists");
-        System.out.println("6) Buscar no catálogo");
-        System.out.println("7) Listar catálogo completo");
-        System.out.println("0) Sair");
-        System.out.print("Escolha: ");
-    }
-
-    private static void cadastrarUsuario() {
-        System.out.println("=== Cadastro de Usuário ===");
-        System.out.print("Digite seu nome: ");
-        String nome = scan.nextLine();
-        System.out.print("Digite seu e-mail: ");
-        String email = scan.nextLine();
-        usuarioAtual = new Usuario(nome, email);
-        System.out.println("Usuário cadastrado: " + usuarioAtual.getNome() + " (" + usuarioAtual.getEmail() + ")\n");
-    }
-
-    private static void exigirUsuario() {
-        if (usuarioAtual == null) throw new UserNotFoundException("Nenhum usuário logado. Cadastre-se primeiro (opção 1)");
-    }
-
-    private static void criarPlaylist() {
-        exigirUsuario();
-        System.out.print("Nome da nova playlist: ");
-        String nome = scan.nextLine();
-        usuarioAtual.criarPlaylist(nome);
-        System.out.println("Playlist criada com sucesso!\n");
-    }
-
-    private static void adicionarMidiaNaPlaylist() {
-        exigirUsuario();
-        System.out.print("Nome da playlist destino: ");
-        String nome = scan.nextLine();
-        Playlist p = usuarioAtual.obterPlaylist(nome);
-        System.out.print("Buscar mídia por (1) Título, (2) Artista/Autor/Host, (3) Gênero: ");
-        String modo = scan.nextLine().trim();
-        List<Midia> resultados = new ArrayList<>();
-        switch (modo) {
-            case "1" -> {
-                System.out.print("Título exato: ");
-                resultados = catalogo.buscarPorTitulo(scan.nextLine());
-            }
-            case "2" -> {
-                System.out.print("Artista/Autor/Host exato: ");
-                resultados = catalogo.buscarPorArtista(scan.nextLine());
-            }
-            case "3" -> {
-                System.out.print("Gênero (ex: ROCK, POP, MPB, PODCAST, AUDIOBOOK): ");
-                Genero g = Genero.valueOf(scan.nextLine().trim().toUpperCase());
-                resultados = catalogo.buscarPorGenero(g);
-            }
-            default -> {
-                System.out.println("Modo inválido");
-                return;
-            }
-        }
-        if (resultados.isEmpty()) {
-            System.out.println("Nenhuma mídia encontrada.");
-            return;
-        }
-        System.out.println("Resultados:");
-        for (int i = 0; i < resultados.size(); i++) {
-            System.out.printf("%d) %s\n", i + 1, resultados.get(i));
-        }
-        System.out.print("Escolha o número para adicionar: ");
-        int idx = Integer.parseInt(scan.nextLine().trim());
-        if (idx < 1 || idx > resultados.size()) {
-            System.out.println("Índice inválido");
-            return;
-        }
-        p.adicionar(resultados.get(idx - 1));
-        System.out.println("Mídia adicionada à playlist!\n");
-    }
-
-    private static void removerMidiaDaPlaylist() {
-        exigirUsuario();
-        System.out.print("Nome da playlist: ");
-        String nome = scan.nextLine();
-        Playlist p = usuarioAtual.obterPlaylist(nome);
-        System.out.print("Informe (1) índice na playlist OU (2) id da mídia: ");
-        String modo = scan.nextLine().trim();
-        if (modo.equals("1")) {
-            listarPlaylistDetalhada(p);
-            System.out.print("Número do item para remover: ");
-            try {
-                int idx = Integer.parseInt(scan.nextLine().trim());
-                String id = p.getItens().get(idx - 1).getId();
-                boolean ok = p.removerPrimeiraOcorrenciaPorId(id);
-                System.out.println(ok ? "Removido!" : "Não encontrado.");
-            } catch (IndexOutOfBoundsException | NumberFormatException e) {
-                System.out.println("Índice inválido.");
-            }
-        } else if (modo.equals("2")) {
-            System.out.print("Digite o id: ");
-            String id = scan.nextLine().trim();
-            boolean ok = p.removerPrimeiraOcorrenciaPorId(id);
-            System.out.println(ok ? "Removido!" : "ID não encontrado na playlist.");
-        } else {
-            System.out.println("Modo inválido");
-        }
-    }
-
-    private static void visualizarPlaylists() {
-        exigirUsuario();
-        if (usuarioAtual.listarPlaylists().isEmpty()) {
-            System.out.println("Você ainda não tem playlists.");
-            return;
-        }
-        for (Playlist p : usuarioAtual.listarPlaylists()) {
-            System.out.println(p.resumo());
-        }
-    }
-
-    private static void listarPlaylistDetalhada(Playlist p) {
-        System.out.println(p.resumo());
-    }
-
-    private static void buscarNoCatalogo() {
-        System.out.println("=== Busca no Catálogo ===");
-        System.out.print("(1) Por título  (2) Por artista/autor/host  (3) Por gênero: ");
-        String opc = scan.nextLine().trim();
-        List<Midia> res = switch (opc) {
-            case "1" -> { System.out.print("Título exato: "); yield catalogo.buscarPorTitulo(scan.nextLine()); }
-            case "2" -> { System.out.print("Artista/Autor/Host exato: "); yield catalogo.buscarPorArtista(scan.nextLine()); }
-            case "3" -> { System.out.print("Gênero (ex: ROCK, PODCAST): "); yield catalogo.buscarPorGenero(Genero.valueOf(scan.nextLine().trim().toUpperCase())); }
-            default -> { System.out.println("Opção inválida"); yield List.of(); }
-        };
-        if (res.isEmpty()) System.out.println("Nenhum resultado.");
-        else res.forEach(m -> System.out.println("- " + m));
-    }
-
-    private static void listarCatalogo() {
-        System.out.println("=== Catálogo Completo ===");
-        List<Midia> todos = catalogo.listarTudo();
-        if (todos.isEmpty()) { System.out.println("(vazio)"); return; }
-        todos.forEach(m -> System.out.println("- " + m));
-    }
-
-    // Dados iniciais para testes
-    private static void seedCatalogo() {
-        catalogo.adicionar(new Musica("Garota de Ipanema", "Tom Jobim", 330, Genero.MPB));
-        catalogo.adicionar(new Musica("Bohemian Rhapsody", "Queen", 354, Genero.ROCK));
-        catalogo.adicionar(new Musica("Take Five", "Dave Brubeck", 325, Genero.JAZZ));
-        catalogo.adicionar(new Musica("Nocturne Op.9 No.2", "Chopin", 260, Genero.CLASSICA));
-        catalogo.adicionar(new Musica("Rolling in the Deep", "Adele", 228, Genero.POP));
-        catalogo.adicionar(new Podcast("Ciência Sem Filtro #42", "Dra. Ana Souza", 3600));
-        catalogo.adicionar(new Podcast("TechWeekly: IA na prática", "Carlos Lima", 2400));
-        catalogo.adicionar(new Audiobook("Dom Casmurro", "Machado de Assis", "João Silva", 28800));
-        catalogo.adicionar(new Audiobook("O Alienista", "Machado de Assis", "Maria Rocha", 21600));
-    }
-}
+/*
+ Mini Spotify — Solução ChatGPT (Projeto Console em Java)
+ --------------------------------------------------------
+ Como compilar e executar (sem pacotes):
+ 1) Salve este arquivo como Main.java
+ 2) Compile:  javac Main.java
+ 3) Execute:  java Main
+    API HTTP:  java Main --servidor [porta]
+    Listagem:  java Main --listar [--page N] [--limit N]
+    Carga:     java Main --carga [url] [conexoes] [segundos]
+    Benchmark: java Main --benchmark [tamanhos, ex.: 1000,100000] [filtro de cenário]
+    Gerar CSV: java Main --gerar quantidade [semente] [arquivo.csv]
+    Cache:     java -Dminispotify.cache=tinylfu|lru|nenhum -Dminispotify.cache.bytes=8388608 Main
+    JFR:       java -XX:StartFlightRecording:settings=default,settings=minispotify.jfc,filename=gravacao.jfr Main
+ 
+ O que este projeto demonstra:
+ - POO: encapsulamento, herança e polimorfismo
+ - Estruturas: List, Set, Map (ArrayList, HashSet, HashMap)
+ - Tratamento de exceções customizadas
+ - Enum de gêneros musicais
+ - Catálogo com busca por título, artista/autor/host ou gênero
+ - Usuário pode criar/gerenciar playlists, adicionar/remover mídias e ver conteúdo
+ - Métricas de chamadas e latência (menu, opção 13, ou JMX); -Dminispotify.metricas=false desliga
+
+ Observação: Mantive tudo em um único arquivo (Main.java) para facilitar a correção.
+ Somente a classe Main é pública; as demais são package-private.
+*/
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.text.Normalizer;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.MBeanParameterInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+
+/************************************
+ * EXCEÇÕES ESPECÍFICAS DO DOMÍNIO  *
+ ************************************/
+class DomainException extends RuntimeException {
+    public DomainException(String message) { super(message); }
+}
+
+class DuplicateMediaException extends DomainException {
+    public DuplicateMediaException(String message) { super(message); }
+}
+
+class MediaNotFoundException extends DomainException {
+    public MediaNotFoundException(String message) { super(message); }
+}
+
+class PlaylistNotFoundException extends DomainException {
+    public PlaylistNotFoundException(String message) { super(message); }
+}
+
+class UserNotFoundException extends DomainException {
+    public UserNotFoundException(String message) { super(message); }
+}
+
+/***********************
+ * ENUM DE GÊNEROS     *
+ ***********************/
+enum Genero {
+    ROCK, POP, MPB, JAZZ, CLASSICA, HIPHOP, ELETRONICA, SERTANEJO, FORRO, FUNK,
+    METAL, BLUES, REGGAE, COUNTRY, INDIE, KPOP,
+
+    // Para permitir buscas uniformes no catálogo, tratamos Podcast/Audiobook
+    // como "gêneros" de mídia não-musical também:
+    PODCAST, AUDIOBOOK
+}
+
+/*****************************
+ * NORMALIZAÇÃO DE TEXTO     *
+ *****************************/
+// Única forma de comparar textos no catálogo: sem acentos, minúsculo e com
+// pontuação/espaços reduzidos a um espaço. Ex.: "  Clássica:  Op.9 " -> "classica op 9".
+final class Normalizador {
+    private Normalizador() {}
+
+    static String normalizar(String texto) {
+        if (texto == null) return "";
+        String base = texto;
+        // Só decompõe (NFD) quando há algum caractere fora do ASCII
+        for (int i = 0; i < texto.length(); i++) {
+            if (texto.charAt(i) > 127) { base = Normalizer.normalize(texto, Normalizer.Form.NFD); break; }
+        }
+        StringBuilder sb = new StringBuilder(base.length());
+        boolean separar = false;
+        for (int i = 0; i < base.length(); i++) {
+            char c = base.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                if (separar && sb.length() > 0) sb.append(' ');
+                separar = false;
+                sb.append(Character.toLowerCase(c));
+            } else if (!ehAcento(c)) {
+                separar = true;
+            }
+        }
+        return sb.toString();
+    }
+
+    private static boolean ehAcento(char c) {
+        int tipo = Character.getType(c);
+        return tipo == Character.NON_SPACING_MARK || tipo == Character.COMBINING_SPACING_MARK || tipo == Character.ENCLOSING_MARK;
+    }
+}
+
+/********************************
+ * MODELO PRINCIPAL DAS MÍDIAS  *
+ ********************************/
+// Imutável: o catálogo guarda os campos em colunas (ver ColunasCatalogo) e devolve
+// mídias montadas a partir delas; uma alteração num objeto não chegaria às colunas.
+abstract class Midia {
+    private final long idAlto, idBaixo;  // UUID do id, único
+    private String id;                   // texto do UUID, montado na primeira leitura
+    private final String titulo;
+    private final String artistaOuAutor; // pode ser artista (música), host (podcast) ou autor (audiobook)
+    private final int duracaoSegundos;   // duração total em segundos (fixa: as playlists somam este valor)
+    private final Genero genero;
+    private String tituloNormalizado;    // chave de busca, calculada na primeira leitura
+    private final String artistaNormalizado;
+
+    protected Midia(String titulo, String artistaOuAutor, int duracaoSegundos, Genero genero) {
+        if (titulo == null || titulo.isBlank()) throw new IllegalArgumentException("Título é obrigatório");
+        if (artistaOuAutor == null || artistaOuAutor.isBlank()) throw new IllegalArgumentException("Artista/Autor/Host é obrigatório");
+        if (duracaoSegundos <= 0) throw new IllegalArgumentException("Duração deve ser positiva (em segundos)");
+        if (genero == null) throw new IllegalArgumentException("Gênero é obrigatório");
+        UUID uuid = UUID.randomUUID();
+        this.idAlto = uuid.getMostSignificantBits();
+        this.idBaixo = uuid.getLeastSignificantBits();
+        this.titulo = titulo.trim();
+        this.artistaOuAutor = artistaOuAutor.trim();
+        this.duracaoSegundos = duracaoSegundos;
+        this.genero = genero;
+        this.artistaNormalizado = Normalizador.normalizar(this.artistaOuAutor);
+    }
+
+    // Mídia montada a partir das colunas do catálogo: os campos já foram validados
+    // na inclusão e o artista vem do dicionário, já normalizado.
+    Midia(long idAlto, long idBaixo, String titulo, String artistaOuAutor, String artistaNormalizado, int duracaoSegundos, Genero genero) {
+        this.idAlto = idAlto;
+        this.idBaixo = idBaixo;
+        this.titulo = titulo;
+        this.artistaOuAutor = artistaOuAutor;
+        this.artistaNormalizado = artistaNormalizado;
+        this.duracaoSegundos = duracaoSegundos;
+        this.genero = genero;
+    }
+
+    public String getId() {
+        String texto = id;
+        if (texto == null) id = texto = new UUID(idAlto, idBaixo).toString();
+        return texto;
+    }
+
+    long getIdAlto() { return idAlto; }
+    long getIdBaixo() { return idBaixo; }
+    public String getTitulo() { return titulo; }
+    public String getArtistaOuAutor() { return artistaOuAutor; }
+    public int getDuracaoSegundos() { return duracaoSegundos; }
+    public Genero getGenero() { return genero; }
+    public String getArtistaNormalizado() { return artistaNormalizado; }
+
+    public String getTituloNormalizado() {
+        String chave = tituloNormalizado;
+        if (chave == null) tituloNormalizado = chave = Normalizador.normalizar(titulo);
+        return chave;
+    }
+
+    // Polimorfismo: cada tipo de mídia pode customizar a forma de "toString"/detalhes
+    public abstract String tipo();
+
+    @Override
+    public String toString() {
+        return acrescentar(new StringBuilder(96)).toString();
+    }
+
+    // "[Tipo] Título — Artista (m:ss, GÊNERO)" escrito direto em "sb", sem String.format
+    // nem Strings intermediárias: as listagens reaproveitam o mesmo StringBuilder.
+    public StringBuilder acrescentar(StringBuilder sb) {
+        sb.append('[').append(tipo()).append("] ").append(titulo).append(" — ").append(artistaOuAutor).append(" (");
+        return formatarDuracao(sb, duracaoSegundos).append(", ").append(genero.name()).append(')');
+    }
+
+    public static String formatarDuracao(int totalSegundos) {
+        return formatarDuracao(new StringBuilder(12), totalSegundos).toString();
+    }
+
+    // "h:mm:ss" ou "m:ss"
+    public static StringBuilder formatarDuracao(StringBuilder sb, int totalSegundos) {
+        int horas = totalSegundos / 3600;
+        int resto = totalSegundos % 3600;
+        int minutos = resto / 60;
+        int segundos = resto % 60;
+        if (horas > 0) doisDigitos(sb.append(horas).append(':'), minutos);
+        else sb.append(minutos);
+        return doisDigitos(sb.append(':'), segundos);
+    }
+
+    // Equivale a %02d para 0..99.
+    static StringBuilder doisDigitos(StringBuilder sb, int valor) {
+        return sb.append((char) ('0' + valor / 10)).append((char) ('0' + valor % 10));
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        Midia midia = (Midia) o;
+        return idAlto == midia.idAlto && idBaixo == midia.idBaixo;
+    }
+
+    @Override
+    public int hashCode() { return Long.hashCode(idAlto ^ idBaixo); }
+}
+
+class Musica extends Midia {
+    public Musica(String titulo, String artista, int duracaoSegundos, Genero generoMusical) {
+        super(titulo, artista, duracaoSegundos, generoMusical);
+        if (generoMusical == Genero.PODCAST || generoMusical == Genero.AUDIOBOOK) {
+            throw new IllegalArgumentException("Gênero de música não pode ser PODCAST/AUDIOBOOK");
+        }
+    }
+    Musica(long idAlto, long idBaixo, String titulo, String artista, String artistaNormalizado, int duracaoSegundos, Genero generoMusical) {
+        super(idAlto, idBaixo, titulo, artista, artistaNormalizado, duracaoSegundos, generoMusical);
+    }
+    @Override public String tipo() { return "Música"; }
+}
+
+class Podcast extends Midia {
+    private final int episodios; // exemplo de campo específico
+    public Podcast(String titulo, String host, int duracaoSegundos) {
+        this(titulo, host, duracaoSegundos, 1);
+    }
+    public Podcast(String titulo, String host, int duracaoSegundos, int episodios) {
+        super(titulo, host, duracaoSegundos, Genero.PODCAST);
+        this.episodios = Math.max(1, episodios);
+    }
+    Podcast(long idAlto, long idBaixo, String titulo, String host, String hostNormalizado, int duracaoSegundos, int episodios) {
+        super(idAlto, idBaixo, titulo, host, hostNormalizado, duracaoSegundos, Genero.PODCAST);
+        this.episodios = episodios;
+    }
+    public int getEpisodios() { return episodios; }
+    @Override public String tipo() { return "Podcast"; }
+}
+
+class Audiobook extends Midia {
+    private final String narrador; // campo específico
+    public Audiobook(String titulo, String autor, String narrador, int duracaoSegundos) {
+        super(titulo, autor, duracaoSegundos, Genero.AUDIOBOOK);
+        this.narrador = (narrador == null || narrador.isBlank()) ? "Desconhecido" : narrador.trim();
+    }
+    Audiobook(long idAlto, long idBaixo, String titulo, String autor, String autorNormalizado, String narrador, int duracaoSegundos) {
+        super(idAlto, idBaixo, titulo, autor, autorNormalizado, duracaoSegundos, Genero.AUDIOBOOK);
+        this.narrador = narrador;
+    }
+    public String getNarrador() { return narrador; }
+    @Override public String tipo() { return "Audiobook"; }
+}
+
+/****************************
+ * AUTOCOMPLETAR (TRIE)     *
+ ****************************/
+// Árvore radix (trie compactada) sobre as chaves normalizadas de títulos e
+// artistas: cada aresta carrega um trecho inteiro da chave, então só existem
+// nós onde as chaves se separam ou terminam. Os k melhores termos (por peso)
+// ficam guardados apenas nos nós de ramificação; num trecho sem ramificação
+// eles saem dos poucos terminais da cadeia mais os melhores do próximo nó que
+// ramifica. Completar um prefixo custa descer |prefixo| letras, sem varrer a subárvore.
+class Autocompletar {
+    private static final No[] VAZIO = new No[0];
+
+    private static final class No {
+        // A aresta que chega ao nó é fonte[inicio, fim): "fonte" é uma chave que passa
+        // por ele, então o rótulo não copia letras.
+        String fonte;
+        int inicio, fim;
+        No[] filhos = VAZIO;           // ordenados pela primeira letra da aresta (busca binária)
+        String termo;                  // forma exibida, quando uma chave termina aqui
+        int peso;                      // quantas mídias usam esta chave
+        No[] melhores = VAZIO;         // top-k da subárvore (peso desc.), só se ramifica()
+
+        No(String fonte, int inicio, int fim) {
+            this.fonte = fonte;
+            this.inicio = inicio;
+            this.fim = fim;
+        }
+
+        boolean ramifica() { return filhos.length >= 2; }
+
+        int indice(char c) {
+            int lo = 0, hi = filhos.length - 1;
+            while (lo <= hi) {
+                int meio = (lo + hi) >>> 1;
+                char m = filhos[meio].fonte.charAt(filhos[meio].inicio);
+                if (m < c) lo = meio + 1;
+                else if (m > c) hi = meio - 1;
+                else return meio;
+            }
+            return -(lo + 1);
+        }
+
+        void inserir(int pos, No filho) {
+            No[] novos = new No[filhos.length + 1];
+            System.arraycopy(filhos, 0, novos, 0, pos);
+            System.arraycopy(filhos, pos, novos, pos + 1, filhos.length - pos);
+            novos[pos] = filho;
+            filhos = novos;
+        }
+
+        void retirar(int pos) {
+            No[] novos = new No[filhos.length - 1];
+            System.arraycopy(filhos, 0, novos, 0, pos);
+            System.arraycopy(filhos, pos + 1, novos, pos, novos.length - pos);
+            filhos = novos.length == 0 ? VAZIO : novos;
+        }
+    }
+
+    private final int k;
+    private final No raiz = new No("", 0, 0);
+
+    Autocompletar(int k) {
+        if (k <= 0) throw new IllegalArgumentException("k deve ser positivo");
+        this.k = k;
+    }
+
+    // Soma 1 ao peso da chave (já normalizada); "exibir" é o texto mostrado ao usuário.
+    void adicionar(String chave, String exibir) {
+        if (chave.isEmpty()) return;
+        No[] caminho = new No[chave.length() + 1];
+        int n = 0, pos = 0;
+        No no = raiz;
+        caminho[n++] = no;
+        while (pos < chave.length()) {
+            int i = no.indice(chave.charAt(pos));
+            if (i < 0) {                                   // resto da chave vira uma folha
+                No folha = new No(chave, pos, chave.length());
+                no.inserir(-i - 1, folha);
+                no = folha;
+                caminho[n++] = no;
+                break;
+            }
+            No filho = no.filhos[i];
+            int comum = comum(filho, chave, pos);
+            if (comum < filho.fim - filho.inicio) {        // a chave sai no meio da aresta: divide
+                No meio = new No(filho.fonte, filho.inicio, filho.inicio + comum);
+                filho.inicio += comum;
+                meio.filhos = new No[] { filho };
+                no.filhos[i] = meio;
+                filho = meio;
+            }
+            no = filho;
+            caminho[n++] = no;
+            pos += comum;
+        }
+        if (no.termo == null) no.termo = exibir;
+        no.peso++;
+        // Um nó que acabou de passar a ramificar ainda não tem lista: monta do zero.
+        for (int i = n - 1; i >= 0; i--) {
+            No c = caminho[i];
+            if (!c.ramifica()) continue;
+            if (c.melhores.length == 0) recalcular(c);
+            else promover(c, no);
+        }
+    }
+
+    // Tira 1 do peso da chave; com peso zero ela deixa de ser sugerida e o nó
+    // some (ou se funde ao único filho), mantendo a árvore compacta.
+    void remover(String chave) {
+        if (chave.isEmpty()) return;
+        No[] caminho = new No[chave.length() + 1];
+        int n = 0, pos = 0;
+        No no = raiz;
+        caminho[n++] = no;
+        while (pos < chave.length()) {
+            int i = no.indice(chave.charAt(pos));
+            if (i < 0) return;
+            no = no.filhos[i];
+            int comum = comum(no, chave, pos);
+            if (comum < no.fim - no.inicio) return;
+            caminho[n++] = no;
+            pos += comum;
+        }
+        if (no.peso == 0) return;
+        No terminal = no;
+        terminal.peso--;
+        // Sobe recalculando os melhores; se o terminal não estava na lista de um nó
+        // que ramifica, também não está na de nenhum ancestral.
+        for (int i = n - 1; i >= 0; i--) {
+            if (!caminho[i].ramifica()) continue;
+            if (!Arrays.asList(caminho[i].melhores).contains(terminal)) break;
+            recalcular(caminho[i]);
+        }
+        if (terminal.peso > 0) return;
+        terminal.termo = null;
+        if (n < 2 || terminal.ramifica()) return;
+        No pai = caminho[n - 2];
+        if (terminal.filhos.length == 1) {
+            fundir(pai, terminal);
+            return;
+        }
+        pai.retirar(pai.indice(terminal.fonte.charAt(terminal.inicio)));
+        if (!pai.ramifica()) {
+            pai.melhores = VAZIO;
+            if (pai.peso == 0 && n >= 3 && pai.filhos.length == 1) fundir(caminho[n - 3], pai);
+        }
+    }
+
+    // Até "limite" termos (no máximo k) que começam pelo prefixo, do mais pesado ao mais leve.
+    List<String> completar(String prefixo, int limite) {
+        if (limite <= 0) return List.of();
+        String chave = Normalizador.normalizar(prefixo);
+        if (chave.isEmpty()) return List.of();
+        No no = raiz;
+        int pos = 0;
+        while (pos < chave.length()) {
+            int i = no.indice(chave.charAt(pos));
+            if (i < 0) return List.of();
+            no = no.filhos[i];
+            int comum = comum(no, chave, pos);
+            if (comum < no.fim - no.inicio && pos + comum < chave.length()) return List.of();
+            pos += comum;
+        }
+        No[] melhores = melhoresDe(no);
+        int n = Math.min(limite, melhores.length);
+        List<String> termos = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) termos.add(melhores[i].termo);
+        return termos;
+    }
+
+    // Quantas letras da aresta de "no" coincidem com a chave a partir de "pos".
+    private static int comum(No no, String chave, int pos) {
+        int n = Math.min(no.fim - no.inicio, chave.length() - pos);
+        int i = 0;
+        while (i < n && no.fonte.charAt(no.inicio + i) == chave.charAt(pos + i)) i++;
+        return i;
+    }
+
+    // Junta "no" (sem peso e com um só filho) à aresta do filho.
+    private static void fundir(No pai, No no) {
+        No filho = no.filhos[0];
+        filho.inicio = no.inicio;     // a fonte do filho passa por "no", então tem as mesmas letras
+        pai.filhos[pai.indice(no.fonte.charAt(no.inicio))] = filho;
+    }
+
+    // Top-k da subárvore: num nó que ramifica é a lista guardada; fora deles,
+    // os terminais da cadeia sem ramificação mais os melhores do nó em que ela termina.
+    private No[] melhoresDe(No no) {
+        if (no.ramifica()) return no.melhores;
+        List<No> candidatos = new ArrayList<>();
+        while (true) {
+            if (no.peso > 0) candidatos.add(no);
+            if (no.filhos.length == 0) break;
+            no = no.filhos[0];
+            if (no.ramifica()) { candidatos.addAll(Arrays.asList(no.melhores)); break; }
+        }
+        return topK(candidatos);
+    }
+
+    // Recoloca "terminal" (cujo peso subiu) na lista de melhores do nó.
+    private void promover(No no, No terminal) {
+        No[] melhores = no.melhores;
+        int pos = -1;
+        for (int i = 0; i < melhores.length; i++) {
+            if (melhores[i] == terminal) { pos = i; break; }
+        }
+        if (pos < 0) {
+            if (melhores.length == k && !antes(terminal, melhores[k - 1])) return;
+            melhores = Arrays.copyOf(melhores, Math.min(k, melhores.length + 1));
+            pos = melhores.length - 1;
+            melhores[pos] = terminal;
+        }
+        while (pos > 0 && antes(melhores[pos], melhores[pos - 1])) {
+            No tmp = melhores[pos - 1];
+            melhores[pos - 1] = melhores[pos];
+            melhores[pos] = tmp;
+            pos--;
+        }
+        no.melhores = melhores;
+    }
+
+    // Melhores do nó = top-k entre o próprio terminal e os melhores de cada filho.
+    private void recalcular(No no) {
+        List<No> candidatos = new ArrayList<>();
+        if (no.peso > 0) candidatos.add(no);
+        for (No filho : no.filhos) {
+            for (No m : melhoresDe(filho)) if (m.peso > 0) candidatos.add(m);
+        }
+        no.melhores = topK(candidatos);
+    }
+
+    private No[] topK(List<No> candidatos) {
+        candidatos.sort((a, b) -> antes(a, b) ? -1 : antes(b, a) ? 1 : 0);
+        return candidatos.subList(0, Math.min(k, candidatos.size())).toArray(VAZIO);
+    }
+
+    private static boolean antes(No a, No b) {
+        return a.peso != b.peso ? a.peso > b.peso : a.termo.compareTo(b.termo) < 0;
+    }
+}
+
+/**********************************
+ * LISTA ORDENADA DE ORDINAIS     *
+ **********************************/
+// Lista de postagens dos índices: ordinais (int) em ordem crescente, num int[]
+// que cresce sob demanda. Interseção/união são merges lineares sobre primitivos.
+final class ListaOrdinais {
+    // Compartilhada por todas as consultas sem resultado: não aceita inclusões.
+    static final ListaOrdinais VAZIA = new ListaOrdinais(new int[0]);
+
+    private int[] valores;
+    private int tamanho;
+
+    ListaOrdinais() { this(new int[4]); }
+
+    private ListaOrdinais(int[] valores) { this.valores = valores; }
+
+    int tamanho() { return tamanho; }
+    int get(int i) { return valores[i]; }
+
+    void adicionar(int ordinal) {
+        if (this == VAZIA) throw new UnsupportedOperationException("ListaOrdinais.VAZIA é imutável");
+        if (tamanho == 0 || valores[tamanho - 1] < ordinal) {   // caso comum: ordinal novo, maior que todos
+            if (tamanho == valores.length) valores = Arrays.copyOf(valores, tamanho * 2);
+            valores[tamanho++] = ordinal;
+            return;
+        }
+        int pos = Arrays.binarySearch(valores, 0, tamanho, ordinal);
+        if (pos >= 0) return;
+        pos = -pos - 1;
+        if (tamanho == valores.length) valores = Arrays.copyOf(valores, tamanho * 2);
+        System.arraycopy(valores, pos, valores, pos + 1, tamanho - pos);
+        valores[pos] = ordinal;
+        tamanho++;
+    }
+
+    boolean remover(int ordinal) {
+        int pos = Arrays.binarySearch(valores, 0, tamanho, ordinal);
+        if (pos < 0) return false;
+        System.arraycopy(valores, pos + 1, valores, pos, tamanho - pos - 1);
+        tamanho--;
+        return true;
+    }
+
+    boolean contem(int ordinal) { return Arrays.binarySearch(valores, 0, tamanho, ordinal) >= 0; }
+
+    static ListaOrdinais intersecao(ListaOrdinais a, ListaOrdinais b) {
+        ListaOrdinais r = new ListaOrdinais();
+        int i = 0, j = 0;
+        while (i < a.tamanho && j < b.tamanho) {
+            int x = a.valores[i], y = b.valores[j];
+            if (x == y) { r.adicionar(x); i++; j++; }
+            else if (x < y) i++;
+            else j++;
+        }
+        return r;
+    }
+
+    static ListaOrdinais uniao(ListaOrdinais a, ListaOrdinais b) {
+        ListaOrdinais r = new ListaOrdinais(new int[Math.max(4, a.tamanho + b.tamanho)]);
+        int i = 0, j = 0;
+        while (i < a.tamanho || j < b.tamanho) {
+            int x = i < a.tamanho ? a.valores[i] : Integer.MAX_VALUE;
+            int y = j < b.tamanho ? b.valores[j] : Integer.MAX_VALUE;
+            if (x <= y) { r.valores[r.tamanho++] = x; i++; if (x == y) j++; }
+            else { r.valores[r.tamanho++] = y; j++; }
+        }
+        return r;
+    }
+}
+
+/******************************
+ * ÍNDICE DE IDS              *
+ ******************************/
+// id -> ordinal sem caixas nem nós por entrada: a tabela (endereçamento aberto,
+// sondagem linear) guarda só ordinal + 1 num int[], e a comparação usa o UUID
+// guardado nas colunas do catálogo. Com a tabela no máximo meio cheia são
+// 8 a 16 bytes por mídia.
+final class IndiceIds {
+    private final ColunasCatalogo colunas;
+    private int[] tabela = new int[16];   // ordinal + 1; 0 = posição livre
+    private int tamanho;
+
+    IndiceIds(ColunasCatalogo colunas) { this.colunas = colunas; }
+
+    int tamanho() { return tamanho; }
+
+    // Ordinal do id no formato de Midia#getId (UUID em hexadecimal minúsculo), ou -1.
+    int obter(String id) {
+        if (id == null || id.length() != 36) return -1;
+        long alto = 0, baixo = 0;
+        for (int i = 0; i < 36; i++) {
+            char c = id.charAt(i);
+            if (i == 8 || i == 13 || i == 18 || i == 23) {
+                if (c != '-') return -1;
+                continue;
+            }
+            int digito = c >= '0' && c <= '9' ? c - '0' : c >= 'a' && c <= 'f' ? c - 'a' + 10 : -1;
+            if (digito < 0) return -1;
+            if (i < 18) alto = alto << 4 | digito;
+            else baixo = baixo << 4 | digito;
+        }
+        return obter(alto, baixo);
+    }
+
+    int obter(long alto, long baixo) {
+        int mascara = tabela.length - 1;
+        for (int i = posicao(alto, baixo, mascara); tabela[i] != 0; i = (i + 1) & mascara) {
+            int o = tabela[i] - 1;
+            if (colunas.idAlto(o) == alto && colunas.idBaixo(o) == baixo) return o;
+        }
+        return -1;
+    }
+
+    // A linha do ordinal já precisa estar nas colunas (para redimensionar e comparar depois).
+    void adicionar(long alto, long baixo, int ordinal) {
+        if ((tamanho + 1) * 2 > tabela.length) redimensionar(tabela.length * 2);
+        int mascara = tabela.length - 1;
+        int i = posicao(alto, baixo, mascara);
+        while (tabela[i] != 0) i = (i + 1) & mascara;
+        tabela[i] = ordinal + 1;
+        tamanho++;
+    }
+
+    // Remoção com deslocamento para trás, sem lápides: as entradas seguintes do
+    // mesmo agrupamento voltam para perto da posição de origem.
+    void remover(long alto, long baixo, int ordinal) {
+        int mascara = tabela.length - 1;
+        int i = posicao(alto, baixo, mascara);
+        while (tabela[i] != ordinal + 1) {
+            if (tabela[i] == 0) return;
+            i = (i + 1) & mascara;
+        }
+        for (int j = (i + 1) & mascara; tabela[j] != 0; j = (j + 1) & mascara) {
+            int origem = posicao(tabela[j] - 1, mascara);
+            // A entrada em j fica onde está se a origem dela cai em (i, j]; senão desce para i.
+            boolean fica = i <= j ? (i < origem && origem <= j) : (i < origem || origem <= j);
+            if (!fica) {
+                tabela[i] = tabela[j];
+                i = j;
+            }
+        }
+        tabela[i] = 0;
+        tamanho--;
+    }
+
+    private void redimensionar(int capacidade) {
+        int[] antiga = tabela;
+        tabela = new int[capacidade];
+        int mascara = capacidade - 1;
+        for (int valor : antiga) {
+            if (valor == 0) continue;
+            int i = posicao(valor - 1, mascara);
+            while (tabela[i] != 0) i = (i + 1) & mascara;
+            tabela[i] = valor;
+        }
+    }
+
+    private int posicao(int ordinal, int mascara) {
+        return posicao(colunas.idAlto(ordinal), colunas.idBaixo(ordinal), mascara);
+    }
+
+    private static int posicao(long alto, long baixo, int mascara) {
+        return (int) (((alto ^ baixo) * 0x9E3779B97F4A7C15L) >>> 32) & mascara;
+    }
+}
+
+/****************************
+ * BITMAPS POR GÊNERO       *
+ ****************************/
+// Um bitmap por gênero sobre os ordinais do catálogo: o bit "o" do gênero G está
+// ligado quando a mídia de ordinal o é de G. Filtros como "ROCK ou JAZZ, menos
+// PODCAST" e contagens por gênero viram operações sobre palavras de 64 bits.
+final class BitmapGeneros {
+    private final long[][] bits = new long[Genero.values().length][];
+
+    BitmapGeneros() {
+        for (int g = 0; g < bits.length; g++) bits[g] = new long[1];
+    }
+
+    void marcar(Genero genero, int ordinal) {
+        int palavra = ordinal >>> 6;
+        long[] b = bits[genero.ordinal()];
+        if (palavra >= b.length) b = bits[genero.ordinal()] = Arrays.copyOf(b, Math.max(palavra + 1, b.length * 2));
+        b[palavra] |= 1L << ordinal;
+    }
+
+    void desmarcar(Genero genero, int ordinal) {
+        long[] b = bits[genero.ordinal()];
+        int palavra = ordinal >>> 6;
+        if (palavra < b.length) b[palavra] &= ~(1L << ordinal);
+    }
+
+    // (OR dos gêneros incluídos) AND NOT (OR dos excluídos); "incluir" vazio = todos.
+    long[] filtrar(Collection<Genero> incluir, Collection<Genero> excluir) {
+        Collection<Genero> base = incluir.isEmpty() ? Arrays.asList(Genero.values()) : incluir;
+        int palavras = 0;
+        for (Genero g : base) palavras = Math.max(palavras, bits[g.ordinal()].length);
+        long[] r = new long[palavras];
+        for (Genero g : base) {
+            long[] b = bits[g.ordinal()];
+            for (int i = 0; i < b.length; i++) r[i] |= b[i];
+        }
+        for (Genero g : excluir) {
+            long[] b = bits[g.ordinal()];
+            for (int i = 0; i < Math.min(b.length, r.length); i++) r[i] &= ~b[i];
+        }
+        return r;
+    }
+
+    // Quantos bits de "conjunto" caem em cada gênero (facetas), sem tocar nas mídias.
+    Map<Genero, Integer> contar(long[] conjunto) {
+        Map<Genero, Integer> contagem = new EnumMap<>(Genero.class);
+        for (Genero g : Genero.values()) {
+            long[] b = bits[g.ordinal()];
+            int total = 0;
+            for (int i = 0; i < Math.min(b.length, conjunto.length); i++) total += Long.bitCount(b[i] & conjunto[i]);
+            if (total > 0) contagem.put(g, total);
+        }
+        return contagem;
+    }
+
+    static long[] deOrdinais(ListaOrdinais ordinais) {
+        if (ordinais.tamanho() == 0) return new long[0];
+        long[] r = new long[(ordinais.get(ordinais.tamanho() - 1) >>> 6) + 1];
+        for (int i = 0; i < ordinais.tamanho(); i++) r[ordinais.get(i) >>> 6] |= 1L << ordinais.get(i);
+        return r;
+    }
+}
+
+/******************************
+ * COLUNAS DO CATÁLOGO        *
+ ******************************/
+// Armazenamento principal do catálogo: uma coluna por campo, indexada pelo ordinal.
+// - id: os dois longs do UUID (16 bytes)
+// - título: posição e tamanho (2 ints) dos bytes UTF-8 numa área de textos
+// - duração (int)
+// - artista (int): código num dicionário; cada artista distinto é guardado uma vez
+// - extra (int): episódios (podcast) ou código do narrador (audiobook)
+// - gênero (byte): o tipo sai dele (PODCAST, AUDIOBOOK ou música)
+// O catálogo não guarda objetos Midia: midia(ordinal) monta um novo a cada leitura,
+// e as varreduras (duração, artistas) percorrem só a coluna de que precisam.
+// Com foraDoHeap = true todas as colunas, inclusive os títulos, ficam em ByteBuffers
+// diretos e o heap guarda só os dicionários (e os índices). Isso reduz o heap, não as
+// pausas: no heap as colunas já são poucos arrays de bytes, que o GC não percorre.
+// Cada coluna é um único ByteBuffer (índice int): cabem até MAX_LINHAS linhas
+// (~134 milhões, limitadas pelos 16 bytes do id) e MAX_BYTES de títulos.
+final class ColunasCatalogo {
+    private static final byte REMOVIDA = -1;
+    static final int MAX_BYTES = Integer.MAX_VALUE - 8;          // maior ByteBuffer que dá para alocar
+    static final int MAX_LINHAS = MAX_BYTES / 16;
+    private static final Genero[] GENEROS = Genero.values();
+
+    // Texto -> código denso, com quantas linhas ativas usam cada código.
+    private static final class Dicionario {
+        private final List<String> textos = new ArrayList<>();
+        private final Map<String, Integer> codigos = new HashMap<>();
+        private int[] usos = new int[16];
+
+        int usar(String texto) {
+            Integer codigo = codigos.get(texto);
+            if (codigo == null) {
+                codigo = textos.size();
+                textos.add(texto);
+                codigos.put(texto, codigo);
+            }
+            if (codigo == usos.length) usos = Arrays.copyOf(usos, codigo * 2);
+            usos[codigo]++;
+            return codigo;
+        }
+
+        void liberar(int codigo) { usos[codigo]--; }
+        int usos(int codigo) { return usos[codigo]; }
+        String texto(int codigo) { return textos.get(codigo); }
+    }
+
+    private final boolean foraDoHeap;
+    private ByteBuffer ids, titulos, duracoes, artistas, extras, generos;
+    private ByteBuffer textos;                    // bytes UTF-8 dos títulos, em sequência
+    private int tamanho, capacidade;
+    private int fimTextos, textosRemovidos;       // bytes usados / quantos deles são de linhas removidas
+
+    private final Dicionario nomesArtistas = new Dicionario();
+    private final List<String> artistasNormalizados = new ArrayList<>();       // código -> chave normalizada
+    private final Map<String, Integer> artistasAtivos = new HashMap<>();       // chave normalizada -> códigos em uso
+    private final Dicionario narradores = new Dicionario();
+
+    ColunasCatalogo(boolean foraDoHeap) {
+        this.foraDoHeap = foraDoHeap;
+        this.capacidade = 16;
+        this.ids = alocar(16 * capacidade);
+        this.titulos = alocar(8 * capacidade);
+        this.duracoes = alocar(4 * capacidade);
+        this.artistas = alocar(4 * capacidade);
+        this.extras = alocar(4 * capacidade);
+        this.generos = alocar(capacidade);
+        this.textos = alocar(64 * capacidade);
+    }
+
+    // Acrescenta a linha da mídia; o ordinal é a posição.
+    int adicionar(Midia m) {
+        if (tamanho == MAX_LINHAS) throw new IllegalStateException("Catálogo cheio: " + MAX_LINHAS + " linhas");
+        byte[] titulo = titulo(m);
+        if (tamanho == capacidade) crescer((int) Math.min(2L * capacidade, MAX_LINHAS));
+        gravar(tamanho, m, titulo);
+        return tamanho++;
+    }
+
+    // Acrescenta uma linha já removida: só para a carga do snapshot repor as linhas livres.
+    int adicionarRemovida() {
+        if (tamanho == MAX_LINHAS) throw new IllegalStateException("Catálogo cheio: " + MAX_LINHAS + " linhas");
+        if (tamanho == capacidade) crescer((int) Math.min(2L * capacidade, MAX_LINHAS));
+        titulos.putInt(tamanho * 8, fimTextos);
+        titulos.putInt(tamanho * 8 + 4, 0);
+        duracoes.putInt(tamanho * 4, 0);
+        generos.put(tamanho, REMOVIDA);
+        return tamanho++;
+    }
+
+    // Reaproveita a linha "o", que precisa estar removida.
+    void regravar(int o, Midia m) {
+        if (!removida(o)) throw new IllegalStateException("Linha " + o + " ainda está em uso");
+        gravar(o, m, titulo(m));
+    }
+
+    private static byte[] titulo(Midia m) {
+        if (!(m instanceof Musica || m instanceof Podcast || m instanceof Audiobook)) {
+            throw new IllegalArgumentException("Tipo de mídia não suportado pelo catálogo: " + m.getClass().getSimpleName());
+        }
+        return m.getTitulo().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private void gravar(int o, Midia m, byte[] titulo) {
+        long fimNovo = (long) fimTextos + titulo.length;
+        if (fimNovo > MAX_BYTES) throw new IllegalStateException("Catálogo cheio: títulos passam de " + MAX_BYTES + " bytes");
+        if (fimNovo > textos.capacity()) {
+            ByteBuffer maior = alocar((int) Math.min(Math.max(2L * textos.capacity(), fimNovo), MAX_BYTES));
+            maior.put(0, textos, 0, fimTextos);
+            textos = maior;
+        }
+        textos.put(fimTextos, titulo);
+        titulos.putInt(o * 8, fimTextos);
+        titulos.putInt(o * 8 + 4, titulo.length);
+        fimTextos += titulo.length;
+
+        int artista = nomesArtistas.usar(m.getArtistaOuAutor());
+        if (artista == artistasNormalizados.size()) artistasNormalizados.add(m.getArtistaNormalizado());
+        if (nomesArtistas.usos(artista) == 1) artistasAtivos.merge(artistasNormalizados.get(artista), 1, Integer::sum);
+
+        ids.putLong(o * 16, m.getIdAlto());
+        ids.putLong(o * 16 + 8, m.getIdBaixo());
+        duracoes.putInt(o * 4, m.getDuracaoSegundos());
+        artistas.putInt(o * 4, artista);
+        if (m instanceof Podcast) extras.putInt(o * 4, ((Podcast) m).getEpisodios());
+        else if (m instanceof Audiobook) extras.putInt(o * 4, narradores.usar(((Audiobook) m).getNarrador()));
+        else extras.putInt(o * 4, 0);
+        generos.put(o, (byte) m.getGenero().ordinal());
+    }
+
+    // Falha antes de gravar qualquer linha do lote se ele não couber; só codifica os títulos
+    // quando o limite de 3 bytes UTF-8 por char não basta para decidir.
+    void verificarEspaco(Collection<? extends Midia> midias) {
+        if ((long) tamanho + midias.size() > MAX_LINHAS) throw new IllegalStateException("Catálogo cheio: " + MAX_LINHAS + " linhas");
+        long bytes = 0;
+        for (Midia m : midias) bytes += 3L * m.getTitulo().length();
+        if (fimTextos + bytes <= MAX_BYTES) return;
+        bytes = 0;
+        for (Midia m : midias) bytes += m.getTitulo().getBytes(StandardCharsets.UTF_8).length;
+        if (fimTextos + bytes > MAX_BYTES) throw new IllegalStateException("Catálogo cheio: títulos passam de " + MAX_BYTES + " bytes");
+    }
+
+    // Mídia da linha, montada a partir das colunas (a linha não pode estar removida).
+    Midia midia(int o) {
+        long alto = ids.getLong(o * 16), baixo = ids.getLong(o * 16 + 8);
+        String titulo = texto(titulos.getInt(o * 8), titulos.getInt(o * 8 + 4));
+        int artista = artistas.getInt(o * 4);
+        String nome = nomesArtistas.texto(artista), normalizado = artistasNormalizados.get(artista);
+        int duracao = duracoes.getInt(o * 4);
+        Genero genero = GENEROS[generos.get(o)];
+        if (genero == Genero.PODCAST) return new Podcast(alto, baixo, titulo, nome, normalizado, duracao, extras.getInt(o * 4));
+        if (genero == Genero.AUDIOBOOK) return new Audiobook(alto, baixo, titulo, nome, normalizado, narradores.texto(extras.getInt(o * 4)), duracao);
+        return new Musica(alto, baixo, titulo, nome, normalizado, duracao, genero);
+    }
+
+    // No heap decodifica direto do array; fora dele precisa copiar os bytes antes.
+    private String texto(int inicio, int n) {
+        if (textos.hasArray()) return new String(textos.array(), textos.arrayOffset() + inicio, n, StandardCharsets.UTF_8);
+        byte[] bytes = new byte[n];
+        textos.get(inicio, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // Linha removida: gênero REMOVIDA e duração zero, para as varreduras a ignorarem.
+    void remover(int o) {
+        if (removida(o)) return;
+        int artista = artistas.getInt(o * 4);
+        nomesArtistas.liberar(artista);
+        if (nomesArtistas.usos(artista) == 0) {
+            artistasAtivos.computeIfPresent(artistasNormalizados.get(artista), (k, n) -> n == 1 ? null : n - 1);
+        }
+        if (generos.get(o) == Genero.AUDIOBOOK.ordinal()) narradores.liberar(extras.getInt(o * 4));
+        generos.put(o, REMOVIDA);
+        duracoes.putInt(o * 4, 0);
+        textosRemovidos += titulos.getInt(o * 8 + 4);
+        if (textosRemovidos > fimTextos / 2 && textosRemovidos > 1 << 16) compactarTextos();
+    }
+
+    long idAlto(int o) { return ids.getLong(o * 16); }
+    long idBaixo(int o) { return ids.getLong(o * 16 + 8); }
+    int duracao(int o) { return duracoes.getInt(o * 4); }
+    boolean removida(int o) { return generos.get(o) == REMOVIDA; }
+
+    int tamanho() { return tamanho; }
+    int quantidadeArtistas() { return artistasAtivos.size(); }
+
+    long somaDuracao() {
+        long total = 0;
+        for (int i = 0; i < tamanho; i++) total += duracao(i);
+        return total;
+    }
+
+    ListaOrdinais comDuracaoEntre(int minSegundos, int maxSegundos) {
+        ListaOrdinais r = new ListaOrdinais();
+        for (int i = 0; i < tamanho; i++) {
+            int d = duracao(i);
+            if (d >= minSegundos && d <= maxSegundos && !removida(i)) r.adicionar(i);
+        }
+        return r;
+    }
+
+    private ByteBuffer alocar(int bytes) {
+        return foraDoHeap ? ByteBuffer.allocateDirect(bytes) : ByteBuffer.allocate(bytes);
+    }
+
+    private void crescer(int novaCapacidade) {
+        ids = copiar(ids, 16, novaCapacidade);
+        titulos = copiar(titulos, 8, novaCapacidade);
+        duracoes = copiar(duracoes, 4, novaCapacidade);
+        artistas = copiar(artistas, 4, novaCapacidade);
+        extras = copiar(extras, 4, novaCapacidade);
+        generos = copiar(generos, 1, novaCapacidade);
+        capacidade = novaCapacidade;
+    }
+
+    private ByteBuffer copiar(ByteBuffer coluna, int bytesPorLinha, int novaCapacidade) {
+        ByteBuffer maior = alocar(novaCapacidade * bytesPorLinha);
+        maior.put(0, coluna, 0, tamanho * bytesPorLinha);
+        return maior;
+    }
+
+    // Reescreve a área de textos só com os títulos das linhas ativas.
+    private void compactarTextos() {
+        ByteBuffer novos = alocar((int) Math.min(Math.max(64, 2L * (fimTextos - textosRemovidos)), MAX_BYTES));
+        int fim = 0;
+        for (int o = 0; o < tamanho; o++) {
+            if (removida(o)) continue;
+            int inicio = titulos.getInt(o * 8), n = titulos.getInt(o * 8 + 4);
+            novos.put(fim, textos, inicio, n);
+            titulos.putInt(o * 8, fim);
+            fim += n;
+        }
+        textos = novos;
+        fimTextos = fim;
+        textosRemovidos = 0;
+    }
+}
+
+/*****************************
+ * CACHE DE CONSULTAS        *
+ *****************************/
+// Resultados das buscas do catálogo pela consulta normalizada ("genero:[ROCK][]",
+// "artista:queen"), limitados em bytes: cada entrada pesa uma estimativa da chave e
+// da lista, incluindo as mídias (montadas das colunas só para o resultado).
+// Políticas (-Dminispotify.cache=tinylfu|lru|nenhum, padrão tinylfu; tamanho em
+// -Dminispotify.cache.bytes, padrão 8 MB):
+// - LRU: sai a entrada usada há mais tempo.
+// - W-TinyLFU: entradas novas passam por uma janela LRU de 1%; quem sai dela só entra
+//   na área principal (LRU segmentada, 20% em teste e 80% protegida) se foi consultado
+//   mais vezes que a vítima, segundo um count-min de 4 linhas que cai pela metade de
+//   tempos em tempos. Uma rajada de consultas únicas não expulsa as populares.
+// Invalidação: cada entrada registra as chaves de que depende ("genero:ROCK",
+// "titulo=<texto>") e o critério exato de uma mídia afetá-la; ao incluir ou remover
+// uma mídia, só as entradas das chaves dela são testadas, e só as afetadas saem.
+// Concorrência, como no Caffeine: a consulta é um get no ConcurrentHashMap, sem trava;
+// o acerto só é anotado num buffer de leituras (listras fixas pelo id da thread, e
+// uma anotação que não cabe é descartada), e a reordenação das filas e a frequência
+// dos acertos são aplicadas em lote por quem conseguir a trava (tryLock quando uma
+// listra enche, e sempre antes de guardar ou invalidar). Guardar e invalidar usam a
+// trava. O Catalogo consulta e guarda sob a trava de leitura e invalida sob a de
+// escrita, então nada é guardado com uma alteração no meio.
+final class CacheConsultas {
+    enum Politica { NENHUMA, LRU, TINY_LFU }
+
+    private static final long PADRAO_BYTES = 8L << 20;
+    private static final int PESO_ENTRADA = 160;   // nó + mapa + lista
+    private static final int PESO_MIDIA = 120;     // referência + Midia + título
+    private static final int JANELA = 0, EM_TESTE = 1, PROTEGIDA = 2, FORA = -1;
+
+    private final Politica politica;
+    private final long capacidade, capacidadeJanela, capacidadeProtegida;
+    private final long maiorEntrada;                                    // mais pesadas não cabem sem esvaziar o cache
+    private final Map<String, No> entradas = new ConcurrentHashMap<>();
+    private final Map<String, Set<No>> porDependencia = new HashMap<>(); // chave de mídia -> entradas que ela pode afetar
+    private final Fila[] filas = { new Fila(), new Fila(), new Fila() };
+    private final Frequencias frequencias;
+    private final Leituras leituras = new Leituras();
+    private final ReentrantLock trava = new ReentrantLock();
+    private final LongAdder acertos = new LongAdder(), faltas = new LongAdder();
+    private long despejos, invalidacoes;                                // só com a trava
+
+    CacheConsultas(Politica politica, long capacidadeBytes) {
+        this.politica = capacidadeBytes <= 0 ? Politica.NENHUMA : politica;
+        this.capacidade = this.politica == Politica.NENHUMA ? 0 : capacidadeBytes;
+        boolean tinyLfu = this.politica == Politica.TINY_LFU;
+        // LRU: tudo fica na "janela", que ocupa o cache inteiro
+        this.capacidadeJanela = tinyLfu ? Math.max(1, capacidade / 100) : capacidade;
+        this.capacidadeProtegida = tinyLfu ? (capacidade - capacidadeJanela) * 8 / 10 : 0;
+        this.maiorEntrada = tinyLfu ? capacidade - capacidadeJanela : capacidade;
+        this.frequencias = tinyLfu ? new Frequencias(capacidade) : null;
+    }
+
+    static CacheConsultas configurado() {
+        String nome = System.getProperty("minispotify.cache", "tinylfu").trim().toLowerCase(Locale.ROOT);
+        Politica politica = switch (nome) {
+            case "tinylfu" -> Politica.TINY_LFU;
+            case "lru" -> Politica.LRU;
+            case "nenhum", "nenhuma" -> Politica.NENHUMA;
+            default -> throw new IllegalArgumentException("Política de cache desconhecida: " + nome + " (use tinylfu, lru ou nenhum)");
+        };
+        return new CacheConsultas(politica, Long.getLong("minispotify.cache.bytes", PADRAO_BYTES));
+    }
+
+    // Resultado guardado, ou null. Toda consulta conta para a frequência: o acerto ao
+    // ser drenado do buffer, a falta quando o resultado é guardado.
+    List<Midia> obter(String chave) {
+        if (politica == Politica.NENHUMA) return null;
+        No no = entradas.get(chave);
+        if (no == null) { faltas.increment(); return null; }
+        acertos.increment();
+        if (leituras.anotar(no) && trava.tryLock()) {
+            try { drenar(); } finally { trava.unlock(); }
+        }
+        return no.valor;
+    }
+
+    // Guarda o resultado de uma consulta que faltou e o devolve somente leitura (pode ser devolvido de novo).
+    // "afeta": se a inclusão/remoção da mídia muda o resultado; "dependencias": chaves em que ela precisa estar.
+    List<Midia> guardar(String chave, List<Midia> resultado, Predicate<Midia> afeta, Collection<String> dependencias) {
+        List<Midia> somenteLeitura = Collections.unmodifiableList(resultado);
+        if (politica == Politica.NENHUMA) return somenteLeitura;
+        long peso = PESO_ENTRADA + 2L * chave.length() + (long) PESO_MIDIA * resultado.size();
+        trava.lock();
+        try {
+            drenar();
+            if (frequencias != null) frequencias.registrar(chave);
+            if (peso > maiorEntrada) return somenteLeitura;
+            No antigo = entradas.get(chave);
+            if (antigo != null) remover(antigo);
+            No no = new No(chave, somenteLeitura, peso, afeta, dependencias);
+            for (String d : dependencias) porDependencia.computeIfAbsent(d, k -> new HashSet<>()).add(no);
+            filas[JANELA].adicionar(no, JANELA);
+            entradas.put(chave, no);
+            while (filas[JANELA].peso > capacidadeJanela) {
+                if (politica == Politica.LRU) despejar(filas[JANELA].primeiro);
+                else admitir(filas[JANELA].primeiro);
+            }
+            return somenteLeitura;
+        } finally {
+            trava.unlock();
+        }
+    }
+
+    // Remove as entradas que a mídia incluída ou removida afeta; "chaves" são as dependências dela.
+    void invalidar(Midia midia, Collection<String> chaves) {
+        if (entradas.isEmpty()) return;
+        trava.lock();
+        try {
+            drenar();
+            for (String chave : chaves) {
+                Set<No> candidatas = porDependencia.get(chave);
+                if (candidatas == null) continue;
+                for (No no : new ArrayList<>(candidatas)) {
+                    if (no.afeta.test(midia)) { remover(no); invalidacoes++; }
+                }
+            }
+        } finally {
+            trava.unlock();
+        }
+    }
+
+    boolean vazio() { return entradas.isEmpty(); }
+
+    double taxaAcertos() {
+        long a = acertos.sum(), total = a + faltas.sum();
+        return total == 0 ? 0 : a / (double) total;
+    }
+
+    long despejos() {
+        trava.lock();
+        try { return despejos; } finally { trava.unlock(); }
+    }
+
+    // Estatísticas para as métricas (menu e JMX).
+    Map<String, Long> medidores() {
+        trava.lock();
+        try {
+            return Map.of(
+                    "cache.acertos", acertos.sum(),
+                    "cache.faltas", faltas.sum(),
+                    "cache.taxa_acertos_por_mil", Math.round(taxaAcertos() * 1000),
+                    "cache.despejos", despejos,
+                    "cache.invalidacoes", invalidacoes,
+                    "cache.entradas", (long) entradas.size(),
+                    "cache.bytes", filas[JANELA].peso + filas[EM_TESTE].peso + filas[PROTEGIDA].peso);
+        } finally {
+            trava.unlock();
+        }
+    }
+
+    // Aplica os acertos anotados; os de entradas que já saíram são ignorados. Só com a trava.
+    private void drenar() {
+        leituras.drenar(no -> {
+            if (no.regiao == FORA) return;
+            if (frequencias != null) frequencias.registrar(no.chave);
+            tocar(no);
+        });
+    }
+
+    // Acerto: renova a posição; no W-TinyLFU, quem estava em teste passa a protegido.
+    private void tocar(No no) {
+        filas[no.regiao].remover(no);
+        if (no.regiao != EM_TESTE) { filas[no.regiao].adicionar(no, no.regiao); return; }
+        filas[PROTEGIDA].adicionar(no, PROTEGIDA);
+        while (filas[PROTEGIDA].peso > capacidadeProtegida && filas[PROTEGIDA].primeiro != no) {
+            No rebaixado = filas[PROTEGIDA].primeiro;
+            filas[PROTEGIDA].remover(rebaixado);
+            filas[EM_TESTE].adicionar(rebaixado, EM_TESTE);
+        }
+    }
+
+    // Candidato saindo da janela: entra na área principal se for mais frequente que cada vítima.
+    private void admitir(No candidato) {
+        long capacidadePrincipal = capacidade - capacidadeJanela;
+        int frequencia = frequencias.estimar(candidato.chave);
+        while (filas[EM_TESTE].peso + filas[PROTEGIDA].peso + candidato.peso > capacidadePrincipal) {
+            No vitima = filas[EM_TESTE].primeiro != null ? filas[EM_TESTE].primeiro : filas[PROTEGIDA].primeiro;
+            if (vitima == null || frequencia <= frequencias.estimar(vitima.chave)) { despejar(candidato); return; }
+            despejar(vitima);
+        }
+        filas[JANELA].remover(candidato);
+        filas[EM_TESTE].adicionar(candidato, EM_TESTE);
+    }
+
+    private void despejar(No no) {
+        remover(no);
+        despejos++;
+    }
+
+    private void remover(No no) {
+        filas[no.regiao].remover(no);
+        no.regiao = FORA;
+        entradas.remove(no.chave, no);
+        for (String d : no.dependencias) {
+            Set<No> registradas = porDependencia.get(d);
+            if (registradas != null && registradas.remove(no) && registradas.isEmpty()) porDependencia.remove(d);
+        }
+    }
+
+    private static final class No {
+        final String chave;
+        final List<Midia> valor;
+        final long peso;
+        final Predicate<Midia> afeta;
+        final Collection<String> dependencias;
+        int regiao;                 // só com a trava
+        No anterior, proximo;
+
+        No(String chave, List<Midia> valor, long peso, Predicate<Midia> afeta, Collection<String> dependencias) {
+            this.chave = chave; this.valor = valor; this.peso = peso; this.afeta = afeta; this.dependencias = dependencias;
+        }
+    }
+
+    // Lista duplamente ligada da menos para a mais recente, com o peso total.
+    private static final class Fila {
+        No primeiro, ultimo;
+        long peso;
+
+        void adicionar(No no, int regiao) {
+            no.regiao = regiao;
+            no.anterior = ultimo;
+            no.proximo = null;
+            if (ultimo == null) primeiro = no; else ultimo.proximo = no;
+            ultimo = no;
+            peso += no.peso;
+        }
+
+        void remover(No no) {
+            if (no.anterior == null) primeiro = no.proximo; else no.anterior.proximo = no.proximo;
+            if (no.proximo == null) ultimo = no.anterior; else no.proximo.anterior = no.anterior;
+            no.anterior = no.proximo = null;
+            peso -= no.peso;
+        }
+    }
+
+    // Buffer de acertos: um anel de 16 posições por listra. Quem anota reserva a posição
+    // com CAS no contador de escrita e desiste se o anel estiver cheio ou se perder a
+    // disputa; só quem tem a trava do cache lê e avança o contador de leitura.
+    private static final class Leituras {
+        private static final int LISTRAS = Math.min(64, Integer.highestOneBit(Math.max(1, 2 * Runtime.getRuntime().availableProcessors() - 1)) << 1);
+        private static final int TAMANHO = 16, PASSO = 16;   // contadores de escrita e leitura em linhas de cache separadas
+        private final AtomicReferenceArray<No> anel = new AtomicReferenceArray<>(LISTRAS * TAMANHO);
+        private final AtomicLongArray contadores = new AtomicLongArray(LISTRAS * PASSO);
+
+        // Devolve true se a listra encheu (hora de drenar).
+        boolean anotar(No no) {
+            long id = Thread.currentThread().getId();
+            int l = (int) ((id * 0x9E3779B97F4A7C15L) >>> 32) & (LISTRAS - 1);
+            long escrita = contadores.get(l * PASSO), lida = contadores.get(l * PASSO + 8);
+            if (escrita - lida >= TAMANHO) return true;
+            if (!contadores.compareAndSet(l * PASSO, escrita, escrita + 1)) return false;
+            anel.lazySet(l * TAMANHO + (int) (escrita & (TAMANHO - 1)), no);
+            return escrita + 1 - lida >= TAMANHO;
+        }
+
+        void drenar(Consumer<No> acao) {
+            for (int l = 0; l < LISTRAS; l++) {
+                long lida = contadores.get(l * PASSO + 8), escrita = contadores.get(l * PASSO);
+                for (; lida < escrita; lida++) {
+                    int i = l * TAMANHO + (int) (lida & (TAMANHO - 1));
+                    No no = anel.get(i);
+                    if (no == null) break;   // posição reservada, ainda não preenchida: fica para a próxima
+                    anel.lazySet(i, null);
+                    acao.accept(no);
+                }
+                contadores.lazySet(l * PASSO + 8, lida);
+            }
+        }
+    }
+
+    // Count-min: 4 linhas de contadores até 15, estimativa = o menor. Após 10 registros
+    // por contador de linha todos caem pela metade, e o histórico antigo pesa menos.
+    private static final class Frequencias {
+        private static final int LINHAS = 4, MAXIMO = 15;
+        private static final long[] SEMENTES = { 0x5851F42DL, 0x14057B7EL, 0x2545F491L, 0x7A1C3E6DL };
+        private final byte[][] contadores;
+        private final int deslocamento, limiteAmostras;
+        private int amostras;
+
+        Frequencias(long capacidadeBytes) {
+            // ~1 contador por entrada pequena que caberia no cache
+            int largura = Integer.highestOneBit((int) Math.max(64, Math.min(1 << 20, capacidadeBytes / PESO_ENTRADA)));
+            contadores = new byte[LINHAS][largura];
+            deslocamento = 64 - Integer.numberOfTrailingZeros(largura);
+            limiteAmostras = 10 * largura;
+        }
+
+        void registrar(String chave) {
+            int hash = chave.hashCode();
+            for (int l = 0; l < LINHAS; l++) {
+                int i = indice(hash, l);
+                if (contadores[l][i] < MAXIMO) contadores[l][i]++;
+            }
+            if (++amostras >= limiteAmostras) {
+                for (byte[] linha : contadores) for (int i = 0; i < linha.length; i++) linha[i] >>= 1;
+                amostras /= 2;
+            }
+        }
+
+        int estimar(String chave) {
+            int hash = chave.hashCode(), menor = MAXIMO;
+            for (int l = 0; l < LINHAS; l++) menor = Math.min(menor, contadores[l][indice(hash, l)]);
+            return menor;
+        }
+
+        // Bits altos do hash misturado com a semente da linha.
+        private int indice(int hash, int linha) {
+            return (int) (((hash ^ SEMENTES[linha]) * 0x9E3779B97F4A7C15L) >>> deslocamento);
+        }
+    }
+}
+
+/****************
+ * CATÁLOGO     *
+ ****************/
+class Catalogo {
+    // Armazenamento principal: cada mídia recebe um ordinal denso (a linha nas colunas).
+    // A linha de uma mídia removida fica marcada e vai para "livres"; a próxima inclusão
+    // a reaproveita (a mais recente primeiro), então os ordinais das demais não mudam.
+    private final ColunasCatalogo colunas;
+    private final IndiceIds ordinalPorId;
+    private int[] livres = new int[16];
+    private int quantidadeLivres;
+
+    // Índices para busca rápida: chave -> ordinais em ordem crescente
+    private final Map<String, ListaOrdinais> idsPorTitulo = new HashMap<>();     // tituloNormalizado -> ordinais
+    private final Map<String, ListaOrdinais> idsPorArtista = new HashMap<>();    // artistaNormalizado -> ordinais
+    private final BitmapGeneros bitsPorGenero = new BitmapGeneros();
+    private final Autocompletar sugestoes = new Autocompletar(10);               // prefixo -> títulos/artistas
+    // Os índices são montados na primeira consulta após as inclusões, não a cada inclusão:
+    // carregar um snapshot grande só enche o armazenamento principal.
+    private int indexadosAte = 0;
+
+    // Seguro para várias threads: consultas compartilham a trava de leitura; inclusões,
+    // remoções e a montagem dos índices pendentes usam a de escrita. Toda operação vê
+    // o catálogo inteiro antes ou depois de cada alteração, nunca no meio dela.
+    private final ReentrantReadWriteLock trava = new ReentrantReadWriteLock();
+    // Resultados das buscas por título, artista e gêneros; invalidados nas inclusões e remoções
+    private final CacheConsultas cache;
+
+    public Catalogo() { this(false); }
+
+    // foraDoHeap: guarda as colunas (inclusive os títulos) em memória direta, fora do heap do Java
+    public Catalogo(boolean foraDoHeap) { this(foraDoHeap, CacheConsultas.configurado()); }
+
+    Catalogo(boolean foraDoHeap, CacheConsultas cache) {
+        this.colunas = new ColunasCatalogo(foraDoHeap);
+        this.ordinalPorId = new IndiceIds(colunas);
+        this.cache = cache;
+    }
+
+    public void adicionar(Midia midia) {
+        adicionarTodos(List.of(Objects.requireNonNull(midia, "Midia não pode ser nula")));
+    }
+
+    // Inclui todas ou nenhuma (se alguma já estiver no catálogo), sob uma única trava.
+    public void adicionarTodos(Collection<? extends Midia> midias) {
+        long inicio = Metricas.iniciar(Metricas.Operacao.ADICIONAR_MIDIAS);
+        EventosJfr.Mutacao evento = new EventosJfr.Mutacao();
+        evento.begin();
+        trava.writeLock().lock();
+        try {
+            Set<Midia> novas = new HashSet<>();   // igualdade pelo id, sem montar o texto do UUID
+            for (Midia midia : midias) {
+                Objects.requireNonNull(midia, "Midia não pode ser nula");
+                if (ordinalPorId.obter(midia.getIdAlto(), midia.getIdBaixo()) >= 0 || !novas.add(midia)) {
+                    throw new DuplicateMediaException("Mídia já cadastrada no catálogo: " + midia.getTitulo());
+                }
+            }
+            colunas.verificarEspaco(midias);
+            for (Midia midia : midias) {
+                int ordinal;
+                if (quantidadeLivres > 0) {
+                    ordinal = livres[--quantidadeLivres];
+                    colunas.regravar(ordinal, midia);
+                    // A montagem preguiçosa só cobre o fim das colunas: uma linha já passada entra agora
+                    if (ordinal < indexadosAte) indexar(midia, ordinal);
+                } else {
+                    ordinal = colunas.adicionar(midia);
+                }
+                ordinalPorId.adicionar(midia.getIdAlto(), midia.getIdBaixo(), ordinal);
+                invalidarCache(midia);
+            }
+        } finally {
+            trava.writeLock().unlock();
+            Metricas.concluir(Metricas.Operacao.ADICIONAR_MIDIAS, inicio);
+        }
+        // Só alterações que aconteceram: uma inclusão recusada não gera evento
+        registrar(evento, Metricas.Operacao.ADICIONAR_MIDIAS, midias.size());
+    }
+
+    public Midia remover(String id) {
+        long inicio = Metricas.iniciar(Metricas.Operacao.REMOVER_MIDIA);
+        EventosJfr.Mutacao evento = new EventosJfr.Mutacao();
+        evento.begin();
+        Midia m;
+        trava.writeLock().lock();
+        try {
+            int ordinal = ordinalDe(id);
+            // As colunas são imutáveis por linha: as chaves lidas aqui são as que foram indexadas
+            m = colunas.midia(ordinal);
+            ordinalPorId.remover(m.getIdAlto(), m.getIdBaixo(), ordinal);
+            if (ordinal < indexadosAte) desindexar(m, ordinal);
+            colunas.remover(ordinal);
+            if (quantidadeLivres == livres.length) livres = Arrays.copyOf(livres, quantidadeLivres * 2);
+            livres[quantidadeLivres++] = ordinal;
+            invalidarCache(m);
+        } finally {
+            trava.writeLock().unlock();
+            Metricas.concluir(Metricas.Operacao.REMOVER_MIDIA, inicio);
+        }
+        registrar(evento, Metricas.Operacao.REMOVER_MIDIA, 1);
+        return m;
+    }
+
+    public Midia obterPorId(String id) {
+        return ler(() -> colunas.midia(ordinalDe(id)));
+    }
+
+    // O ordinal de uma mídia não muda enquanto ela está no catálogo, e inclusões e remoções
+    // repetidas na mesma ordem (a reexecução do diário) dão os mesmos ordinais, por isso
+    // o diário de mutações referencia as mídias por eles.
+    int ordinalDe(String id) {
+        return ler(() -> {
+            int ordinal = ordinalPorId.obter(id);
+            if (ordinal < 0) throw new MediaNotFoundException("Mídia não encontrada por id");
+            return ordinal;
+        });
+    }
+
+    Midia obterPorOrdinal(int ordinal) {
+        return ler(() -> {
+            if (ordinal < 0 || ordinal >= colunas.tamanho() || colunas.removida(ordinal)) {
+                throw new MediaNotFoundException("Mídia não encontrada: ordinal " + ordinal);
+            }
+            return colunas.midia(ordinal);
+        });
+    }
+
+    public List<Midia> buscarPorTitulo(String termo) {
+        if (termo == null) return List.of();
+        String key = Normalizador.normalizar(termo);
+        return buscar(Metricas.Operacao.BUSCAR_TITULO, termo, () -> consultar("titulo:" + key,
+                m -> m.getTituloNormalizado().equals(key), () -> List.of("titulo=" + key),
+                () -> coletar(idsPorTitulo.getOrDefault(key, ListaOrdinais.VAZIA))));
+    }
+
+    public List<Midia> buscarPorArtista(String termo) {
+        if (termo == null) return List.of();
+        String key = Normalizador.normalizar(termo);
+        return buscar(Metricas.Operacao.BUSCAR_ARTISTA, termo, () -> consultar("artista:" + key,
+                m -> m.getArtistaNormalizado().equals(key), () -> List.of("artista=" + key),
+                () -> coletar(idsPorArtista.getOrDefault(key, ListaOrdinais.VAZIA))));
+    }
+
+    public List<Midia> buscarPorGenero(Genero genero) {
+        if (genero == null) return List.of();
+        return buscarPorGeneros(EnumSet.of(genero), Set.of());
+    }
+
+    // Mídias de qualquer gênero em "incluir" (todos, se vazio) e de nenhum em "excluir".
+    public List<Midia> buscarPorGeneros(Collection<Genero> incluir, Collection<Genero> excluir) {
+        // Máscaras de bits dos ordinais: a chave não depende da ordem nem de repetições nos filtros
+        int inc = mascara(incluir), exc = mascara(excluir);
+        int aceitos = (inc == 0 ? -1 : inc) & ~exc;
+        return buscar(Metricas.Operacao.BUSCAR_GENERO, null, () -> consultar("generos:" + inc + "-" + exc,
+                m -> (aceitos >>> m.getGenero().ordinal() & 1) != 0,
+                () -> {
+                    List<String> dependencias = new ArrayList<>();
+                    for (Genero g : Genero.values()) if ((aceitos >>> g.ordinal() & 1) != 0) dependencias.add("genero:" + g);
+                    return dependencias;
+                },
+                () -> coletar(bitsPorGenero.filtrar(incluir, excluir))));
+    }
+
+    private static int mascara(Collection<Genero> generos) {
+        int bits = 0;
+        for (Genero g : generos) bits |= 1 << g.ordinal();
+        return bits;
+    }
+
+    // Quantas mídias de cada gênero o mesmo filtro de buscarPorGeneros devolveria.
+    public Map<Genero, Integer> contarPorGenero(Collection<Genero> incluir, Collection<Genero> excluir) {
+        return Metricas.medir(Metricas.Operacao.CONTAR_GENEROS, () -> lerIndices(() -> bitsPorGenero.contar(bitsPorGenero.filtrar(incluir, excluir))));
+    }
+
+    // Facetas de gênero das mídias de um artista.
+    public Map<Genero, Integer> contarPorGeneroDoArtista(String artista) {
+        if (artista == null) return Map.of();
+        String key = Normalizador.normalizar(artista);
+        return Metricas.medir(Metricas.Operacao.CONTAR_GENEROS, () -> lerIndices(() -> bitsPorGenero.contar(
+                BitmapGeneros.deOrdinais(idsPorArtista.getOrDefault(key, ListaOrdinais.VAZIA)))));
+    }
+
+    // Mídias do artista dentro de um gênero (interseção feita sobre os bits).
+    public List<Midia> buscarPorArtistaEGenero(String artista, Genero genero) {
+        if (artista == null || genero == null) return List.of();
+        String key = Normalizador.normalizar(artista);
+        return buscar(Metricas.Operacao.BUSCAR_ARTISTA_E_GENERO, artista, () -> lerIndices(() -> {
+            long[] doArtista = BitmapGeneros.deOrdinais(idsPorArtista.getOrDefault(key, ListaOrdinais.VAZIA));
+            long[] doGenero = bitsPorGenero.filtrar(EnumSet.of(genero), Set.of());
+            for (int i = 0; i < doArtista.length; i++) doArtista[i] &= i < doGenero.length ? doGenero[i] : 0L;
+            return coletar(doArtista);
+        }));
+    }
+
+    // Mídias cujo título OU artista é o termo (sem repetições, na ordem de cadastro).
+    public List<Midia> buscarPorTituloOuArtista(String termo) {
+        if (termo == null) return List.of();
+        String key = Normalizador.normalizar(termo);
+        return buscar(Metricas.Operacao.BUSCAR_TITULO_OU_ARTISTA, termo, () -> consultar("titulo_ou_artista:" + key,
+                m -> m.getTituloNormalizado().equals(key) || m.getArtistaNormalizado().equals(key),
+                () -> List.of("titulo=" + key, "artista=" + key),
+                () -> coletar(ListaOrdinais.uniao(
+                        idsPorTitulo.getOrDefault(key, ListaOrdinais.VAZIA),
+                        idsPorArtista.getOrDefault(key, ListaOrdinais.VAZIA)))));
+    }
+
+    // Sugestões de títulos e artistas que começam pelo prefixo digitado.
+    public List<String> autocompletar(String prefixo, int limite) {
+        if (prefixo == null) return List.of();
+        return buscar(Metricas.Operacao.AUTOCOMPLETAR, prefixo, () -> lerIndices(() -> sugestoes.completar(prefixo, limite)));
+    }
+
+    public List<Midia> listarTudo() {
+        return Metricas.medir(Metricas.Operacao.LISTAR, () -> ler(() -> {
+            List<Midia> todas = new ArrayList<>(ordinalPorId.tamanho());
+            for (int o = 0; o < colunas.tamanho(); o++) if (!colunas.removida(o)) todas.add(colunas.midia(o));
+            return todas;
+        }));
+    }
+
+    // As linhas por ordinal (null nas livres) e a pilha de livres, a do topo por último,
+    // lidas no mesmo instante. É o que o snapshot grava: o diário referencia as mídias
+    // pelo ordinal, e depois da carga cada uma precisa voltar ao mesmo.
+    record Linhas(List<Midia> midias, int[] livres) {}
+
+    Linhas linhas() {
+        return Metricas.medir(Metricas.Operacao.LISTAR, () -> ler(() -> {
+            List<Midia> midias = new ArrayList<>(colunas.tamanho());
+            for (int o = 0; o < colunas.tamanho(); o++) midias.add(colunas.removida(o) ? null : colunas.midia(o));
+            return new Linhas(midias, Arrays.copyOf(livres, quantidadeLivres));
+        }));
+    }
+
+    // Inverso de linhas(), num catálogo vazio; "livres" precisa ter exatamente as linhas null.
+    void restaurar(Linhas linhas) {
+        trava.writeLock().lock();
+        try {
+            if (colunas.tamanho() > 0) throw new IllegalStateException("O catálogo precisa estar vazio para ser restaurado");
+            for (Midia m : linhas.midias()) {
+                if (m == null) { colunas.adicionarRemovida(); continue; }
+                ordinalPorId.adicionar(m.getIdAlto(), m.getIdBaixo(), colunas.adicionar(m));
+            }
+            livres = Arrays.copyOf(linhas.livres(), Math.max(16, linhas.livres().length));
+            quantidadeLivres = linhas.livres().length;
+        } finally {
+            trava.writeLock().unlock();
+        }
+    }
+
+    // Trecho da listagem completa (na ordem dos ordinais) e o total do catálogo no mesmo instante.
+    record Pagina(int total, List<Midia> midias) {}
+
+    // Monta só as mídias do trecho. Sem linhas livres a posição é o próprio ordinal; com
+    // elas, as removidas antes do início são puladas lendo só a coluna de gênero.
+    public Pagina listar(int inicio, int limite) {
+        if (inicio < 0 || limite < 0) throw new IllegalArgumentException("Início e limite devem ser >= 0");
+        return Metricas.medir(Metricas.Operacao.LISTAR, () -> ler(() -> {
+            int total = ordinalPorId.tamanho(), linhas = colunas.tamanho();
+            List<Midia> midias = new ArrayList<>(Math.max(0, Math.min(limite, total - inicio)));
+            int o = 0;
+            if (quantidadeLivres == 0) o = Math.min(inicio, linhas);
+            else for (int vistas = 0; o < linhas && vistas < inicio; o++) if (!colunas.removida(o)) vistas++;
+            for (; o < linhas && midias.size() < limite; o++) if (!colunas.removida(o)) midias.add(colunas.midia(o));
+            return new Pagina(total, midias);
+        }));
+    }
+
+    public int tamanho() { return ler(ordinalPorId::tamanho); }
+
+    // Medidores para as métricas: tamanhos do catálogo e dos índices, e o cache de consultas.
+    Map<String, Long> medidores() {
+        Map<String, Long> valores = new HashMap<>(cache.medidores());
+        valores.putAll(ler(() -> Map.of(
+                "catalogo.midias", (long) ordinalPorId.tamanho(),
+                "catalogo.artistas", (long) colunas.quantidadeArtistas(),
+                "indice.titulos", (long) idsPorTitulo.size(),
+                "indice.artistas", (long) idsPorArtista.size(),
+                "indice.pendentes", (long) colunas.tamanho() - indexadosAte)));
+        return valores;
+    }
+
+    // Varreduras sobre uma coluna só (sem montar objetos Midia)
+    public long duracaoTotalSegundos() { return ler(colunas::somaDuracao); }
+    public int quantidadeArtistas() { return ler(colunas::quantidadeArtistas); }
+
+    public List<Midia> buscarPorDuracao(int minSegundos, int maxSegundos) {
+        return buscar(Metricas.Operacao.BUSCAR_DURACAO, null, () -> ler(() -> coletar(colunas.comDuracaoEntre(minSegundos, maxSegundos))));
+    }
+
+    private static void registrar(EventosJfr.Mutacao evento, Metricas.Operacao operacao, int midias) {
+        if (evento.shouldCommit()) {
+            evento.operacao = operacao.nome();
+            evento.midias = midias;
+            evento.commit();
+        }
+    }
+
+    // Busca com métricas e evento JFR; "termo" (pode ser null) só entra no evento.
+    private <T> List<T> buscar(Metricas.Operacao operacao, String termo, Supplier<List<T>> busca) {
+        EventosJfr.Busca evento = new EventosJfr.Busca();
+        evento.begin();
+        List<T> resultados = Metricas.medir(operacao, busca);
+        if (evento.shouldCommit()) {
+            evento.modo = operacao.nome();
+            evento.tamanhoTermo = termo == null ? 0 : termo.length();
+            evento.resultados = resultados.size();
+            evento.commit();
+        }
+        return resultados;
+    }
+
+    // Consulta pelos índices passando pelo cache: o que faltar é calculado e guardado
+    // ainda sob a trava de leitura, sem nenhuma alteração no meio. As dependências
+    // só são montadas quando a consulta falta.
+    private List<Midia> consultar(String chave, Predicate<Midia> afeta, Supplier<Collection<String>> dependencias, Supplier<List<Midia>> busca) {
+        return lerIndices(() -> {
+            List<Midia> guardado = cache.obter(chave);
+            return guardado != null ? guardado : cache.guardar(chave, busca.get(), afeta, dependencias.get());
+        });
+    }
+
+    // Chamado sob a trava de escrita: tira do cache as buscas que a mídia muda.
+    private void invalidarCache(Midia m) {
+        if (cache.vazio()) return;
+        cache.invalidar(m, List.of("titulo=" + m.getTituloNormalizado(), "artista=" + m.getArtistaNormalizado(), "genero:" + m.getGenero()));
+    }
+
+    private <T> T ler(Supplier<T> consulta) {
+        trava.readLock().lock();
+        try {
+            return consulta.get();
+        } finally {
+            trava.readLock().unlock();
+        }
+    }
+
+    // Como ler(), mas antes indexa o que estiver pendente: troca para a trava de
+    // escrita só nesse caso e volta para a de leitura sem soltar (downgrade).
+    private <T> T lerIndices(Supplier<T> consulta) {
+        trava.readLock().lock();
+        try {
+            if (indexadosAte < colunas.tamanho()) {
+                trava.readLock().unlock();
+                trava.writeLock().lock();
+                try {
+                    indexarPendentes();
+                    trava.readLock().lock();
+                } finally {
+                    trava.writeLock().unlock();
+                }
+            }
+            return consulta.get();
+        } finally {
+            trava.readLock().unlock();
+        }
+    }
+
+    private List<Midia> coletar(ListaOrdinais ordinais) {
+        List<Midia> lista = new ArrayList<>(ordinais.tamanho());
+        for (int i = 0; i < ordinais.tamanho(); i++) lista.add(colunas.midia(ordinais.get(i)));
+        return lista;
+    }
+
+    private List<Midia> coletar(long[] bits) {
+        List<Midia> lista = new ArrayList<>();
+        for (int i = 0; i < bits.length; i++) {
+            long palavra = bits[i];
+            while (palavra != 0) {
+                lista.add(colunas.midia((i << 6) + Long.numberOfTrailingZeros(palavra)));
+                palavra &= palavra - 1;
+            }
+        }
+        return lista;
+    }
+
+    private void indexarPendentes() {
+        EventosJfr.Indexacao evento = new EventosJfr.Indexacao();
+        evento.begin();
+        int antes = indexadosAte;
+        for (; indexadosAte < colunas.tamanho(); indexadosAte++) {
+            if (!colunas.removida(indexadosAte)) indexar(colunas.midia(indexadosAte), indexadosAte);
+        }
+        if (evento.shouldCommit()) {
+            evento.midias = indexadosAte - antes;
+            evento.chavesTitulos = idsPorTitulo.size();
+            evento.chavesArtistas = idsPorArtista.size();
+            evento.commit();
+        }
+    }
+
+    private void indexar(Midia m, int ordinal) {
+        idsPorTitulo.computeIfAbsent(m.getTituloNormalizado(), k -> new ListaOrdinais()).adicionar(ordinal);
+        idsPorArtista.computeIfAbsent(m.getArtistaNormalizado(), k -> new ListaOrdinais()).adicionar(ordinal);
+        bitsPorGenero.marcar(m.getGenero(), ordinal);
+        sugestoes.adicionar(m.getTituloNormalizado(), m.getTitulo());
+        sugestoes.adicionar(m.getArtistaNormalizado(), m.getArtistaOuAutor());
+    }
+
+    private void desindexar(Midia m, int ordinal) {
+        removerDe(idsPorTitulo, m.getTituloNormalizado(), ordinal);
+        removerDe(idsPorArtista, m.getArtistaNormalizado(), ordinal);
+        bitsPorGenero.desmarcar(m.getGenero(), ordinal);
+        sugestoes.remover(m.getTituloNormalizado());
+        sugestoes.remover(m.getArtistaNormalizado());
+    }
+
+    private static void removerDe(Map<String, ListaOrdinais> indice, String chave, int ordinal) {
+        ListaOrdinais ordinais = indice.get(chave);
+        if (ordinais != null && ordinais.remover(ordinal) && ordinais.tamanho() == 0) indice.remove(chave);
+    }
+}
+
+/**********************************
+ * ÁRVORE ORDENADA IMUTÁVEL       *
+ **********************************/
+// Treap com nós imutáveis e o tamanho de cada subárvore: busca, inclusão e remoção
+// por chave, k-ésimo item e posição de uma chave custam O(log n) esperado. Cada
+// alteração devolve outra árvore, copiando só o caminho até o nó mexido; o resto é
+// compartilhado. A prioridade de cada nó vem do hash da chave, então o formato da
+// árvore depende só das chaves presentes.
+final class ArvoreOrdenada<K extends Comparable<? super K>, V> implements Iterable<ArvoreOrdenada.No<K, V>> {
+    static final class No<K, V> {
+        final K chave;
+        final V valor;
+        private final No<K, V> esquerda, direita;
+        private final int tamanho, prioridade;
+
+        private No(K chave, V valor, int prioridade, No<K, V> esquerda, No<K, V> direita) {
+            this.chave = chave;
+            this.valor = valor;
+            this.prioridade = prioridade;
+            this.esquerda = esquerda;
+            this.direita = direita;
+            this.tamanho = 1 + tamanho(esquerda) + tamanho(direita);
+        }
+
+        private No<K, V> com(No<K, V> esquerda, No<K, V> direita) {
+            return new No<>(chave, valor, prioridade, esquerda, direita);
+        }
+    }
+
+    private static final ArvoreOrdenada<?, ?> VAZIA = new ArvoreOrdenada<>(null);
+
+    private final No<K, V> raiz;
+
+    private ArvoreOrdenada(No<K, V> raiz) { this.raiz = raiz; }
+
+    @SuppressWarnings("unchecked")
+    static <K extends Comparable<? super K>, V> ArvoreOrdenada<K, V> vazia() {
+        return (ArvoreOrdenada<K, V>) VAZIA;
+    }
+
+    int tamanho() { return tamanho(raiz); }
+    boolean estaVazia() { return raiz == null; }
+
+    V obter(K chave) {
+        No<K, V> t = raiz;
+        while (t != null) {
+            int c = chave.compareTo(t.chave);
+            if (c == 0) return t.valor;
+            t = c < 0 ? t.esquerda : t.direita;
+        }
+        return null;
+    }
+
+    // Inclui ou troca o valor da chave.
+    ArvoreOrdenada<K, V> com(K chave, V valor) {
+        No<K, V> r = obter(chave) != null ? trocar(raiz, chave, valor)
+                : inserir(raiz, new No<>(chave, valor, prioridade(chave), null, null));
+        return new ArvoreOrdenada<>(r);
+    }
+
+    ArvoreOrdenada<K, V> sem(K chave) {
+        return obter(chave) == null ? this : new ArvoreOrdenada<>(remover(raiz, chave));
+    }
+
+    // Nó na posição "i" (0 = menor chave).
+    No<K, V> naPosicao(int i) {
+        Objects.checkIndex(i, tamanho());
+        No<K, V> t = raiz;
+        while (true) {
+            int e = tamanho(t.esquerda);
+            if (i == e) return t;
+            if (i < e) t = t.esquerda;
+            else { i -= e + 1; t = t.direita; }
+        }
+    }
+
+    // Quantidade de chaves menores que "chave" (a posição dela, se estiver presente).
+    int posicaoDe(K chave) {
+        int p = 0;
+        No<K, V> t = raiz;
+        while (t != null) {
+            int c = chave.compareTo(t.chave);
+            if (c <= 0) {
+                if (c == 0) return p + tamanho(t.esquerda);
+                t = t.esquerda;
+            } else {
+                p += tamanho(t.esquerda) + 1;
+                t = t.direita;
+            }
+        }
+        return p;
+    }
+
+    No<K, V> ultimo() {
+        No<K, V> t = raiz;
+        while (t != null && t.direita != null) t = t.direita;
+        return t;
+    }
+
+    // Em ordem crescente de chave, sobre esta versão da árvore.
+    @Override
+    public Iterator<No<K, V>> iterator() {
+        return new Iterator<>() {
+            private final Deque<No<K, V>> pilha = new ArrayDeque<>();
+            { descer(raiz); }
+
+            private void descer(No<K, V> t) {
+                for (; t != null; t = t.esquerda) pilha.push(t);
+            }
+
+            @Override public boolean hasNext() { return !pilha.isEmpty(); }
+
+            @Override
+            public No<K, V> next() {
+                if (pilha.isEmpty()) throw new NoSuchElementException();
+                No<K, V> t = pilha.pop();
+                descer(t.direita);
+                return t;
+            }
+        };
+    }
+
+    private static int tamanho(No<?, ?> t) { return t == null ? 0 : t.tamanho; }
+
+    private static <K extends Comparable<? super K>, V> No<K, V> inserir(No<K, V> t, No<K, V> novo) {
+        if (t == null) return novo;
+        if (novo.prioridade > t.prioridade) {
+            No<K, V>[] partes = dividir(t, novo.chave);
+            return novo.com(partes[0], partes[1]);
+        }
+        return novo.chave.compareTo(t.chave) < 0
+                ? t.com(inserir(t.esquerda, novo), t.direita)
+                : t.com(t.esquerda, inserir(t.direita, novo));
+    }
+
+    private static <K extends Comparable<? super K>, V> No<K, V> trocar(No<K, V> t, K chave, V valor) {
+        int c = chave.compareTo(t.chave);
+        if (c == 0) return new No<>(chave, valor, t.prioridade, t.esquerda, t.direita);
+        return c < 0 ? t.com(trocar(t.esquerda, chave, valor), t.direita)
+                     : t.com(t.esquerda, trocar(t.direita, chave, valor));
+    }
+
+    private static <K extends Comparable<? super K>, V> No<K, V> remover(No<K, V> t, K chave) {
+        int c = chave.compareTo(t.chave);
+        if (c == 0) return unir(t.esquerda, t.direita);
+        return c < 0 ? t.com(remover(t.esquerda, chave), t.direita)
+                     : t.com(t.esquerda, remover(t.direita, chave));
+    }
+
+    // [chaves < chave, chaves > chave] (a chave em si não está na árvore).
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static <K extends Comparable<? super K>, V> No<K, V>[] dividir(No<K, V> t, K chave) {
+        if (t == null) return (No<K, V>[]) new No[2];
+        if (t.chave.compareTo(chave) < 0) {
+            No<K, V>[] p = dividir(t.direita, chave);
+            p[0] = t.com(t.esquerda, p[0]);
+            return p;
+        }
+        No<K, V>[] p = dividir(t.esquerda, chave);
+        p[1] = t.com(p[1], t.direita);
+        return p;
+    }
+
+    // Todas as chaves de "a" são menores que as de "b".
+    private static <K extends Comparable<? super K>, V> No<K, V> unir(No<K, V> a, No<K, V> b) {
+        if (a == null) return b;
+        if (b == null) return a;
+        if (a.prioridade >= b.prioridade) return a.com(a.esquerda, unir(a.direita, b));
+        return b.com(unir(a, b.esquerda), b.direita);
+    }
+
+    // fmix64 do MurmurHash3: chaves vizinhas (ex.: 0, 2^20, 2^21...) viram prioridades espalhadas.
+    private static int prioridade(Object chave) {
+        long h = chave instanceof Long ? (Long) chave : chave.hashCode();
+        h = (h ^ (h >>> 33)) * 0xff51afd7ed558ccdL;
+        h = (h ^ (h >>> 33)) * 0xc4ceb34f0e5a4dbbL;
+        return (int) (h ^ (h >>> 33));
+    }
+}
+
+/**********************************
+ * MAPA PERSISTENTE (HASH TRIE)   *
+ **********************************/
+// Mapa imutável em árvore de 32 ramos indexada pelo hash da chave (HAMT): cada nível
+// usa 5 bits do hash e um bitmap diz quais ramos existem, então um nó só guarda os
+// filhos presentes. Busca e alteração descem no máximo 7 níveis (na prática ~4 com
+// 100 mil chaves); cada alteração copia só esse caminho e compartilha o resto.
+final class MapaPersistente<K, V> {
+    // Chave e valor; chaves diferentes com o mesmo hash ficam encadeadas em "proxima".
+    private static final class Folha<K, V> {
+        final int hash;
+        final K chave;
+        final V valor;
+        final Folha<K, V> proxima;
+
+        Folha(int hash, K chave, V valor, Folha<K, V> proxima) {
+            this.hash = hash;
+            this.chave = chave;
+            this.valor = valor;
+            this.proxima = proxima;
+        }
+    }
+
+    // "filhos" guarda, na ordem dos bits ligados em "mapa", folhas ou nós do nível seguinte.
+    private static final class No {
+        final int mapa;
+        final Object[] filhos;
+
+        No(int mapa, Object[] filhos) {
+            this.mapa = mapa;
+            this.filhos = filhos;
+        }
+    }
+
+    private static final MapaPersistente<?, ?> VAZIO = new MapaPersistente<>(new No(0, new Object[0]), 0);
+
+    private final No raiz;
+    private final int tamanho;
+
+    private MapaPersistente(No raiz, int tamanho) {
+        this.raiz = raiz;
+        this.tamanho = tamanho;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <K, V> MapaPersistente<K, V> vazio() { return (MapaPersistente<K, V>) VAZIO; }
+
+    int tamanho() { return tamanho; }
+
+    boolean contem(K chave) { return obter(chave) != null; }
+
+    @SuppressWarnings("unchecked")
+    V obter(K chave) {
+        int hash = espalhar(chave.hashCode());
+        No no = raiz;
+        for (int deslocamento = 0; ; deslocamento += 5) {
+            int bit = 1 << ((hash >>> deslocamento) & 31);
+            if ((no.mapa & bit) == 0) return null;
+            Object filho = no.filhos[Integer.bitCount(no.mapa & (bit - 1))];
+            if (filho instanceof No) {
+                no = (No) filho;
+                continue;
+            }
+            for (Folha<K, V> f = (Folha<K, V>) filho; f != null; f = f.proxima) {
+                if (f.hash == hash && f.chave.equals(chave)) return f.valor;
+            }
+            return null;
+        }
+    }
+
+    // Inclui ou troca o valor da chave (valores nulos não são aceitos).
+    MapaPersistente<K, V> com(K chave, V valor) {
+        Objects.requireNonNull(valor);
+        boolean nova = !contem(chave);
+        return new MapaPersistente<>(com(raiz, 0, new Folha<>(espalhar(chave.hashCode()), chave, valor, null)),
+                nova ? tamanho + 1 : tamanho);
+    }
+
+    MapaPersistente<K, V> sem(K chave) {
+        if (!contem(chave)) return this;
+        No r = sem(raiz, 0, espalhar(chave.hashCode()), chave);
+        return new MapaPersistente<>(r == null ? new No(0, new Object[0]) : r, tamanho - 1);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <K, V> No com(No no, int deslocamento, Folha<K, V> nova) {
+        int bit = 1 << ((nova.hash >>> deslocamento) & 31);
+        int i = Integer.bitCount(no.mapa & (bit - 1));
+        if ((no.mapa & bit) == 0) {
+            Object[] filhos = new Object[no.filhos.length + 1];
+            System.arraycopy(no.filhos, 0, filhos, 0, i);
+            filhos[i] = nova;
+            System.arraycopy(no.filhos, i, filhos, i + 1, no.filhos.length - i);
+            return new No(no.mapa | bit, filhos);
+        }
+        Object filho = no.filhos[i];
+        Object novoFilho;
+        if (filho instanceof No) {
+            novoFilho = com((No) filho, deslocamento + 5, nova);
+        } else {
+            Folha<K, V> f = (Folha<K, V>) filho;
+            if (f.hash == nova.hash) {
+                novoFilho = new Folha<>(nova.hash, nova.chave, nova.valor, semNaCadeia(f, nova.chave));
+            } else {
+                // Hashes diferentes no mesmo ramo: desce um nível com as duas folhas
+                No abaixo = com(new No(0, new Object[0]), deslocamento + 5, f);
+                novoFilho = com(abaixo, deslocamento + 5, nova);
+            }
+        }
+        Object[] filhos = no.filhos.clone();
+        filhos[i] = novoFilho;
+        return new No(no.mapa, filhos);
+    }
+
+    // Devolve null quando o nó fica vazio.
+    @SuppressWarnings("unchecked")
+    private static <K> No sem(No no, int deslocamento, int hash, K chave) {
+        int bit = 1 << ((hash >>> deslocamento) & 31);
+        int i = Integer.bitCount(no.mapa & (bit - 1));
+        Object filho = no.filhos[i];
+        Object novoFilho = filho instanceof No
+                ? sem((No) filho, deslocamento + 5, hash, chave)
+                : semNaCadeia((Folha<K, ?>) filho, chave);
+        // Um nó que sobrou com uma folha só volta a ser essa folha no nível de cima
+        if (novoFilho instanceof No && ((No) novoFilho).filhos.length == 1 && !(((No) novoFilho).filhos[0] instanceof No)) {
+            novoFilho = ((No) novoFilho).filhos[0];
+        }
+        if (novoFilho != null) {
+            Object[] filhos = no.filhos.clone();
+            filhos[i] = novoFilho;
+            return new No(no.mapa, filhos);
+        }
+        if (no.filhos.length == 1) return null;
+        Object[] filhos = new Object[no.filhos.length - 1];
+        System.arraycopy(no.filhos, 0, filhos, 0, i);
+        System.arraycopy(no.filhos, i + 1, filhos, i, filhos.length - i);
+        return new No(no.mapa & ~bit, filhos);
+    }
+
+    private static <K, V> Folha<K, V> semNaCadeia(Folha<K, V> f, K chave) {
+        if (f == null) return null;
+        if (f.chave.equals(chave)) return f.proxima;
+        Folha<K, V> resto = semNaCadeia(f.proxima, chave);
+        return resto == f.proxima ? f : new Folha<>(f.hash, f.chave, f.valor, resto);
+    }
+
+    // Mistura os bits do hashCode para os 5 bits de cada nível saírem bem distribuídos.
+    private static int espalhar(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        return h;
+    }
+}
+
+/****************
+ * PLAYLIST     *
+ ****************/
+class Playlist {
+    private static final String[] TIPOS = {"Música", "Podcast", "Audiobook"};
+    // Distância entre as chaves de ordem de itens vizinhos: mover um item para entre
+    // dois outros usa a chave do meio, e só redistribui chaves quando o intervalo acaba.
+    private static final long PASSO = 1L << 20;
+    // Menor intervalo aceito ao redistribuir as chaves de uma janela (ver abrirEspaco).
+    private static final long INTERVALO_MINIMO = 1L << 10;
+    // Quantas edições podem ser desfeitas; as mais antigas são esquecidas.
+    static final int LIMITE_HISTORICO = 100;
+
+    private final String nome;
+    // Itens por chave de ordem; a posição de um item é o número de chaves menores.
+    // A árvore é imutável: cópias, instantâneos e o histórico compartilham os nós.
+    private ArvoreOrdenada<Long, Midia> ordem = ArvoreOrdenada.vazia();
+    // id -> chaves de ordem das ocorrências, crescentes (a primeira é a primeira ocorrência).
+    private MapaPersistente<String, long[]> ocorrencias = MapaPersistente.vazio();
+    // Agregados atualizados em O(1) a cada inclusão/remoção: o resumo não percorre os itens.
+    // Duração e gênero são campos final de Midia: o valor somado na inclusão é o mesmo
+    // subtraído na remoção.
+    private long duracaoTotal;
+    private final int[] porTipo = new int[TIPOS.length];
+    private final int[] porGenero = new int[Genero.values().length];
+    // Estado de antes de cada edição, da mais recente para a mais antiga.
+    private final Deque<Edicao> historico = new ArrayDeque<>();
+
+    // Versão de antes de uma edição: só as duas raízes, que continuam válidas porque
+    // nenhuma das estruturas é alterada no lugar. "sinal" desfaz os agregados.
+    private record Edicao(ArvoreOrdenada<Long, Midia> ordem, MapaPersistente<String, long[]> ocorrencias,
+                          Midia midia, int sinal) {}
+
+    // Itens de uma versão da árvore: não muda depois de criado, mesmo que a playlist mude.
+    private static final class Itens extends AbstractList<Midia> {
+        private final ArvoreOrdenada<Long, Midia> ordem;
+
+        Itens(ArvoreOrdenada<Long, Midia> ordem) { this.ordem = ordem; }
+
+        @Override public Midia get(int i) { return ordem.naPosicao(i).valor; }
+        @Override public int size() { return ordem.tamanho(); }
+
+        @Override
+        public Iterator<Midia> iterator() {
+            Iterator<ArvoreOrdenada.No<Long, Midia>> nos = ordem.iterator();
+            return new Iterator<>() {
+                @Override public boolean hasNext() { return nos.hasNext(); }
+                @Override public Midia next() { return nos.next().valor; }
+            };
+        }
+    }
+
+    public Playlist(String nome) {
+        if (nome == null || nome.isBlank()) throw new IllegalArgumentException("Nome da playlist é obrigatório");
+        this.nome = nome.trim();
+    }
+
+    public String getNome() { return nome; }
+    public int tamanho() { return ordem.tamanho(); }
+
+    // Instantâneo dos itens em O(1): get(i) em O(log n), iteração em O(n), e alterações
+    // posteriores da playlist não aparecem nele (pode ser lido sem a trava do usuário).
+    public List<Midia> getItens() { return new Itens(ordem); }
+
+    // Cópia em O(1): as duas compartilham a árvore e o índice de ids, e cada edição
+    // posterior copia só o caminho que altera. O histórico não vai junto.
+    public Playlist copiar(String nome) {
+        Playlist copia = new Playlist(nome);
+        copia.ordem = ordem;
+        copia.ocorrencias = ocorrencias;
+        copia.duracaoTotal = duracaoTotal;
+        System.arraycopy(porTipo, 0, copia.porTipo, 0, porTipo.length);
+        System.arraycopy(porGenero, 0, copia.porGenero, 0, porGenero.length);
+        return copia;
+    }
+
+    public void adicionar(Midia m) {
+        Objects.requireNonNull(m, "Midia não pode ser nula");
+        anotar(m, 1);
+        incluir(ordem.estaVazia() ? 0 : ordem.ultimo().chave + PASSO, m);
+    }
+
+    public boolean contem(String id) { return ocorrencias.contem(id); }
+
+    // Posição da primeira ocorrência da mídia, ou -1.
+    public int posicaoDe(String id) {
+        long[] chaves = ocorrencias.obter(id);
+        return chaves == null ? -1 : ordem.posicaoDe(chaves[0]);
+    }
+
+    public boolean removerPrimeiraOcorrenciaPorId(String id) {
+        long[] chaves = ocorrencias.obter(id);
+        if (chaves == null) return false;
+        anotar(ordem.obter(chaves[0]), -1);
+        excluir(chaves[0]);
+        return true;
+    }
+
+    public Midia removerNaPosicao(int posicao) {
+        ArvoreOrdenada.No<Long, Midia> no = ordem.naPosicao(posicao);
+        anotar(no.valor, -1);
+        return excluir(no.chave);
+    }
+
+    // Tira todas as ocorrências de uma mídia excluída do catálogo, sem entrar no histórico.
+    // Se a playlist ou alguma versão guardada a contém, o histórico é esquecido: desfazer
+    // traria a mídia de volta (e os agregados guardados contam com ela).
+    public int purgar(String id) {
+        long[] chaves = ocorrencias.obter(id);
+        boolean noHistorico = chaves != null;
+        for (Iterator<Edicao> it = historico.iterator(); !noHistorico && it.hasNext(); ) noHistorico = it.next().ocorrencias().contem(id);
+        if (noHistorico) historico.clear();
+        if (chaves == null) return 0;
+        for (long chave : chaves) excluir(chave);
+        return chaves.length;
+    }
+
+    // Leva o item da posição "de" para a posição "para" (ambas 0..tamanho-1), em O(log n).
+    public void mover(int de, int para) {
+        Objects.checkIndex(para, ordem.tamanho());
+        ArvoreOrdenada.No<Long, Midia> no = ordem.naPosicao(de);
+        anotar(no.valor, 0);
+        excluir(no.chave);
+        Long chave = chaveEntre(para);
+        if (chave == null) {
+            abrirEspaco(para);
+            chave = chaveEntre(para);
+        }
+        incluir(chave, no.valor);
+    }
+
+    // Desfaz as "n" últimas edições (a mais recente primeiro), O(1) cada: volta às
+    // raízes guardadas. Devolve quantas foram desfeitas.
+    public int desfazer(int n) {
+        int desfeitas = 0;
+        for (; desfeitas < n && !historico.isEmpty(); desfeitas++) {
+            Edicao e = historico.pop();
+            ordem = e.ordem();
+            ocorrencias = e.ocorrencias();
+            if (e.sinal() != 0) contabilizar(e.midia(), -e.sinal());
+        }
+        return desfeitas;
+    }
+
+    public int edicoesDesfaziveis() { return historico.size(); }
+
+    // Usado no checkpoint e na carga: o diário recomeça ali, então desfazer não pode
+    // voltar a uma edição de antes dele (a reexecução do diário não a conheceria).
+    public void descartarHistorico() { historico.clear(); }
+
+    private void anotar(Midia m, int sinal) {
+        if (historico.size() == LIMITE_HISTORICO) historico.removeLast();
+        historico.push(new Edicao(ordem, ocorrencias, m, sinal));
+    }
+
+    // Chave livre para um item entrar na posição "posicao", ou null se não há intervalo.
+    private Long chaveEntre(int posicao) {
+        int n = ordem.tamanho();
+        if (n == 0) return 0L;
+        if (posicao == 0) return ordem.naPosicao(0).chave - PASSO;
+        long anterior = ordem.naPosicao(posicao - 1).chave;
+        if (posicao == n) return anterior + PASSO;
+        long seguinte = ordem.naPosicao(posicao).chave;
+        return seguinte - anterior < 2 ? null : anterior + (seguinte - anterior) / 2;
+    }
+
+    // Redistribui por igual as chaves de uma janela ao redor de "posicao", dobrando a
+    // janela até ela ter espaço de sobra (INTERVALO_MINIMO entre vizinhos). Só mexe nos
+    // itens próximos, e a janela cresce com a densidade: custo amortizado O(log² n).
+    private void abrirEspaco(int posicao) {
+        int n = ordem.tamanho();
+        for (int raio = 8; ; raio *= 2) {
+            int inicio = Math.max(0, posicao - raio), fim = Math.min(n, posicao + raio);
+            int quantidade = fim - inicio;
+            // Nas pontas da lista as chaves podem avançar livremente (inclusive negativas)
+            long limiteInferior = inicio == 0 ? ordem.naPosicao(0).chave - PASSO * (quantidade + 1)
+                                              : ordem.naPosicao(inicio - 1).chave;
+            long limiteSuperior = fim == n ? ordem.naPosicao(n - 1).chave + PASSO * (quantidade + 1)
+                                           : ordem.naPosicao(fim).chave;
+            long intervalo = (limiteSuperior - limiteInferior) / (quantidade + 1);
+            if (intervalo < INTERVALO_MINIMO && (inicio > 0 || fim < n)) continue;
+            List<ArvoreOrdenada.No<Long, Midia>> janela = new ArrayList<>(quantidade);
+            for (int i = inicio; i < fim; i++) janela.add(ordem.naPosicao(i));
+            for (ArvoreOrdenada.No<Long, Midia> no : janela) {
+                ordem = ordem.sem(no.chave);
+                String id = no.valor.getId();
+                long[] restantes = semChave(ocorrencias.obter(id), no.chave);
+                ocorrencias = restantes == null ? ocorrencias.sem(id) : ocorrencias.com(id, restantes);
+            }
+            long chave = limiteInferior;
+            for (ArvoreOrdenada.No<Long, Midia> no : janela) {
+                chave += intervalo;
+                ordem = ordem.com(chave, no.valor);
+                String id = no.valor.getId();
+                ocorrencias = ocorrencias.com(id, comChave(ocorrencias.obter(id), chave));
+            }
+            return;
+        }
+    }
+
+    private void incluir(long chave, Midia m) {
+        ordem = ordem.com(chave, m);
+        ocorrencias = ocorrencias.com(m.getId(), comChave(ocorrencias.obter(m.getId()), chave));
+        contabilizar(m, 1);
+    }
+
+    private Midia excluir(long chave) {
+        Midia m = ordem.obter(chave);
+        ordem = ordem.sem(chave);
+        long[] restantes = semChave(ocorrencias.obter(m.getId()), chave);
+        ocorrencias = restantes == null ? ocorrencias.sem(m.getId()) : ocorrencias.com(m.getId(), restantes);
+        contabilizar(m, -1);
+        return m;
+    }
+
+    // Os vetores de chaves são trocados, nunca alterados: cópias e versões do
+    // histórico continuam apontando para eles.
+    private static long[] comChave(long[] chaves, long chave) {
+        if (chaves == null) return new long[] { chave };
+        int p = -Arrays.binarySearch(chaves, chave) - 1;
+        long[] r = new long[chaves.length + 1];
+        System.arraycopy(chaves, 0, r, 0, p);
+        r[p] = chave;
+        System.arraycopy(chaves, p, r, p + 1, chaves.length - p);
+        return r;
+    }
+
+    private static long[] semChave(long[] chaves, long chave) {
+        if (chaves.length == 1) return null;
+        int p = Arrays.binarySearch(chaves, chave);
+        long[] r = new long[chaves.length - 1];
+        System.arraycopy(chaves, 0, r, 0, p);
+        System.arraycopy(chaves, p + 1, r, p, r.length - p);
+        return r;
+    }
+
+    private void contabilizar(Midia m, int sinal) {
+        duracaoTotal += sinal * (long) m.getDuracaoSegundos();
+        porTipo[indiceTipo(m)] += sinal;
+        porGenero[m.getGenero().ordinal()] += sinal;
+    }
+
+    private static int indiceTipo(Midia m) {
+        return m instanceof Podcast ? 1 : m instanceof Audiobook ? 2 : 0;
+    }
+
+    public int duracaoTotalSegundos() { return (int) Math.min(Integer.MAX_VALUE, duracaoTotal); }
+
+    // Quantidade de itens por tipo ("Música", "Podcast", "Audiobook"), só os presentes.
+    public Map<String, Integer> quantidadePorTipo() {
+        Map<String, Integer> r = new LinkedHashMap<>();
+        for (int t = 0; t < TIPOS.length; t++) if (porTipo[t] > 0) r.put(TIPOS[t], porTipo[t]);
+        return r;
+    }
+
+    // Histograma de gêneros da playlist, só os presentes.
+    public Map<Genero, Integer> quantidadePorGenero() {
+        Map<Genero, Integer> r = new EnumMap<>(Genero.class);
+        for (Genero g : Genero.values()) if (porGenero[g.ordinal()] > 0) r.put(g, porGenero[g.ordinal()]);
+        return r;
+    }
+
+    public String resumo() {
+        return resumo(new StringBuilder(64 + 96 * tamanho())).toString();
+    }
+
+    // Cabeçalho e itens numerados ("01. ...") escritos direto em "sb".
+    public StringBuilder resumo(StringBuilder sb) {
+        sb.append("Playlist: ").append(nome)
+          .append(" | Itens: ").append(tamanho())
+          .append(" | Duração: ");
+        Midia.formatarDuracao(sb, duracaoTotalSegundos()).append('\n');
+        if (!ordem.estaVazia()) composicao(sb.append("    ")).append('\n');
+        int n = 0;
+        for (ArvoreOrdenada.No<Long, Midia> no : ordem) {
+            n++;
+            if (n < 100) Midia.doisDigitos(sb, n);
+            else sb.append(n);
+            no.valor.acrescentar(sb.append(". ")).append('\n');
+        }
+        return sb;
+    }
+
+    // "Música 3, Podcast 1 | ROCK 2, JAZZ 1, PODCAST 1", direto dos agregados.
+    public StringBuilder composicao(StringBuilder sb) {
+        String separador = "";
+        for (int t = 0; t < TIPOS.length; t++) {
+            if (porTipo[t] == 0) continue;
+            sb.append(separador).append(TIPOS[t]).append(' ').append(porTipo[t]);
+            separador = ", ";
+        }
+        separador = " | ";
+        for (Genero g : Genero.values()) {
+            if (porGenero[g.ordinal()] == 0) continue;
+            sb.append(separador).append(g.name()).append(' ').append(porGenero[g.ordinal()]);
+            separador = ", ";
+        }
+        return sb;
+    }
+}
+
+/************
+ * USUÁRIO  *
+ ************/
+class Usuario {
+    private final String nome;
+    private final String email;
+    // Criado só na primeira playlist: num registro grande a maioria dos usuários não tem nenhuma
+    private Map<String, Playlist> playlists = null; // preserva ordem de inserção
+    // Protege as playlists deste usuário; sessões de usuários diferentes não se bloqueiam
+    private final ReentrantLock trava = new ReentrantLock();
+
+    public Usuario(String nome, String email) {
+        if (nome == null || nome.isBlank()) throw new IllegalArgumentException("Nome é obrigatório");
+        if (email == null || email.isBlank() || !email.contains("@")) throw new IllegalArgumentException("E-mail inválido");
+        this.nome = nome.trim();
+        this.email = email.trim();
+    }
+
+    public String getNome() { return nome; }
+    public String getEmail() { return email; }
+
+    public void criarPlaylist(String nome) {
+        String key = nome.trim().toLowerCase();
+        if (playlists == null) playlists = new LinkedHashMap<>(4);
+        if (playlists.containsKey(key)) throw new DomainException("Já existe uma playlist com esse nome");
+        playlists.put(key, new Playlist(nome));
+    }
+
+    public Playlist obterPlaylist(String nome) {
+        Playlist p = playlists == null ? null : playlists.get(nome.trim().toLowerCase());
+        if (p == null) throw new PlaylistNotFoundException("Playlist não encontrada: " + nome);
+        return p;
+    }
+
+    // Nova playlist com os itens de "origem", sem copiá-los (ver Playlist#copiar).
+    public Playlist copiarPlaylist(String origem, String destino) {
+        Playlist copia = obterPlaylist(origem).copiar(destino);
+        String key = copia.getNome().toLowerCase();
+        if (playlists.containsKey(key)) throw new DomainException("Já existe uma playlist com esse nome");
+        playlists.put(key, copia);
+        return copia;
+    }
+
+    public void removerPlaylist(String nome) {
+        if (playlists == null || playlists.remove(nome.trim().toLowerCase()) == null) throw new PlaylistNotFoundException("Playlist não encontrada");
+    }
+
+    public Collection<Playlist> listarPlaylists() {
+        return playlists == null ? Collections.emptyList() : Collections.unmodifiableCollection(playlists.values());
+    }
+
+    // Executa "acao" com a trava deste usuário (leituras e alterações das playlists).
+    <T> T comTrava(Supplier<T> acao) {
+        trava.lock();
+        try {
+            return acao.get();
+        } finally {
+            trava.unlock();
+        }
+    }
+}
+
+/*****************************
+ * REGISTRO DE USUÁRIOS      *
+ *****************************/
+// Todos os usuários, indexados pelo e-mail sem diferenciar maiúsculas/minúsculas.
+// O mapa é concorrente e cada usuário tem a própria trava, então sessões de
+// usuários diferentes nunca disputam a mesma trava.
+final class RegistroUsuarios {
+    private final ConcurrentHashMap<String, Usuario> porEmail = new ConcurrentHashMap<>();
+
+    // Cadastra e chama "aoCadastrar" (ex.: gravar no diário) antes de qualquer outra
+    // sessão conseguir alterar o novo usuário.
+    Usuario cadastrar(String nome, String email, Consumer<Usuario> aoCadastrar) {
+        Usuario novo = new Usuario(nome, email);
+        return novo.comTrava(() -> {
+            adicionar(novo);
+            aoCadastrar.accept(novo);
+            return novo;
+        });
+    }
+
+    // Inclui um usuário já montado (ex.: lido do snapshot).
+    void adicionar(Usuario usuario) {
+        if (porEmail.putIfAbsent(chave(usuario.getEmail()), usuario) != null) {
+            throw new DomainException("Já existe um usuário com o e-mail " + usuario.getEmail());
+        }
+    }
+
+    Usuario obter(String email) {
+        Usuario u = email == null ? null : porEmail.get(chave(email));
+        if (u == null) throw new UserNotFoundException("Usuário não encontrado: " + email);
+        return u;
+    }
+
+    int tamanho() { return porEmail.size(); }
+
+    Collection<Usuario> listar() { return Collections.unmodifiableCollection(porEmail.values()); }
+
+    private static String chave(String email) {
+        return email.trim().toLowerCase(Locale.ROOT);
+    }
+}
+
+/****************************
+ * SNAPSHOT EM ARQUIVO      *
+ ****************************/
+// Formato binário compacto do catálogo, usuários e playlists:
+//   MAGIC, VERSAO, geração(long), nLinhas, linhas..., nLivres, livres(int)..., nUsuarios, usuários...
+//   linha    = ocupada(byte) [mídia], na ordem dos ordinais, com as linhas livres no meio
+//   mídia    = tipo(byte) título artista duração(int) gênero(byte) [episódios(int) | narrador]
+//   usuário  = nome email nPlaylists, playlist = nome nItens ordinais(int)...
+//   texto    = tamanho(int) + bytes UTF-8
+// O catálogo volta com os mesmos ordinais e a mesma pilha de livres, porque o diário
+// da geração seguinte referencia as mídias pelo ordinal; os ids (UUID) valem só
+// durante uma execução. As versões 1 (sem geração, lida como 0) e 2 gravavam só as
+// mídias, sem linhas livres: a posição no arquivo é o ordinal. A leitura é feita sobre o arquivo mapeado em
+// memória, e o catálogo só monta os índices na primeira busca.
+// A geração amarra o snapshot ao diário de mutações escrito depois dele.
+final class Snapshot {
+    private static final int MAGIC = 0x4D535346; // "MSSF"
+    private static final int VERSAO = 3;
+    private static final byte MUSICA = 0, PODCAST = 1, AUDIOBOOK = 2;
+
+    record Conteudo(long geracao, List<Usuario> usuarios) {}
+
+    private Snapshot() {}
+
+    static void salvar(Path arquivo, long geracao, Catalogo catalogo, Collection<Usuario> usuarios) throws IOException {
+        EventosJfr.GravacaoSnapshot evento = new EventosJfr.GravacaoSnapshot();
+        evento.begin();
+        Catalogo.Linhas linhas = catalogo.linhas();
+        List<Usuario> lista = new ArrayList<>(usuarios); // o registro pode crescer durante a gravação
+        Map<String, Integer> posicaoPorId = new HashMap<>();
+        Path temporario = arquivo.resolveSibling(arquivo.getFileName() + ".tmp");
+        try (FileChannel canal = FileChannel.open(temporario, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(canal), 1 << 16));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSAO);
+            out.writeLong(geracao);
+            out.writeInt(linhas.midias().size());
+            for (int o = 0; o < linhas.midias().size(); o++) {
+                Midia m = linhas.midias().get(o);
+                out.writeByte(m == null ? 0 : 1);
+                if (m == null) continue;
+                posicaoPorId.put(m.getId(), o);
+                escreverMidia(out, m);
+            }
+            out.writeInt(linhas.livres().length);
+            for (int livre : linhas.livres()) out.writeInt(livre);
+            out.writeInt(lista.size());
+            for (Usuario u : lista) {
+                // Cada usuário é gravado sob a própria trava: as playlists dele saem consistentes
+                try {
+                    u.comTrava(() -> {
+                        try {
+                            escreverUsuario(out, u, posicaoPorId);
+                            return null;
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    });
+                } catch (UncheckedIOException e) {
+                    throw e.getCause();
+                }
+            }
+            out.flush();
+            // Os dados no disco antes da troca: senão uma queda pode manter a troca e o
+            // diário já apagado, mas não o conteúdo do snapshot
+            canal.force(true);
+        }
+        Files.move(temporario, arquivo, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        sincronizarDiretorio(arquivo);
+        if (evento.shouldCommit()) {
+            evento.arquivo = arquivo.toString();
+            evento.geracao = geracao;
+            evento.midias = posicaoPorId.size();
+            evento.usuarios = lista.size();
+            evento.bytes = Files.size(arquivo);
+            evento.commit();
+        }
+    }
+
+    // fsync do diretório do arquivo, para a criação ou troca do nome sobreviver a uma queda.
+    // No Windows não dá para abrir um diretório assim (e o NTFS já registra a troca no journal).
+    static void sincronizarDiretorio(Path arquivo) throws IOException {
+        if (System.getProperty("os.name", "").startsWith("Windows")) return;
+        try (FileChannel diretorio = FileChannel.open(arquivo.toAbsolutePath().getParent(), StandardOpenOption.READ)) {
+            diretorio.force(true);
+        }
+    }
+
+    private static void escreverUsuario(DataOutputStream out, Usuario u, Map<String, Integer> posicaoPorId) throws IOException {
+        escreverTexto(out, u.getNome());
+        escreverTexto(out, u.getEmail());
+        out.writeInt(u.listarPlaylists().size());
+        for (Playlist p : u.listarPlaylists()) {
+            escreverTexto(out, p.getNome());
+            List<Midia> itens = p.getItens();
+            out.writeInt(itens.size());
+            for (Midia m : itens) {
+                Integer posicao = posicaoPorId.get(m.getId());
+                if (posicao == null) throw new IOException("Playlist '" + p.getNome() + "' contém mídia fora do catálogo");
+                out.writeInt(posicao);
+            }
+            // Ainda sob a trava do usuário: nenhuma edição fica entre o snapshot e o histórico
+            p.descartarHistorico();
+        }
+    }
+
+    // Preenche "catalogo" (que deve estar vazio) e devolve a geração e os usuários do arquivo.
+    static Conteudo carregar(Path arquivo, Catalogo catalogo) throws IOException {
+        ByteBuffer in;
+        try (FileChannel canal = FileChannel.open(arquivo, StandardOpenOption.READ)) {
+            in = canal.map(FileChannel.MapMode.READ_ONLY, 0, canal.size());
+        }
+        try {
+            if (in.getInt() != MAGIC) throw new IOException("Arquivo não é um snapshot do Mini Spotify: " + arquivo);
+            int versao = in.getInt();
+            if (versao < 1 || versao > VERSAO) throw new IOException("Versão de snapshot não suportada: " + versao);
+            long geracao = versao == 1 ? 0 : in.getLong();
+            Midia[] midias = new Midia[in.getInt()];
+            for (int i = 0; i < midias.length; i++) {
+                if (versao < 3 || in.get() != 0) midias[i] = lerMidia(in);
+            }
+            int[] livres = new int[versao < 3 ? 0 : in.getInt()];
+            BitSet vistas = new BitSet();
+            for (int i = 0; i < livres.length; i++) {
+                livres[i] = in.getInt();
+                if (midias[livres[i]] != null || vistas.get(livres[i])) throw new IOException("Linhas livres inconsistentes no snapshot: " + arquivo);
+                vistas.set(livres[i]);
+            }
+            if (livres.length != Arrays.stream(midias).filter(Objects::isNull).count()) {
+                throw new IOException("Linhas livres inconsistentes no snapshot: " + arquivo);
+            }
+            catalogo.restaurar(new Catalogo.Linhas(Arrays.asList(midias), livres));
+            List<Usuario> usuarios = new ArrayList<>();
+            for (int u = in.getInt(); u > 0; u--) {
+                Usuario usuario = new Usuario(lerTexto(in), lerTexto(in));
+                for (int p = in.getInt(); p > 0; p--) {
+                    String nome = lerTexto(in);
+                    usuario.criarPlaylist(nome);
+                    Playlist playlist = usuario.obterPlaylist(nome);
+                    for (int n = in.getInt(); n > 0; n--) {
+                        Midia m = midias[in.getInt()];
+                        if (m == null) throw new IOException("Playlist '" + nome + "' aponta para uma linha livre: " + arquivo);
+                        playlist.adicionar(m);
+                    }
+                    playlist.descartarHistorico();
+                }
+                usuarios.add(usuario);
+            }
+            return new Conteudo(geracao, usuarios);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new IOException("Snapshot truncado ou corrompido: " + arquivo, e);
+        }
+    }
+
+    static void escreverMidia(DataOutputStream out, Midia m) throws IOException {
+        out.writeByte(m instanceof Podcast ? PODCAST : m instanceof Audiobook ? AUDIOBOOK : MUSICA);
+        escreverTexto(out, m.getTitulo());
+        escreverTexto(out, m.getArtistaOuAutor());
+        out.writeInt(m.getDuracaoSegundos());
+        out.writeByte(m.getGenero().ordinal());
+        if (m instanceof Podcast) out.writeInt(((Podcast) m).getEpisodios());
+        if (m instanceof Audiobook) escreverTexto(out, ((Audiobook) m).getNarrador());
+    }
+
+    static Midia lerMidia(ByteBuffer in) {
+        byte tipo = in.get();
+        String titulo = lerTexto(in), artista = lerTexto(in);
+        int duracao = in.getInt();
+        Genero genero = Genero.values()[in.get()];
+        if (tipo == PODCAST) return new Podcast(titulo, artista, duracao, in.getInt());
+        if (tipo == AUDIOBOOK) return new Audiobook(titulo, artista, lerTexto(in), duracao);
+        return new Musica(titulo, artista, duracao, genero);
+    }
+
+    static void escreverTexto(DataOutputStream out, String texto) throws IOException {
+        byte[] bytes = texto.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    static String lerTexto(ByteBuffer in) {
+        byte[] bytes = new byte[in.getInt()];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
+
+/**********************************
+ * DIÁRIO DE MUTAÇÕES (WAL)       *
+ **********************************/
+// Log somente-anexação das mutações feitas depois do último snapshot. Cada
+// registro é [tamanho(int)][crc32(int)][bytes]; na recuperação os registros são
+// reaplicados sobre o snapshot até o primeiro incompleto ou corrompido.
+// Durabilidade:
+//   POR_OPERACAO - cada registro é gravado e sincronizado (fsync) antes de retornar;
+//   EM_LOTE      - quem registra espera o fsync, mas uma thread gravadora junta todos
+//                  os registros que chegaram durante o fsync anterior num só (group commit);
+//   ASSINCRONO   - retorna logo; a gravadora sincroniza em segundo plano (pode perder
+//                  as últimas mutações numa queda).
+final class DiarioMutacoes implements Closeable {
+    enum Durabilidade { POR_OPERACAO, EM_LOTE, ASSINCRONO }
+
+    private static final int MAGIC = 0x4D53574C; // "MSWL"
+    private static final int CABECALHO = 12;     // MAGIC + geração
+
+    private final FileChannel canal;
+    private final Durabilidade durabilidade;
+    private final Object trava = new Object();
+    private final Thread gravador;
+    private ByteBuffer pendente = ByteBuffer.allocate(1 << 16);  // protegido por "trava"
+    private ByteBuffer reserva = ByteBuffer.allocate(1 << 16);   // usado só pela gravadora
+    private long ultimoRegistrado, ultimoDuravel;
+    private boolean fechado;
+    private IOException falha;
+
+    private DiarioMutacoes(FileChannel canal, Durabilidade durabilidade) {
+        this.canal = canal;
+        this.durabilidade = durabilidade;
+        if (durabilidade == Durabilidade.POR_OPERACAO) {
+            gravador = null;
+        } else {
+            gravador = new Thread(this::gravarEmLotes, "diario-gravador");
+            gravador.setDaemon(true);
+            gravador.start();
+        }
+    }
+
+    // Abre para anexar, mantendo os "tamanhoValido" bytes já reaplicados (ou recomeça, se < cabeçalho).
+    static DiarioMutacoes abrir(Path arquivo, long geracao, long tamanhoValido, Durabilidade durabilidade) throws IOException {
+        FileChannel canal = FileChannel.open(arquivo, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (tamanhoValido < CABECALHO) {
+            canal.truncate(0);
+            ByteBuffer cabecalho = ByteBuffer.allocate(CABECALHO).putInt(MAGIC).putLong(geracao);
+            cabecalho.flip();
+            while (cabecalho.hasRemaining()) canal.write(cabecalho, canal.size());
+            canal.force(true);
+            Snapshot.sincronizarDiretorio(arquivo);   // o arquivo pode ter acabado de ser criado
+        } else {
+            canal.truncate(tamanhoValido);   // descarta um registro final pela metade
+        }
+        canal.position(canal.size());
+        return new DiarioMutacoes(canal, durabilidade);
+    }
+
+    // Reaplica os registros válidos do diário da geração informada e devolve quantos
+    // bytes do arquivo são válidos (-1 se não há diário dessa geração).
+    static long reproduzir(Path arquivo, long geracao, Consumer<ByteBuffer> aplicar) throws IOException {
+        if (!Files.exists(arquivo)) return -1;
+        try (FileChannel canal = FileChannel.open(arquivo, StandardOpenOption.READ)) {
+            if (canal.size() < CABECALHO) return -1;
+            ByteBuffer in = canal.map(FileChannel.MapMode.READ_ONLY, 0, canal.size());
+            if (in.getInt() != MAGIC || in.getLong() != geracao) return -1;
+            CRC32 crc = new CRC32();
+            while (in.remaining() >= 8) {
+                int inicio = in.position();
+                int tamanho = in.getInt(), soma = in.getInt();
+                if (tamanho < 0 || tamanho > in.remaining()) { in.position(inicio); break; }
+                ByteBuffer registro = in.slice().limit(tamanho);
+                crc.reset();
+                crc.update(registro.duplicate());
+                if ((int) crc.getValue() != soma) { in.position(inicio); break; }
+                aplicar.accept(registro);
+                in.position(inicio + 8 + tamanho);
+            }
+            return in.position();
+        }
+    }
+
+    void registrar(byte[] dados) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(dados);
+        synchronized (trava) {
+            if (falha != null) throw new IOException("Diário indisponível", falha);
+            if (fechado) throw new IOException("Diário fechado");
+            if (pendente.remaining() < 8 + dados.length) {
+                ByteBuffer maior = ByteBuffer.allocate(Math.max(pendente.capacity() * 2, pendente.position() + 8 + dados.length));
+                pendente.flip();
+                pendente = maior.put(pendente);
+            }
+            pendente.putInt(dados.length).putInt((int) crc.getValue()).put(dados);
+            long seq = ++ultimoRegistrado;
+            if (durabilidade == Durabilidade.POR_OPERACAO) {
+                pendente.flip();
+                while (pendente.hasRemaining()) canal.write(pendente);
+                pendente.clear();
+                canal.force(false);
+                ultimoDuravel = seq;
+                return;
+            }
+            trava.notifyAll();
+            if (durabilidade == Durabilidade.ASSINCRONO) return;
+            while (ultimoDuravel < seq) {
+                if (falha != null) throw new IOException("Falha ao gravar o diário", falha);
+                try {
+                    trava.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrompido esperando o fsync do diário");
+                }
+            }
+        }
+    }
+
+    // Laço da gravadora: troca o buffer cheio pelo vazio, grava e sincroniza fora da trava.
+    private void gravarEmLotes() {
+        while (true) {
+            ByteBuffer lote;
+            long ate;
+            synchronized (trava) {
+                while (pendente.position() == 0 && !fechado) {
+                    try {
+                        trava.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (pendente.position() == 0) return;   // fechado e sem nada pendente
+                lote = pendente;
+                pendente = reserva;
+                ate = ultimoRegistrado;
+            }
+            try {
+                lote.flip();
+                while (lote.hasRemaining()) canal.write(lote);
+                canal.force(false);
+            } catch (IOException e) {
+                synchronized (trava) { falha = e; trava.notifyAll(); }
+                return;
+            }
+            lote.clear();
+            reserva = lote;
+            synchronized (trava) { ultimoDuravel = ate; trava.notifyAll(); }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (trava) { fechado = true; trava.notifyAll(); }
+        try {
+            if (gravador != null) gravador.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            canal.force(false);
+            canal.close();
+        }
+        if (falha != null) throw falha;
+    }
+}
+
+/**********************************
+ * IMPORTAÇÃO EM LOTE (CSV/JSONL) *
+ **********************************/
+// Lê o arquivo em streaming, em blocos de linhas; cada bloco é convertido em
+// mídias numa thread do pool e os blocos prontos entram no catálogo na ordem do
+// arquivo. No máximo 2 blocos por thread ficam em memória ao mesmo tempo.
+// CSV:   tipo,titulo,artista,duracaoSegundos,genero[,narrador]  (cabeçalho opcional)
+// JSONL: {"tipo":"musica","titulo":"...","artista":"...","duracaoSegundos":300,"genero":"ROCK"}
+// A validação é a dos construtores de Midia; linhas inválidas vão para o relatório.
+// O pool paraleliza só a conversão. A leitura das linhas e a inserção (sob a trava de
+// escrita do catálogo: ids, dicionários e colunas) são seriais e custam ~2 µs por linha,
+// o que limita a importação a algumas centenas de milhares de linhas/s com qualquer
+// número de núcleos.
+final class ImportadorCatalogo {
+    private static final int LINHAS_POR_BLOCO = 10_000;
+    private static final int MAX_REJEICOES_DETALHADAS = 20;
+
+    static final class Relatorio {
+        long aceitas, rejeitadas;
+        final List<String> rejeicoes = new ArrayList<>();   // primeiras, com número da linha
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder("Importadas: ").append(aceitas).append(" | Rejeitadas: ").append(rejeitadas);
+            for (String r : rejeicoes) sb.append("\n  ").append(r);
+            if (rejeitadas > rejeicoes.size()) sb.append("\n  ... e mais ").append(rejeitadas - rejeicoes.size());
+            return sb.toString();
+        }
+    }
+
+    private record Bloco(List<Midia> midias, List<String> rejeicoes) {}
+
+    private ImportadorCatalogo() {}
+
+    static Relatorio importar(Path arquivo, Catalogo catalogo, int threads) throws IOException {
+        boolean json = arquivo.getFileName().toString().toLowerCase().matches(".*\\.jsonl?$");
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        Deque<Future<Bloco>> emAndamento = new ArrayDeque<>();
+        Relatorio relatorio = new Relatorio();
+        long inicio = Metricas.iniciar(Metricas.Operacao.IMPORTAR);
+        try (BufferedReader in = Files.newBufferedReader(arquivo, StandardCharsets.UTF_8)) {
+            long numeroLinha = 0;
+            List<String> linhas = new ArrayList<>(LINHAS_POR_BLOCO);
+            long inicioBloco = 1;
+            String linha;
+            while ((linha = in.readLine()) != null) {
+                numeroLinha++;
+                linhas.add(linha);
+                if (linhas.size() == LINHAS_POR_BLOCO) {
+                    submeter(pool, emAndamento, linhas, inicioBloco, json);
+                    linhas = new ArrayList<>(LINHAS_POR_BLOCO);
+                    inicioBloco = numeroLinha + 1;
+                    while (emAndamento.size() >= threads * 2) inserir(emAndamento.poll(), catalogo, relatorio);
+                }
+            }
+            if (!linhas.isEmpty()) submeter(pool, emAndamento, linhas, inicioBloco, json);
+            while (!emAndamento.isEmpty()) inserir(emAndamento.poll(), catalogo, relatorio);
+        } finally {
+            pool.shutdownNow();
+            Metricas.concluir(Metricas.Operacao.IMPORTAR, inicio);
+        }
+        return relatorio;
+    }
+
+    private static void submeter(ExecutorService pool, Deque<Future<Bloco>> fila, List<String> linhas, long primeiraLinha, boolean json) {
+        fila.add(pool.submit(() -> converter(linhas, primeiraLinha, json)));
+    }
+
+    private static void inserir(Future<Bloco> futuro, Catalogo catalogo, Relatorio relatorio) throws IOException {
+        Bloco bloco;
+        try {
+            bloco = futuro.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Importação interrompida");
+        } catch (ExecutionException e) {
+            throw new IOException("Falha ao converter bloco", e.getCause());
+        }
+        catalogo.adicionarTodos(bloco.midias());
+        relatorio.aceitas += bloco.midias().size();
+        relatorio.rejeitadas += bloco.rejeicoes().size();
+        for (String r : bloco.rejeicoes()) {
+            if (relatorio.rejeicoes.size() < MAX_REJEICOES_DETALHADAS) relatorio.rejeicoes.add(r);
+        }
+    }
+
+    private static Bloco converter(List<String> linhas, long primeiraLinha, boolean json) {
+        List<Midia> midias = new ArrayList<>(linhas.size());
+        List<String> rejeicoes = new ArrayList<>();
+        for (int i = 0; i < linhas.size(); i++) {
+            String linha = linhas.get(i);
+            if (linha.isBlank() || (!json && primeiraLinha + i == 1 && linha.toLowerCase().startsWith("tipo,"))) continue;
+            try {
+                String[] campos = json ? lerObjetoJson(linha) : lerCsv(linha);
+                midias.add(criarMidia(campos));
+            } catch (RuntimeException e) {
+                rejeicoes.add("linha " + (primeiraLinha + i) + ": " + e.getMessage());
+            }
+        }
+        return new Bloco(midias, rejeicoes);
+    }
+
+    // Posições dos campos no vetor devolvido pelos dois leitores (= ordem das colunas do CSV)
+    private static final int TIPO = 0, TITULO = 1, ARTISTA = 2, DURACAO = 3, GENERO = 4, NARRADOR = 5;
+    private static final List<String> CAMPOS = List.of("tipo", "titulo", "artista", "duracaoSegundos", "genero", "narrador");
+
+    private static Midia criarMidia(String[] c) {
+        String tipo = Normalizador.normalizar(c[TIPO]);
+        int duracao;
+        try {
+            duracao = Integer.parseInt(c[DURACAO] == null ? "" : c[DURACAO].trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Duração inválida: " + c[DURACAO]);
+        }
+        return switch (tipo) {
+            case "musica" -> {
+                if (c[GENERO] == null || c[GENERO].isBlank()) throw new IllegalArgumentException("Gênero é obrigatório");
+                yield new Musica(c[TITULO], c[ARTISTA], duracao, Genero.valueOf(c[GENERO].trim().toUpperCase()));
+            }
+            case "podcast" -> new Podcast(c[TITULO], c[ARTISTA], duracao);
+            case "audiobook" -> new Audiobook(c[TITULO], c[ARTISTA], c[NARRADOR], duracao);
+            default -> throw new IllegalArgumentException("Tipo de mídia desconhecido: " + c[TIPO]);
+        };
+    }
+
+    // Campos separados por vírgula; aspas duplas permitem vírgulas e "" dentro do campo.
+    static String[] lerCsv(String linha) {
+        String[] campos = new String[CAMPOS.size()];
+        if (linha.indexOf('"') < 0) {   // caso comum: sem aspas, recorta direto da linha
+            int coluna = 0;
+            for (int inicio = 0; ; coluna++) {
+                int fim = linha.indexOf(',', inicio);
+                if (coluna < campos.length) campos[coluna] = linha.substring(inicio, fim < 0 ? linha.length() : fim);
+                if (fim < 0) break;
+                inicio = fim + 1;
+            }
+            if (coluna + 1 < 5) throw new IllegalArgumentException("Esperadas ao menos 5 colunas, encontradas " + (coluna + 1));
+            return campos;
+        }
+        StringBuilder atual = new StringBuilder();
+        int coluna = 0;
+        boolean entreAspas = false;
+        for (int i = 0; i <= linha.length(); i++) {
+            char c = i < linha.length() ? linha.charAt(i) : ',';
+            if (entreAspas) {
+                if (c == '"' && i + 1 < linha.length() && linha.charAt(i + 1) == '"') { atual.append('"'); i++; }
+                else if (c == '"') entreAspas = false;
+                else if (i == linha.length()) throw new IllegalArgumentException("Aspas não fechadas");
+                else atual.append(c);
+            } else if (c == '"') {
+                entreAspas = true;
+            } else if (c == ',') {
+                if (coluna < campos.length) campos[coluna] = atual.toString();
+                coluna++;
+                atual.setLength(0);
+            } else {
+                atual.append(c);
+            }
+        }
+        if (coluna < 5) throw new IllegalArgumentException("Esperadas ao menos 5 colunas, encontradas " + coluna);
+        return campos;
+    }
+
+    // Objeto JSON plano (sem aninhamento): valores texto, número, true/false ou null.
+    // Chaves fora de CAMPOS são ignoradas.
+    static String[] lerObjetoJson(String linha) {
+        return lerObjetoJson(linha, CAMPOS);
+    }
+
+    // Objeto JSON plano: devolve os valores na ordem de "nomes" (null se ausente).
+    static String[] lerObjetoJson(String linha, List<String> nomes) {
+        String[] campos = new String[nomes.size()];
+        int[] pos = {pularEspacos(linha, 0)};
+        esperar(linha, pos, '{');
+        int fechamento = pularEspacos(linha, pos[0]);
+        if (fechamento < linha.length() && linha.charAt(fechamento) == '}') return campos;
+        while (true) {
+            pos[0] = pularEspacos(linha, pos[0]);
+            String chave = lerTextoJson(linha, pos);
+            pos[0] = pularEspacos(linha, pos[0]);
+            esperar(linha, pos, ':');
+            pos[0] = pularEspacos(linha, pos[0]);
+            String valor;
+            if (pos[0] < linha.length() && linha.charAt(pos[0]) == '"') {
+                valor = lerTextoJson(linha, pos);
+            } else {
+                int inicio = pos[0];
+                while (pos[0] < linha.length() && ",} \t".indexOf(linha.charAt(pos[0])) < 0) pos[0]++;
+                valor = linha.substring(inicio, pos[0]);
+                if (valor.equals("null")) valor = null;
+            }
+            int indice = nomes.indexOf(chave);
+            if (indice >= 0) campos[indice] = valor;
+            pos[0] = pularEspacos(linha, pos[0]);
+            if (pos[0] < linha.length() && linha.charAt(pos[0]) == ',') { pos[0]++; continue; }
+            esperar(linha, pos, '}');
+            return campos;
+        }
+    }
+
+    private static String lerTextoJson(String s, int[] pos) {
+        esperar(s, pos, '"');
+        StringBuilder sb = new StringBuilder();
+        while (pos[0] < s.length()) {
+            char c = s.charAt(pos[0]++);
+            if (c == '"') return sb.toString();
+            if (c != '\\') { sb.append(c); continue; }
+            if (pos[0] >= s.length()) break;
+            char e = s.charAt(pos[0]++);
+            switch (e) {
+                case 'n' -> sb.append('\n');
+                case 't' -> sb.append('\t');
+                case 'r' -> sb.append('\r');
+                case 'b' -> sb.append('\b');
+                case 'f' -> sb.append('\f');
+                case 'u' -> {
+                    if (pos[0] + 4 > s.length()) throw new IllegalArgumentException("Escape \\u incompleto");
+                    sb.append((char) Integer.parseInt(s.substring(pos[0], pos[0] + 4), 16));
+                    pos[0] += 4;
+                }
+                default -> sb.append(e);   // \" \\ \/
+            }
+        }
+        throw new IllegalArgumentException("Texto JSON não fechado");
+    }
+
+    private static void esperar(String s, int[] pos, char c) {
+        if (pos[0] >= s.length() || s.charAt(pos[0]) != c) throw new IllegalArgumentException("JSON inválido: esperado '" + c + "' na coluna " + (pos[0] + 1));
+        pos[0]++;
+    }
+
+    private static int pularEspacos(String s, int i) {
+        while (i < s.length() && Character.isWhitespace(s.charAt(i))) i++;
+        return i;
+    }
+}
+
+/****************************
+ * EVENTOS DO FLIGHT RECORDER *
+ ****************************/
+// Eventos JFR das buscas, da indexação pendente, das alterações do catálogo e das
+// playlists e da gravação do snapshot, para cruzar uma operação lenta com o GC e o
+// I/O da mesma gravação. Vêm desligados: sem uma gravação que os ligue, begin/commit
+// não fazem nada e o JIT elimina a criação do evento. O perfil minispotify.jfc desta
+// pasta os liga, junto com o padrão da JVM:
+//   java -XX:StartFlightRecording:settings=default,settings=minispotify.jfc,filename=gravacao.jfr Main
+//   jcmd <pid> JFR.start settings=default settings=minispotify.jfc
+// Os campos só são preenchidos depois de shouldCommit(), que é falso com o evento desligado.
+final class EventosJfr {
+    private EventosJfr() {}
+
+    @Name("minispotify.Busca") @Label("Busca no catálogo") @Category({"Mini Spotify", "Catálogo"})
+    @Enabled(false) @StackTrace(false)
+    static final class Busca extends Event {
+        @Label("Modo") @Description("Operação de busca, como em Metricas.Operacao (ex.: buscar_titulo)") String modo;
+        @Label("Tamanho do termo") int tamanhoTermo;
+        @Label("Resultados") int resultados;
+    }
+
+    // Montagem dos índices das mídias incluídas desde a última consulta (ver Catalogo.lerIndices).
+    @Name("minispotify.Indexacao") @Label("Indexação pendente") @Category({"Mini Spotify", "Índices"})
+    @Enabled(false) @StackTrace(false)
+    static final class Indexacao extends Event {
+        @Label("Mídias indexadas") int midias;
+        @Label("Títulos indexados") int chavesTitulos;
+        @Label("Artistas indexados") int chavesArtistas;
+    }
+
+    @Name("minispotify.Mutacao") @Label("Alteração do catálogo") @Category({"Mini Spotify", "Catálogo"})
+    @Enabled(false) @StackTrace(false)
+    static final class Mutacao extends Event {
+        @Label("Operação") @Description("adicionar_midias ou remover_midia") String operacao;
+        @Label("Mídias") int midias;
+    }
+
+    @Name("minispotify.EdicaoPlaylist") @Label("Edição de playlist") @Category({"Mini Spotify", "Playlists"})
+    @Enabled(false) @StackTrace(false)
+    static final class EdicaoPlaylist extends Event {
+        @Label("Operação") @Description("Como em Metricas.Operacao (ex.: copiar_playlist)") String operacao;
+        @Label("Usuário") String usuario;
+        @Label("Playlist") String playlist;
+    }
+
+    @Name("minispotify.GravacaoSnapshot") @Label("Gravação do snapshot") @Category({"Mini Spotify", "Persistência"})
+    @Enabled(false) @StackTrace(false)
+    static final class GravacaoSnapshot extends Event {
+        @Label("Arquivo") String arquivo;
+        @Label("Geração") long geracao;
+        @Label("Mídias") int midias;
+        @Label("Usuários") int usuarios;
+        @Label("Tamanho") @DataAmount long bytes;
+    }
+}
+
+/****************************
+ * MÉTRICAS                 *
+ ****************************/
+// Histograma de latências (ns) no estilo do HdrHistogram: um balde por valor até 15 ns
+// e, daí em diante, 16 baldes por potência de 2 (erro relativo < 6,25%), de 1 ns a
+// ~36 min em 608 baldes fixos. Cada balde é um LongAdder: registrar não disputa com
+// outras threads, e os percentis saem de uma foto dos baldes.
+final class HistogramaLatencia {
+    private static final int BITS_SUBBALDE = 4, SUBBALDES = 1 << BITS_SUBBALDE, MAIOR_EXPOENTE = 40;
+    private static final long MAXIMO = (1L << (MAIOR_EXPOENTE + 1)) - 1;   // acima disso, último balde
+    private static final int BALDES = SUBBALDES + (MAIOR_EXPOENTE - BITS_SUBBALDE + 1) * SUBBALDES;
+
+    private final LongAdder[] baldes = new LongAdder[BALDES];
+    private final LongAdder soma = new LongAdder();
+    private final LongAccumulator maximo = new LongAccumulator(Math::max, 0);
+
+    HistogramaLatencia() {
+        for (int i = 0; i < BALDES; i++) baldes[i] = new LongAdder();
+    }
+
+    void registrar(long nanos) {
+        long valor = Math.max(0, Math.min(MAXIMO, nanos));
+        baldes[balde(valor)].increment();
+        soma.add(valor);
+        maximo.accumulate(valor);
+    }
+
+    // Lida balde a balde enquanto outras threads registram: pode misturar registros
+    // feitos durante a leitura, o que basta para métricas.
+    Foto foto() {
+        long[] contagens = new long[BALDES];
+        long total = 0;
+        for (int i = 0; i < BALDES; i++) total += contagens[i] = baldes[i].sum();
+        return new Foto(contagens, total, soma.sum(), maximo.get());
+    }
+
+    static int balde(long valor) {
+        if (valor < SUBBALDES) return (int) valor;
+        int expoente = 63 - Long.numberOfLeadingZeros(valor);
+        int sub = (int) (valor >>> (expoente - BITS_SUBBALDE)) & (SUBBALDES - 1);
+        return SUBBALDES + (expoente - BITS_SUBBALDE) * SUBBALDES + sub;
+    }
+
+    // Maior valor que cai no balde.
+    static long fimBalde(int balde) {
+        if (balde < SUBBALDES) return balde;
+        int expoente = (balde - SUBBALDES) / SUBBALDES + BITS_SUBBALDE;
+        int sub = (balde - SUBBALDES) % SUBBALDES;
+        return ((long) (SUBBALDES + sub + 1) << (expoente - BITS_SUBBALDE)) - 1;
+    }
+
+    record Foto(long[] contagens, long total, long soma, long maximo) {
+        double media() { return total == 0 ? 0 : soma / (double) total; }
+
+        // Valor (ns) abaixo do qual está a fração "p" dos registros, arredondado para cima no balde.
+        long percentil(double p) {
+            long alvo = Math.max(1, (long) Math.ceil(p * total)), acumulado = 0;
+            for (int i = 0; i < contagens.length; i++) {
+                acumulado += contagens[i];
+                if (acumulado >= alvo) return Math.min(maximo, fimBalde(i));
+            }
+            return maximo;
+        }
+    }
+}
+
+// Métricas das operações do catálogo, dos usuários e das playlists (as mesmas do console
+// e da API): chamadas e histograma de latência por operação, mais medidores de tamanho
+// do catálogo e dos índices. Leitura pela opção 13 do menu ou por JMX (MiniSpotify:type=Metricas).
+// O caminho quente soma num de poucos blocos fixos de contadores (2 por processador,
+// escolhido pelo id da thread; cada bloco em sua linha de cache), como o LongAdder: a
+// memória não cresce com o número de threads, nem com threads virtuais, e a leitura
+// soma os blocos. Nas operações rápidas a latência é medida nas 256 primeiras chamadas
+// de cada bloco e depois em 1 de cada 64, para as leituras de relógio (dezenas de ns
+// cada) não pesarem; as contagens são exatas.
+// -Dminispotify.metricas=false desliga tudo. Uso: Metricas.medir(Metricas.Operacao.BUSCAR_TITULO, () -> ...)
+final class Metricas {
+    enum Operacao {
+        ADICIONAR_MIDIAS(true), REMOVER_MIDIA(true), BUSCAR_TITULO(true), BUSCAR_ARTISTA(true),
+        BUSCAR_GENERO(true), BUSCAR_ARTISTA_E_GENERO(true), BUSCAR_TITULO_OU_ARTISTA(true),
+        CONTAR_GENEROS(true), BUSCAR_DURACAO(true), AUTOCOMPLETAR(true), LISTAR(false),
+        CADASTRAR_USUARIO(false), CRIAR_PLAYLIST(false), EXCLUIR_PLAYLIST(false), COPIAR_PLAYLIST(false),
+        ADICIONAR_NA_PLAYLIST(true), REMOVER_DA_PLAYLIST(true), MOVER_NA_PLAYLIST(true), DESFAZER_EDICOES(true),
+        IMPORTAR(false), SALVAR_ESTADO(false);
+
+        private final boolean amostrada;   // rápidas: latência amostrada; as demais, medidas sempre
+        Operacao(boolean amostrada) { this.amostrada = amostrada; }
+        String nome() { return name().toLowerCase(Locale.ROOT); }
+    }
+
+    private static final long NAO_MEDIDA = Long.MIN_VALUE;
+    private static final int SEMPRE_MEDIDAS = 256, MASCARA_AMOSTRA = 63;
+    private static final Operacao[] OPERACOES = Operacao.values();
+    private static final HistogramaLatencia[] LATENCIAS = new HistogramaLatencia[OPERACOES.length];
+    // Blocos de contadores lado a lado num só vetor; PASSO separa blocos vizinhos por 64 bytes ou mais
+    private static final int BLOCOS = Math.min(64, Integer.highestOneBit(Math.max(1, 2 * Runtime.getRuntime().availableProcessors() - 1)) << 1);
+    private static final int PASSO = (OPERACOES.length + 15) & ~7;
+    private static final long[] CHAMADAS = new long[BLOCOS * PASSO];
+    private static final VarHandle CONTADOR = MethodHandles.arrayElementVarHandle(long[].class);
+    // Fontes dos medidores: cada uma devolve nome -> valor quando as métricas são lidas
+    private static final List<Supplier<Map<String, Long>>> MEDIDORES = new CopyOnWriteArrayList<>();
+    private static final boolean ATIVAS = !"false".equals(System.getProperty("minispotify.metricas"));
+
+    static {
+        for (int i = 0; i < OPERACOES.length; i++) LATENCIAS[i] = new HistogramaLatencia();
+    }
+
+    private Metricas() {}
+
+    // Conta a chamada e, se ela for medida, devolve o instante de início.
+    static long iniciar(Operacao operacao) {
+        if (!ATIVAS) return NAO_MEDIDA;
+        long chamadas = (long) CONTADOR.getAndAdd(CHAMADAS, bloco() + operacao.ordinal(), 1L) + 1;
+        if (operacao.amostrada && chamadas > SEMPRE_MEDIDAS
+                && (ThreadLocalRandom.current().nextInt() & MASCARA_AMOSTRA) != 0) return NAO_MEDIDA;
+        return System.nanoTime();
+    }
+
+    static void concluir(Operacao operacao, long inicio) {
+        if (inicio != NAO_MEDIDA) LATENCIAS[operacao.ordinal()].registrar(System.nanoTime() - inicio);
+    }
+
+    // iniciar + concluir em volta de "acao", que roda mesmo com as métricas desligadas.
+    static <T> T medir(Operacao operacao, Supplier<T> acao) {
+        long inicio = iniciar(operacao);
+        try {
+            return acao.get();
+        } finally {
+            concluir(operacao, inicio);
+        }
+    }
+
+    // Início do bloco da thread atual: o id espalhado pelo hash de Fibonacci.
+    private static int bloco() {
+        long id = Thread.currentThread().getId();
+        return ((int) ((id * 0x9E3779B97F4A7C15L) >>> 32) & (BLOCOS - 1)) * PASSO;
+    }
+
+    static void registrarMedidores(Supplier<Map<String, Long>> fonte) { MEDIDORES.add(fonte); }
+
+    static long chamadas(Operacao operacao) {
+        long total = 0;
+        for (int b = 0; b < BLOCOS; b++) total += (long) CONTADOR.getOpaque(CHAMADAS, b * PASSO + operacao.ordinal());
+        return total;
+    }
+
+    static HistogramaLatencia.Foto latencias(Operacao operacao) { return LATENCIAS[operacao.ordinal()].foto(); }
+
+    static Map<String, Long> medidores() {
+        Map<String, Long> valores = new TreeMap<>();
+        for (Supplier<Map<String, Long>> fonte : MEDIDORES) valores.putAll(fonte.get());
+        return valores;
+    }
+
+    // Tabela com as operações já chamadas e os medidores.
+    static String relatorio() {
+        StringBuilder sb = new StringBuilder(String.format("%-26s %10s %9s %10s %10s %10s %10s %10s%n",
+                "Operação", "chamadas", "medidas", "média µs", "p50 µs", "p99 µs", "p99,9 µs", "máx µs"));
+        for (Operacao op : OPERACOES) {
+            long chamadas = chamadas(op);
+            if (chamadas == 0) continue;
+            HistogramaLatencia.Foto f = latencias(op);
+            sb.append(String.format("%-26s %10d %9d %10.1f %10.1f %10.1f %10.1f %10.1f%n", op.nome(), chamadas, f.total(),
+                    f.media() / 1000, f.percentil(0.50) / 1000.0, f.percentil(0.99) / 1000.0, f.percentil(0.999) / 1000.0, f.maximo() / 1000.0));
+        }
+        medidores().forEach((nome, valor) -> sb.append(String.format("%-26s %10d%n", nome, valor)));
+        return sb.toString();
+    }
+
+    // Publica as métricas no servidor JMX da JVM (jconsole, VisualVM...).
+    static void registrarJmx() {
+        try {
+            ObjectName nome = new ObjectName("MiniSpotify:type=Metricas");
+            MBeanServer servidor = ManagementFactory.getPlatformMBeanServer();
+            if (!servidor.isRegistered(nome)) servidor.registerMBean(new Jmx(), nome);
+        } catch (JMException e) {
+            System.out.println("[Aviso] Métricas não publicadas no JMX: " + e.getMessage());
+        }
+    }
+
+    // MBean dinâmico: atributos "operacao.campo" (ex.: buscar_titulo.p99Micros) e
+    // "medidor.nome", somente leitura; a operação "relatorio" devolve a tabela do menu.
+    private static final class Jmx implements DynamicMBean {
+        private static final List<String> CAMPOS = List.of("chamadas", "medidas", "mediaMicros", "p50Micros", "p99Micros", "p999Micros", "maximoMicros");
+
+        @Override
+        public Object getAttribute(String atributo) throws AttributeNotFoundException {
+            int ponto = atributo.indexOf('.');
+            String prefixo = ponto > 0 ? atributo.substring(0, ponto) : "", campo = atributo.substring(ponto + 1);
+            Object valor = null;
+            if (prefixo.equals("medidor")) valor = medidores().get(campo);
+            else for (Operacao op : OPERACOES) if (op.nome().equals(prefixo)) valor = valor(op, campo);
+            if (valor == null) throw new AttributeNotFoundException("Atributo desconhecido: " + atributo);
+            return valor;
+        }
+
+        private static Object valor(Operacao op, String campo) {
+            if (campo.equals("chamadas")) return chamadas(op);
+            HistogramaLatencia.Foto f = latencias(op);
+            return switch (campo) {
+                case "medidas" -> f.total();
+                case "mediaMicros" -> f.media() / 1000;
+                case "p50Micros" -> f.percentil(0.50) / 1000.0;
+                case "p99Micros" -> f.percentil(0.99) / 1000.0;
+                case "p999Micros" -> f.percentil(0.999) / 1000.0;
+                case "maximoMicros" -> f.maximo() / 1000.0;
+                default -> null;
+            };
+        }
+
+        @Override
+        public AttributeList getAttributes(String[] atributos) {
+            AttributeList lista = new AttributeList();
+            for (String a : atributos) {
+                try {
+                    lista.add(new Attribute(a, getAttribute(a)));
+                } catch (AttributeNotFoundException e) {
+                    // atributos desconhecidos ficam de fora, como pede a interface
+                }
+            }
+            return lista;
+        }
+
+        @Override
+        public void setAttribute(Attribute atributo) throws AttributeNotFoundException {
+            throw new AttributeNotFoundException("As métricas são somente leitura: " + atributo.getName());
+        }
+
+        @Override
+        public AttributeList setAttributes(AttributeList atributos) { return new AttributeList(); }
+
+        @Override
+        public Object invoke(String acao, Object[] parametros, String[] assinatura) throws ReflectionException {
+            if (acao.equals("relatorio")) return relatorio();
+            throw new ReflectionException(new NoSuchMethodException(acao));
+        }
+
+        @Override
+        public MBeanInfo getMBeanInfo() {
+            List<MBeanAttributeInfo> atributos = new ArrayList<>();
+            for (Operacao op : OPERACOES) {
+                for (String campo : CAMPOS) {
+                    String tipo = campo.endsWith("Micros") ? Double.class.getName() : Long.class.getName();
+                    atributos.add(new MBeanAttributeInfo(op.nome() + "." + campo, tipo, campo + " de " + op.nome(), true, false, false));
+                }
+            }
+            for (String m : medidores().keySet()) atributos.add(new MBeanAttributeInfo("medidor." + m, Long.class.getName(), m, true, false, false));
+            MBeanOperationInfo relatorio = new MBeanOperationInfo("relatorio", "Tabela de métricas em texto",
+                    new MBeanParameterInfo[0], String.class.getName(), MBeanOperationInfo.INFO);
+            return new MBeanInfo(Metricas.class.getName(), "Métricas do Mini Spotify",
+                    atributos.toArray(new MBeanAttributeInfo[0]), null, new MBeanOperationInfo[] {relatorio}, null);
+        }
+    }
+}
+
+/****************************
+ * SAÍDA EM LOTE            *
+ ****************************/
+// Listagens acumulam as linhas e escrevem no System.out em blocos de 64 KB: o
+// System.out faz flush a cada println, o que vira uma escrita por item.
+final class SaidaConsole implements AutoCloseable {
+    private static final int BLOCO = 1 << 16;
+    private final StringBuilder buffer = new StringBuilder(BLOCO + 1024);
+
+    SaidaConsole linha(Object texto) {
+        buffer.append(texto).append('\n');
+        if (buffer.length() >= BLOCO) descarregar();
+        return this;
+    }
+
+    // Linha "prefixo + mídia" escrita direto no buffer (ver Midia.acrescentar).
+    SaidaConsole linha(String prefixo, Midia m) {
+        m.acrescentar(buffer.append(prefixo)).append('\n');
+        if (buffer.length() >= BLOCO) descarregar();
+        return this;
+    }
+
+    // Resumo da playlist seguido de uma linha em branco.
+    SaidaConsole resumo(Playlist p) {
+        p.resumo(buffer).append('\n');
+        if (buffer.length() >= BLOCO) descarregar();
+        return this;
+    }
+
+    @Override
+    public void close() {
+        descarregar();
+        System.out.flush();
+    }
+
+    private void descarregar() {
+        if (buffer.length() == 0) return;
+        System.out.print(buffer);
+        buffer.setLength(0);
+    }
+
+    // Página de uma listagem: "--page N --limit M" (ou "--page=N"); páginas começam em 1
+    // e limite 0 lista tudo.
+    record Pagina(int numero, int limite) {
+        static final Pagina TUDO = new Pagina(1, 0);
+
+        Pagina {
+            if (numero < 1 || limite < 0) throw new IllegalArgumentException("Página deve ser >= 1 e limite >= 0");
+        }
+
+        static Pagina ler(String... opcoes) {
+            List<String> partes = new ArrayList<>();
+            for (String o : opcoes) {
+                for (String p : o.trim().split("[\\s=]+")) if (!p.isEmpty()) partes.add(p);
+            }
+            int numero = 1, limite = 0;
+            for (int i = 0; i < partes.size(); i += 2) {
+                String opcao = partes.get(i);
+                if ((!opcao.equals("--page") && !opcao.equals("--limit")) || i + 1 >= partes.size()) {
+                    throw new IllegalArgumentException("Use --page N e/ou --limit N");
+                }
+                int valor;
+                try {
+                    valor = Integer.parseInt(partes.get(i + 1));
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Valor inválido para " + opcao + ": " + partes.get(i + 1));
+                }
+                if (opcao.equals("--page")) numero = valor;
+                else limite = valor;
+            }
+            return new Pagina(numero, limite);
+        }
+
+        int inicio(int total) { return limite == 0 ? 0 : (int) Math.min(total, (long) (numero - 1) * limite); }
+
+        int fim(int total) { return limite == 0 ? total : (int) Math.min(total, (long) inicio(total) + limite); }
+
+        // "Página 2 de 7 ...", ou vazio quando a listagem sai inteira.
+        String rodape(int total) {
+            if (limite == 0) return "";
+            int paginas = Math.max(1, (total + limite - 1) / limite);
+            return "Página " + numero + " de " + paginas + " (" + total + " itens; --page N --limit " + limite + ")";
+        }
+    }
+}
+
+/****************************
+ * API HTTP (JSON)          *
+ ****************************/
+// API JSON sobre o servidor HTTP embutido do JDK (com.sun.net.httpserver). Cada
+// requisição roda numa thread virtual quando o JDK tem (21+); nos anteriores, num
+// pool de threads comum. Rotas:
+//   GET    /midias?titulo= | artista= | q= | generos=ROCK,-PODCAST  [&inicio=0&limite=100]
+//   DELETE /midias/{id}                               (sai também de todas as playlists)
+//   GET    /sugestoes?prefixo=...[&limite=10]
+//   POST   /usuarios                                  {"nome": ..., "email": ...}
+//   GET    /usuarios/{email}
+//   GET    /usuarios/{email}/playlists
+//   POST   /usuarios/{email}/playlists                {"nome": ...}
+//   GET    /usuarios/{email}/playlists/{nome}
+//   DELETE /usuarios/{email}/playlists/{nome}
+//   POST   /usuarios/{email}/playlists/{nome}/itens   {"id": ...}
+//   DELETE /usuarios/{email}/playlists/{nome}/itens/{id}
+// Erros voltam como {"erro": "..."}: 400 (dados inválidos), 404, 405 ou 409 (duplicado).
+final class ServidorHttp {
+    private static final int LIMITE_PADRAO = 100, LIMITE_MAXIMO = 1000;
+
+    private final Catalogo catalogo;
+    private final RegistroUsuarios usuarios;
+    private final HttpServer servidor;
+    private final ExecutorService executor;
+
+    // Erro já com o status HTTP (rota inexistente, método não permitido).
+    private static final class ErroHttp extends RuntimeException {
+        final int status;
+        ErroHttp(int status, String mensagem) { super(mensagem); this.status = status; }
+    }
+
+    private record Resposta(int status, String json) {}
+
+    static {
+        // Os padrões do servidor do JDK são pensados para poucas conexões: sem TCP_NODELAY
+        // respostas pequenas esperam o ACK atrasado do cliente (~40 ms), e só 200 conexões
+        // keep-alive ociosas ficam abertas (as demais são fechadas e reabertas a cada pedido).
+        // Lidos quando o HttpServer é carregado; -D na linha de comando tem prioridade.
+        padrao("sun.net.httpserver.nodelay", "true");
+        padrao("sun.net.httpserver.maxIdleConnections", "20000");
+    }
+
+    private static void padrao(String propriedade, String valor) {
+        if (System.getProperty(propriedade) == null) System.setProperty(propriedade, valor);
+    }
+
+    ServidorHttp(int porta, Catalogo catalogo, RegistroUsuarios usuarios) throws IOException {
+        this.catalogo = catalogo;
+        this.usuarios = usuarios;
+        this.servidor = HttpServer.create(new InetSocketAddress(porta), 4096);
+        this.executor = executorPorRequisicao();
+        servidor.setExecutor(executor);
+        servidor.createContext("/", this::atender);
+    }
+
+    // Thread virtual por requisição (JDK 21+), procurada por reflexão para o código
+    // continuar compilando no JDK 17.
+    static ExecutorService executorPorRequisicao() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+    void iniciar() { servidor.start(); }
+
+    int porta() { return servidor.getAddress().getPort(); }
+
+    void parar() {
+        servidor.stop(1);
+        executor.shutdown();
+    }
+
+    private void atender(HttpExchange troca) throws IOException {
+        Resposta resposta;
+        try {
+            resposta = rotear(troca.getRequestMethod(), segmentos(troca.getRequestURI()), troca);
+        } catch (ErroHttp e) {
+            resposta = erro(e.status, e.getMessage());
+        } catch (UserNotFoundException | PlaylistNotFoundException | MediaNotFoundException e) {
+            resposta = erro(404, e.getMessage());
+        } catch (DomainException e) {
+            resposta = erro(409, e.getMessage());
+        } catch (IllegalArgumentException e) {
+            resposta = erro(400, e.getMessage());
+        } catch (RuntimeException e) {
+            resposta = erro(500, e.getClass().getSimpleName() + ": " + e.getMessage());
+        }
+        byte[] corpo = resposta.json() == null ? new byte[0] : resposta.json().getBytes(StandardCharsets.UTF_8);
+        if (corpo.length > 0) troca.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        troca.sendResponseHeaders(resposta.status(), corpo.length > 0 ? corpo.length : -1);
+        try (OutputStream out = troca.getResponseBody()) {
+            out.write(corpo);
+        }
+    }
+
+    private Resposta rotear(String metodo, List<String> p, HttpExchange troca) throws IOException {
+        if (p.size() == 1 && p.get(0).equals("midias")) {
+            exigirMetodo(metodo, "GET");
+            return new Resposta(200, midias(parametros(troca.getRequestURI())));
+        }
+        if (p.size() == 2 && p.get(0).equals("midias")) {
+            exigirMetodo(metodo, "DELETE");
+            Mini_Spotify_ChatGPT.excluirMidia(p.get(1));
+            return new Resposta(204, null);
+        }
+        if (p.size() == 1 && p.get(0).equals("sugestoes")) {
+            exigirMetodo(metodo, "GET");
+            Map<String, String> q = parametros(troca.getRequestURI());
+            List<String> sugestoes = catalogo.autocompletar(q.getOrDefault("prefixo", ""), inteiro(q, "limite", 10));
+            StringBuilder sb = new StringBuilder("{\"sugestoes\":[");
+            for (int i = 0; i < sugestoes.size(); i++) {
+                if (i > 0) sb.append(',');
+                texto(sb, sugestoes.get(i));
+            }
+            return new Resposta(200, sb.append("]}").toString());
+        }
+        if (p.isEmpty() || !p.get(0).equals("usuarios")) throw new ErroHttp(404, "Rota não encontrada");
+
+        if (p.size() == 1) {
+            exigirMetodo(metodo, "POST");
+            String[] c = ImportadorCatalogo.lerObjetoJson(lerCorpo(troca), List.of("nome", "email"));
+            return new Resposta(201, usuario(Mini_Spotify_ChatGPT.incluirUsuario(c[0], c[1])));
+        }
+        Usuario u = usuarios.obter(p.get(1));
+        if (p.size() == 2) {
+            exigirMetodo(metodo, "GET");
+            return new Resposta(200, u.comTrava(() -> usuario(u)));
+        }
+        if (!p.get(2).equals("playlists") || p.size() > 6 || (p.size() >= 5 && !p.get(4).equals("itens"))) {
+            throw new ErroHttp(404, "Rota não encontrada");
+        }
+        switch (p.size()) {
+            case 3 -> {
+                if (metodo.equals("POST")) {
+                    String nome = ImportadorCatalogo.lerObjetoJson(lerCorpo(troca), List.of("nome"))[0];
+                    if (nome == null) throw new IllegalArgumentException("Nome da playlist é obrigatório");
+                    Playlist criada = Mini_Spotify_ChatGPT.incluirPlaylist(u, nome);
+                    return new Resposta(201, u.comTrava(() -> playlist(criada, false)));
+                }
+                exigirMetodo(metodo, "GET");
+                return new Resposta(200, u.comTrava(() -> {
+                    StringBuilder sb = new StringBuilder("{\"playlists\":[");
+                    boolean primeira = true;
+                    for (Playlist pl : u.listarPlaylists()) {
+                        if (!primeira) sb.append(',');
+                        primeira = false;
+                        sb.append(playlist(pl, false));
+                    }
+                    return sb.append("]}").toString();
+                }));
+            }
+            case 4 -> {
+                String nome = p.get(3);
+                if (metodo.equals("DELETE")) {
+                    Mini_Spotify_ChatGPT.excluirPlaylist(u, nome);
+                    return new Resposta(204, null);
+                }
+                exigirMetodo(metodo, "GET");
+                return new Resposta(200, u.comTrava(() -> playlist(u.obterPlaylist(nome), true)));
+            }
+            case 5 -> {
+                exigirMetodo(metodo, "POST");
+                String id = ImportadorCatalogo.lerObjetoJson(lerCorpo(troca), List.of("id"))[0];
+                if (id == null) throw new IllegalArgumentException("Informe o id da mídia");
+                Mini_Spotify_ChatGPT.incluirItem(u, p.get(3), catalogo.obterPorId(id));
+                return new Resposta(201, u.comTrava(() -> playlist(u.obterPlaylist(p.get(3)), false)));
+            }
+            default -> {
+                exigirMetodo(metodo, "DELETE");
+                if (!Mini_Spotify_ChatGPT.excluirItem(u, p.get(3), p.get(5))) {
+                    throw new MediaNotFoundException("Mídia não está na playlist: " + p.get(5));
+                }
+                return new Resposta(204, null);
+            }
+        }
+    }
+
+    private String midias(Map<String, String> q) {
+        int inicio = Math.max(0, inteiro(q, "inicio", 0));
+        int limite = Math.min(LIMITE_MAXIMO, Math.max(0, inteiro(q, "limite", LIMITE_PADRAO)));
+        List<Midia> encontradas;
+        if (q.containsKey("titulo")) encontradas = catalogo.buscarPorTitulo(q.get("titulo"));
+        else if (q.containsKey("artista")) encontradas = catalogo.buscarPorArtista(q.get("artista"));
+        else if (q.containsKey("q")) encontradas = catalogo.buscarPorTituloOuArtista(q.get("q"));
+        else if (q.containsKey("generos")) {
+            Set<Genero> incluir = EnumSet.noneOf(Genero.class), excluir = EnumSet.noneOf(Genero.class);
+            Mini_Spotify_ChatGPT.lerGeneros(q.get("generos"), incluir, excluir);
+            encontradas = catalogo.buscarPorGeneros(incluir, excluir);
+        } else {
+            // Sem filtro: o catálogo monta só o trecho pedido, em vez de copiar tudo
+            Catalogo.Pagina trecho = catalogo.listar(inicio, limite);
+            return midias(trecho.total(), inicio, trecho.midias(), 0, trecho.midias().size());
+        }
+        return midias(encontradas.size(), inicio, encontradas, inicio, (int) Math.min(encontradas.size(), (long) inicio + limite));
+    }
+
+    // Itens [de, ate) de "lista" no formato {"total", "inicio", "midias"}.
+    private static String midias(int total, int inicio, List<Midia> lista, int de, int ate) {
+        StringBuilder sb = new StringBuilder(64 + 160 * Math.max(0, ate - de));
+        sb.append("{\"total\":").append(total).append(",\"inicio\":").append(inicio).append(",\"midias\":[");
+        for (int i = de; i < ate; i++) {
+            if (i > de) sb.append(',');
+            midia(sb, lista.get(i));
+        }
+        return sb.append("]}").toString();
+    }
+
+    private static String usuario(Usuario u) {
+        StringBuilder sb = new StringBuilder("{\"nome\":");
+        texto(sb, u.getNome());
+        sb.append(",\"email\":");
+        texto(sb, u.getEmail());
+        return sb.append(",\"playlists\":").append(u.listarPlaylists().size()).append('}').toString();
+    }
+
+    // Chamado com a trava do dono da playlist.
+    private static String playlist(Playlist p, boolean comItens) {
+        StringBuilder sb = new StringBuilder("{\"nome\":");
+        texto(sb, p.getNome());
+        sb.append(",\"itens\":").append(p.getItens().size())
+          .append(",\"duracaoSegundos\":").append(p.duracaoTotalSegundos())
+          .append(",\"porTipo\":");
+        contagens(sb, p.quantidadePorTipo());
+        sb.append(",\"porGenero\":");
+        contagens(sb, p.quantidadePorGenero());
+        if (comItens) {
+            sb.append(",\"midias\":[");
+            String separador = "";
+            for (Midia m : p.getItens()) {
+                midia(sb.append(separador), m);
+                separador = ",";
+            }
+            sb.append(']');
+        }
+        return sb.append('}').toString();
+    }
+
+    private static void contagens(StringBuilder sb, Map<?, Integer> contagens) {
+        sb.append('{');
+        boolean primeira = true;
+        for (Map.Entry<?, Integer> e : contagens.entrySet()) {
+            if (!primeira) sb.append(',');
+            primeira = false;
+            texto(sb, e.getKey().toString());
+            sb.append(':').append(e.getValue());
+        }
+        sb.append('}');
+    }
+
+    private static void midia(StringBuilder sb, Midia m) {
+        sb.append("{\"id\":\"").append(m.getId()).append("\",\"tipo\":");
+        texto(sb, m.tipo());
+        sb.append(",\"titulo\":");
+        texto(sb, m.getTitulo());
+        sb.append(",\"artista\":");
+        texto(sb, m.getArtistaOuAutor());
+        sb.append(",\"duracaoSegundos\":").append(m.getDuracaoSegundos())
+          .append(",\"genero\":\"").append(m.getGenero()).append("\"}");
+    }
+
+    private static Resposta erro(int status, String mensagem) {
+        StringBuilder sb = new StringBuilder("{\"erro\":");
+        texto(sb, mensagem == null ? "" : mensagem);
+        return new Resposta(status, sb.append('}').toString());
+    }
+
+    // Texto JSON entre aspas, com os escapes obrigatórios.
+    static void texto(StringBuilder sb, String s) {
+        sb.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"' -> sb.append("\\\"");
+                case '\\' -> sb.append("\\\\");
+                case '\n' -> sb.append("\\n");
+                case '\r' -> sb.append("\\r");
+                case '\t' -> sb.append("\\t");
+                default -> {
+                    if (c < 0x20) sb.append(String.format("\\u%04x", (int) c));
+                    else sb.append(c);
+                }
+            }
+        }
+        sb.append('"');
+    }
+
+    private static void exigirMetodo(String metodo, String esperado) {
+        if (!metodo.equals(esperado)) throw new ErroHttp(405, "Método não permitido: " + metodo);
+    }
+
+    private static String lerCorpo(HttpExchange troca) throws IOException {
+        try (InputStream in = troca.getRequestBody()) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    // Segmentos do caminho já decodificados ("%2F" não vira separador).
+    private static List<String> segmentos(URI uri) {
+        List<String> partes = new ArrayList<>();
+        for (String s : uri.getRawPath().split("/")) {
+            if (!s.isEmpty()) partes.add(decodificar(s));
+        }
+        return partes;
+    }
+
+    private static Map<String, String> parametros(URI uri) {
+        Map<String, String> q = new HashMap<>();
+        String bruta = uri.getRawQuery();
+        if (bruta == null) return q;
+        for (String par : bruta.split("&")) {
+            int igual = par.indexOf('=');
+            if (igual < 0) q.put(URLDecoder.decode(par, StandardCharsets.UTF_8), "");
+            else q.put(URLDecoder.decode(par.substring(0, igual), StandardCharsets.UTF_8),
+                       URLDecoder.decode(par.substring(igual + 1), StandardCharsets.UTF_8));
+        }
+        return q;
+    }
+
+    // No caminho, "+" é literal (só na query significa espaço).
+    private static String decodificar(String segmento) {
+        return URLDecoder.decode(segmento.replace("+", "%2B"), StandardCharsets.UTF_8);
+    }
+
+    private static int inteiro(Map<String, String> q, String nome, int padrao) {
+        String v = q.get(nome);
+        if (v == null || v.isEmpty()) return padrao;
+        try {
+            return Integer.parseInt(v);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Parâmetro '" + nome + "' deve ser um número: " + v);
+        }
+    }
+}
+
+/****************************************
+ * CATÁLOGO E CARGA SINTÉTICOS          *
+ ****************************************/
+// Gerador determinístico para benchmarks e testes de carga: a mesma semente gera
+// sempre os mesmos dados, e nada fica guardado. A mídia de índice i sai só de
+// (semente, i), então 100 milhões de itens podem ser percorridos (ou gravados em
+// CSV para o ImportadorCatalogo) com memória constante.
+// - Artistas em Zipf (expoente 1): poucos com muitas mídias, a maioria com poucas
+//   (~20 mídias por artista em média).
+// - Gêneros musicais com pesos (POP e SERTANEJO na frente, COUNTRY e BLUES no fim);
+//   cada artista tem um gênero principal, usado em ~85% das suas músicas.
+// - 80% músicas, 15% podcasts e 5% audiobooks, com duração log-normal por tipo
+//   (medianas de 3:30, 45 min e 8 h).
+// A carga de playlists (carga()) é um fluxo de edições de usuários; ela só guarda
+// quantas playlists cada usuário tem e o tamanho esperado de cada uma.
+final class GeradorCarga implements Iterable<Midia> {
+    private static final double EXPOENTE_ARTISTAS = 1.0;
+    // Popularidade nas playlists: as primeiras mídias do catálogo são as mais incluídas
+    private static final double EXPOENTE_POPULARIDADE = 0.9;
+    private static final int MIDIAS_POR_ARTISTA = 20;
+    private static final double FIDELIDADE_GENERO = 0.85;
+    static final int MAXIMO_PLAYLISTS = 8;   // por usuário, na carga
+    private static final String[] PALAVRAS = {
+        "amor", "noite", "sol", "mar", "cidade", "estrada", "coração", "tempo", "luz", "sonho",
+        "rio", "vento", "fogo", "lua", "céu", "saudade", "caminho", "festa", "silêncio", "janela",
+        "azul", "chuva", "verão", "distante", "segredo", "madrugada", "estrela", "viagem", "carnaval", "horizonte"
+    };
+    // Pesos na ordem de Genero.values(), só os musicais (ROCK..KPOP)
+    private static final double[] GENEROS_ACUMULADOS = acumular(
+            9, 20, 8, 2, 2, 8, 7, 14, 5, 10, 3, 1.5, 1.5, 1, 4, 4);
+
+    enum Tipo { CRIAR_PLAYLIST, ADICIONAR, REMOVER, MOVER, COPIAR }
+
+    // Uma edição da carga. "playlist" e "destino" são índices (0..MAXIMO_PLAYLISTS-1) entre as
+    // playlists do usuário; "midia" é o índice no catálogo gerado. Campos que não se aplicam valem -1:
+    // ADICIONAR: midia (entra no fim) | REMOVER: posicao | MOVER: posicao -> destino
+    // COPIAR: playlist -> nova playlist "destino" | CRIAR_PLAYLIST: playlist
+    record Acao(Tipo tipo, int usuario, int playlist, long midia, int posicao, int destino) {}
+
+    // Campos de uma mídia gerada, antes de virar Midia (o CSV não precisa do objeto).
+    private record Item(String tipo, String titulo, String artista, int duracaoSegundos, Genero genero, String narrador) {}
+
+    private final long semente;
+    private final long quantidade;
+    private final Zipf artistas;
+
+    GeradorCarga(long semente, long quantidade) {
+        if (quantidade < 0) throw new IllegalArgumentException("Quantidade deve ser >= 0");
+        this.semente = semente;
+        this.quantidade = quantidade;
+        this.artistas = new Zipf(Math.max(1, quantidade / MIDIAS_POR_ARTISTA), EXPOENTE_ARTISTAS);
+    }
+
+    long quantidade() { return quantidade; }
+
+    // Mídias 0..quantidade-1, geradas na hora.
+    @Override
+    public Iterator<Midia> iterator() {
+        return new Iterator<>() {
+            private long proxima = 0;
+            @Override public boolean hasNext() { return proxima < quantidade; }
+            @Override public Midia next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                return midia(proxima++);
+            }
+        };
+    }
+
+    // A mídia de índice i: chamadas repetidas dão mídias com os mesmos dados (ids diferentes).
+    Midia midia(long i) {
+        Item item = item(i);
+        return switch (item.tipo()) {
+            case "musica" -> new Musica(item.titulo(), item.artista(), item.duracaoSegundos(), item.genero());
+            case "podcast" -> new Podcast(item.titulo(), item.artista(), item.duracaoSegundos());
+            default -> new Audiobook(item.titulo(), item.artista(), item.narrador(), item.duracaoSegundos());
+        };
+    }
+
+    // O catálogo inteiro no formato CSV do ImportadorCatalogo, com cabeçalho.
+    void escreverCsv(Appendable saida) throws IOException {
+        saida.append("tipo,titulo,artista,duracaoSegundos,genero,narrador\n");
+        StringBuilder sb = new StringBuilder(128);
+        for (long i = 0; i < quantidade; i++) {
+            Item item = item(i);
+            sb.setLength(0);
+            sb.append(item.tipo()).append(',').append(item.titulo()).append(',').append(item.artista()).append(',')
+              .append(item.duracaoSegundos()).append(',').append(item.genero().name());
+            if (item.narrador() != null) sb.append(',').append(item.narrador());
+            saida.append(sb.append('\n'));
+        }
+    }
+
+    private Item item(long i) {
+        SplittableRandom r = new SplittableRandom(misturar(semente + i * 0x9E3779B97F4A7C15L));
+        long artista = artistas.sortear(r);
+        String titulo = PALAVRAS[r.nextInt(PALAVRAS.length)] + " " + PALAVRAS[r.nextInt(PALAVRAS.length)] + " " + i;
+        Genero genero = r.nextDouble() < FIDELIDADE_GENERO ? generoPrincipal(artista) : sortearGenero(r.nextDouble());
+        int tipo = r.nextInt(100);
+        if (tipo < 80) return new Item("musica", titulo, "Artista " + artista, segundos(r, 210, 0.25, 30, 1200), genero, null);
+        if (tipo < 95) return new Item("podcast", titulo, "Apresentador " + artista, segundos(r, 2700, 0.5, 300, 14400), Genero.PODCAST, null);
+        return new Item("audiobook", titulo, "Autor " + artista, segundos(r, 28800, 0.45, 3600, 144000), Genero.AUDIOBOOK,
+                "Narrador " + r.nextInt(500));
+    }
+
+    // Fluxo de "operacoes" edições (Long.MAX_VALUE = sem fim) de "usuarios" usuários sobre as
+    // próprias playlists. Cada edição sorteia um usuário; quem ainda não tem playlist cria a primeira.
+    // Depois: ~60% inclusões (mídia sorteada por popularidade, Zipf sobre os índices do catálogo),
+    // 20% remoções, 12% movimentações, 4% playlists novas e 4% cópias. Uma ação impossível no estado
+    // atual (remover de playlist vazia, criar além de MAXIMO_PLAYLISTS) passa para a seguinte da lista.
+    // Estado: um byte e MAXIMO_PLAYLISTS ints por usuário.
+    Iterator<Acao> carga(int usuarios, long operacoes) {
+        if (usuarios < 1) throw new IllegalArgumentException("Informe ao menos um usuário");
+        SplittableRandom r = new SplittableRandom(misturar(~semente));
+        Zipf popularidade = new Zipf(Math.max(1, quantidade), EXPOENTE_POPULARIDADE);
+        byte[] playlists = new byte[usuarios];
+        int[] tamanhos = new int[usuarios * MAXIMO_PLAYLISTS];
+        return new Iterator<>() {
+            private long restantes = operacoes;
+
+            @Override public boolean hasNext() { return restantes > 0; }
+
+            @Override
+            public Acao next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                restantes--;
+                int u = r.nextInt(usuarios);
+                int n = playlists[u];
+                if (n == 0) {
+                    playlists[u] = 1;
+                    return new Acao(Tipo.CRIAR_PLAYLIST, u, 0, -1, -1, -1);
+                }
+                int p = r.nextInt(n);
+                int base = u * MAXIMO_PLAYLISTS;
+                int tamanho = tamanhos[base + p];
+                int sorteio = r.nextInt(100);
+                if (sorteio < 4 && n < MAXIMO_PLAYLISTS) {
+                    playlists[u]++;
+                    return new Acao(Tipo.CRIAR_PLAYLIST, u, n, -1, -1, -1);
+                }
+                if (sorteio < 8 && n < MAXIMO_PLAYLISTS) {
+                    playlists[u]++;
+                    tamanhos[base + n] = tamanho;
+                    return new Acao(Tipo.COPIAR, u, p, -1, -1, n);
+                }
+                if (sorteio < 28 && tamanho > 0) {
+                    tamanhos[base + p]--;
+                    return new Acao(Tipo.REMOVER, u, p, -1, r.nextInt(tamanho), -1);
+                }
+                if (sorteio < 40 && tamanho > 1) {
+                    return new Acao(Tipo.MOVER, u, p, -1, r.nextInt(tamanho), r.nextInt(tamanho));
+                }
+                tamanhos[base + p]++;
+                return new Acao(Tipo.ADICIONAR, u, p, popularidade.sortear(r) - 1, -1, -1);
+            }
+        };
+    }
+
+    // Gênero principal do artista: fixo para cada (semente, artista).
+    private Genero generoPrincipal(long artista) {
+        return sortearGenero((misturar(semente ^ (artista * 0xC2B2AE3D27D4EB4FL)) >>> 11) * 0x1.0p-53);
+    }
+
+    private static Genero sortearGenero(double u) {
+        double alvo = u * GENEROS_ACUMULADOS[GENEROS_ACUMULADOS.length - 1];
+        int i = 0;
+        while (i < GENEROS_ACUMULADOS.length - 1 && GENEROS_ACUMULADOS[i] <= alvo) i++;
+        return Genero.values()[i];
+    }
+
+    // Log-normal com a mediana dada, limitada a [minimo, maximo].
+    private static int segundos(SplittableRandom r, double mediana, double desvio, int minimo, int maximo) {
+        long valor = Math.round(mediana * Math.exp(desvio * r.nextGaussian()));
+        return (int) Math.max(minimo, Math.min(maximo, valor));
+    }
+
+    private static double[] acumular(double... pesos) {
+        double[] acumulados = new double[pesos.length];
+        double soma = 0;
+        for (int i = 0; i < pesos.length; i++) acumulados[i] = soma += pesos[i];
+        return acumulados;
+    }
+
+    // fmix64 do MurmurHash3: sementes vizinhas viram estados bem diferentes.
+    private static long misturar(long x) {
+        x = (x ^ (x >>> 33)) * 0xff51afd7ed558ccdL;
+        x = (x ^ (x >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return x ^ (x >>> 33);
+    }
+
+    // Sorteio de 1..n com P(k) proporcional a 1/k^s por rejeição-inversão (Hörmann e
+    // Derflinger): custo e memória constantes mesmo com n na casa dos bilhões, sem
+    // tabela de probabilidades acumuladas.
+    static final class Zipf {
+        private final long n;
+        private final double s, integralX1, integralN, limiteAceite;
+
+        Zipf(long n, double s) {
+            this.n = n;
+            this.s = s;
+            this.integralX1 = integral(1.5) - 1;
+            this.integralN = integral(n + 0.5);
+            this.limiteAceite = 2 - inversaIntegral(integral(2.5) - h(2));
+        }
+
+        long sortear(SplittableRandom r) {
+            while (true) {
+                double u = integralN + r.nextDouble() * (integralX1 - integralN);
+                double x = inversaIntegral(u);
+                long k = Math.max(1, Math.min(n, (long) (x + 0.5)));
+                if (k - x <= limiteAceite || u >= integral(k + 0.5) - h(k)) return k;
+            }
+        }
+
+        private double h(double x) { return Math.exp(-s * Math.log(x)); }
+
+        // Primitiva de h: (x^(1-s) - 1) / (1-s), ou log(x) quando s = 1.
+        private double integral(double x) {
+            double logX = Math.log(x);
+            return auxiliar2((1 - s) * logX) * logX;
+        }
+
+        private double inversaIntegral(double x) {
+            return Math.exp(auxiliar1(Math.max(-1, x * (1 - s))) * x);
+        }
+
+        // log(1+x)/x e (e^x-1)/x, estáveis perto de zero
+        private static double auxiliar1(double x) {
+            return Math.abs(x) > 1e-8 ? Math.log1p(x) / x : 1 - x * (0.5 - x * (1.0 / 3 - 0.25 * x));
+        }
+
+        private static double auxiliar2(double x) {
+            return Math.abs(x) > 1e-8 ? Math.expm1(x) / x : 1 + x * 0.5 * (1 + x / 3 * (1 + 0.25 * x));
+        }
+    }
+}
+
+/****************************
+ * BENCHMARKS               *
+ ****************************/
+// Benchmarks dos caminhos quentes do catálogo, das buscas e das playlists, sem JMH
+// (não há arquivo de build): cada cenário tem rodadas de aquecimento e rodadas
+// medidas de tempo fixo, e os resultados vão para um campo volátil para o JIT não
+// descartar o trabalho. Cenários e saída são os mesmos do BenchmarkCatalago da
+// versão corrigida, para comparar as duas implementações linha a linha.
+// Saída: arvore;cenario;tamanho;ns_op_media;ns_op_melhor
+// Os cenários "_concorrente" dividem o tempo total pelas operações de todas as threads.
+// Sobrecarga das métricas: o mesmo filtro em duas JVMs, uma delas com -Dminispotify.metricas=false
+// (desligar e religar na mesma JVM mede também o JIT já aquecido pelo cenário anterior).
+final class Benchmarks {
+    private static final int RODADAS_AQUECIMENTO = 3, RODADAS_MEDIDAS = 5;
+    private static final long NANOS_POR_RODADA = 200_000_000L;
+    private static final int MAXIMO_PLAYLIST = 100_000;
+    private static final int USUARIOS_CARGA = 1000;
+    private static final long CAPACIDADE_CACHE_ZIPF = 256L << 10;      // cache pequeno dos cenários cache_zipf_*
+
+    private static volatile long consumo;
+
+    private interface Operacao { long executar(int i); }
+
+    private Benchmarks() {}
+
+    // "tamanhos": lista separada por vírgula; "filtro": só cenários cujo nome contém o texto.
+    static void executar(String tamanhos, String filtro) throws InterruptedException {
+        System.out.println("arvore;cenario;tamanho;ns_op_media;ns_op_melhor");
+        for (String t : tamanhos.split(",")) executar(Integer.parseInt(t.trim()), filtro);
+    }
+
+    private static void executar(int tamanho, String filtro) throws InterruptedException {
+        List<Midia> midias = gerar(tamanho, 42);
+        int[] sorteados = new Random(7).ints(4096, 0, tamanho).toArray();
+
+        if ("catalogo_adicionar".contains(filtro)) {
+            // Monta o catálogo inteiro a cada operação; o resultado sai por item.
+            double[] r = medir(i -> {
+                Catalogo c = new Catalogo();
+                for (Midia m : midias) c.adicionar(m);
+                return c.tamanho();
+            });
+            imprimir("catalogo_adicionar", tamanho, r[0] / tamanho, r[1] / tamanho);
+        }
+
+        // Sem cache de consultas: as buscas medem os índices (o cache tem cenários próprios, no fim).
+        Catalogo catalogo = montar(midias, new CacheConsultas(CacheConsultas.Politica.NENHUMA, 0));
+
+        rodar("buscar_titulo", tamanho, filtro, i -> catalogo.buscarPorTitulo(midias.get(sorteados[i & 4095]).getTitulo()).size());
+        // Referência: a busca linear, comparando o título normalizado de cada mídia.
+        rodar("buscar_titulo_linear", tamanho, filtro, i -> {
+            String termo = Normalizador.normalizar(midias.get(sorteados[i & 4095]).getTitulo());
+            int achadas = 0;
+            for (Midia m : midias) if (m.getTituloNormalizado().equals(termo)) achadas++;
+            return achadas;
+        });
+        rodar("buscar_artista", tamanho, filtro, i -> catalogo.buscarPorArtista(midias.get(sorteados[i & 4095]).getArtistaOuAutor()).size());
+        // Custo do registro sozinho, menos o do laço de medição (referencia_vazia)
+        rodar("metricas_registro", tamanho, filtro, i -> {
+            long inicio = Metricas.iniciar(Metricas.Operacao.BUSCAR_TITULO);
+            Metricas.concluir(Metricas.Operacao.BUSCAR_TITULO, inicio);
+            return inicio;
+        });
+        rodar("referencia_vazia", tamanho, filtro, i -> i);
+        rodar("buscar_genero", tamanho, filtro, i -> catalogo.buscarPorGenero(Genero.values()[i % Genero.values().length]).size());
+
+        int paginas = Math.max(1, tamanho / 50);
+        if ("listar_pagina".contains(filtro)) {
+            // O mesmo caminho da opção "Listar catálogo" com --page/--limit 50, sem o terminal
+            PrintStream original = System.out;
+            double[] r;
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+            try {
+                r = medir(i -> {
+                    SaidaConsole.Pagina pagina = new SaidaConsole.Pagina(1 + sorteados[i & 4095] % paginas, 50);
+                    Catalogo.Pagina trecho = catalogo.listar(pagina.inicio(Integer.MAX_VALUE), pagina.limite());
+                    try (SaidaConsole saida = new SaidaConsole()) {
+                        for (Midia m : trecho.midias()) saida.linha("- ", m);
+                    }
+                    return trecho.total();
+                });
+            } finally {
+                System.setOut(original);
+            }
+            imprimir("listar_pagina", tamanho, r[0], r[1]);
+        }
+
+        int tamanhoPlaylist = Math.min(tamanho, MAXIMO_PLAYLIST);
+        Playlist playlist = new Playlist("bench");
+        for (int i = 0; i < tamanhoPlaylist; i++) playlist.adicionar(midias.get(i));
+        Midia avulsa = new Musica("Fora da playlist", "Ninguém", 210, Genero.JAZZ);
+        rodar("playlist_adicionar_remover", tamanhoPlaylist, filtro, i -> {
+            playlist.adicionar(avulsa);
+            return playlist.removerPrimeiraOcorrenciaPorId(avulsa.getId()) ? 1 : 0;
+        });
+        rodar("playlist_contem", tamanhoPlaylist, filtro, i -> playlist.contem(midias.get(sorteados[i & 4095] % tamanhoPlaylist).getId()) ? 1 : 0);
+        rodar("playlist_duracao", tamanhoPlaylist, filtro, i -> playlist.duracaoTotalSegundos());
+        // Referência: somar as durações percorrendo a playlist.
+        rodar("playlist_duracao_soma", tamanhoPlaylist, filtro, i -> {
+            long total = 0;
+            for (Midia m : playlist.getItens()) total += m.getDuracaoSegundos();
+            return total;
+        });
+
+        rodar("normalizar", tamanho, filtro, i -> Normalizador.normalizar(midias.get(sorteados[i & 4095]).getTitulo()).length());
+        StringBuilder sb = new StringBuilder(256);
+        rodar("formatar_midia", tamanho, filtro, i -> {
+            sb.setLength(0);
+            return midias.get(sorteados[i & 4095]).acrescentar(sb).length();
+        });
+        // Referência: a mesma linha montada com String.format.
+        rodar("formatar_string_format", tamanho, filtro, i -> {
+            Midia m = midias.get(sorteados[i & 4095]);
+            int s = m.getDuracaoSegundos();
+            return String.format("[%s] %s — %s (%d:%02d, %s)", m.tipo(), m.getTitulo(), m.getArtistaOuAutor(), s / 60, s % 60, m.getGenero()).length();
+        });
+
+        int threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+        if ("catalogo_leitura_concorrente".contains(filtro)) {
+            // Buscas em "threads" leitoras enquanto uma escritora inclui e remove mídias.
+            AtomicInteger sequencia = new AtomicInteger();
+            double[] r = medirConcorrente(threads, t -> {
+                if (t == 0) {
+                    Midia m = new Musica("Escrita " + sequencia.incrementAndGet(), "Bench", 200, Genero.POP);
+                    catalogo.adicionar(m);
+                    return catalogo.remover(m.getId()) == null ? 0 : 1;
+                }
+                return catalogo.buscarPorArtista(midias.get(sorteados[(t * 31 + sequencia.get()) & 4095]).getArtistaOuAutor()).size();
+            });
+            imprimir("catalogo_leitura_concorrente", tamanho, r[0], r[1]);
+        }
+        if ("catalogo_leitura_concorrente_cache".contains(filtro)) {
+            // Só leitoras, com o cache padrão (-Dminispotify.cache): quase todas as buscas acertam,
+            // então o que se mede é a concorrência do próprio cache.
+            CacheConsultas cache = CacheConsultas.configurado();
+            Catalogo comCache = montar(midias, cache);
+            double[] r = medirConcorrente(threads, t -> {
+                int i = ThreadLocalRandom.current().nextInt();
+                return comCache.buscarPorArtista(midias.get(sorteados[i & 4095]).getArtistaOuAutor()).size();
+            });
+            imprimir("catalogo_leitura_concorrente_cache", tamanho, r[0], r[1]);
+            System.err.printf(Locale.ROOT, "# catalogo_leitura_concorrente_cache;%d: %d threads, acertos %.1f%%%n", tamanho, threads, 100 * cache.taxaAcertos());
+        }
+        if ("sessoes_concorrentes".contains(filtro)) {
+            // Uma sessão por thread, cada uma editando a playlist do próprio usuário.
+            RegistroUsuarios registro = new RegistroUsuarios();
+            for (int t = 0; t < threads; t++) {
+                registro.cadastrar("Bench " + t, "bench" + t + "@exemplo.com", u -> u.criarPlaylist("favoritas"));
+            }
+            double[] r = medirConcorrente(threads, t -> {
+                Usuario u = registro.obter("bench" + t + "@exemplo.com");
+                Midia m = midias.get(sorteados[(t * 131) & 4095]);
+                return u.comTrava(() -> {
+                    Playlist p = u.obterPlaylist("favoritas");
+                    p.adicionar(m);
+                    p.removerPrimeiraOcorrenciaPorId(m.getId());
+                    return p.tamanho();
+                });
+            });
+            imprimir("sessoes_concorrentes", tamanho, r[0], r[1]);
+        }
+
+        GeradorCarga gerador = new GeradorCarga(42, tamanho);
+        rodar("gerar_midia", tamanho, filtro, i -> gerador.midia(i % tamanho).getTitulo().length());
+        if ("carga_playlists".contains(filtro)) {
+            // Edições da carga sintética de USUARIOS_CARGA usuários; inclui o custo do gerador (ver gerar_midia).
+            RegistroUsuarios registro = new RegistroUsuarios();
+            for (int u = 0; u < USUARIOS_CARGA; u++) registro.cadastrar("Carga " + u, "carga" + u + "@exemplo.com", x -> {});
+            Iterator<GeradorCarga.Acao> carga = gerador.carga(USUARIOS_CARGA, Long.MAX_VALUE);
+            double[] r = medir(i -> aplicar(carga.next(), registro, midias));
+            imprimir("carga_playlists", tamanho, r[0], r[1]);
+        }
+        medirCache(midias, tamanho, filtro);
+    }
+
+    // buscar_genero_cache: buscar_genero com W-TinyLFU que comporta todos os gêneros (só acertos). cache_zipf_*: artistas
+    // populares (os das mídias sorteadas seguem a Zipf do gerador) e 30% de títulos quase sempre
+    // inéditos, num cache pequeno para haver despejos; a taxa de acertos sai no stderr.
+    private static void medirCache(List<Midia> midias, int tamanho, String filtro) {
+        if ("buscar_genero_cache".contains(filtro)) {
+            // As listas por gênero carregam as mídias montadas (~120 bytes cada): o cache tem de caber todas.
+            Catalogo catalogo = montar(midias, new CacheConsultas(CacheConsultas.Politica.TINY_LFU, Math.max(8L << 20, 256L * tamanho)));
+            double[] r = medir(i -> catalogo.buscarPorGenero(Genero.values()[i % Genero.values().length]).size());
+            imprimir("buscar_genero_cache", tamanho, r[0], r[1]);
+        }
+        int[] sorteados = new Random(11).ints(1 << 16, 0, tamanho).toArray();
+        for (CacheConsultas.Politica politica : CacheConsultas.Politica.values()) {
+            String cenario = "cache_zipf_" + politica.name().toLowerCase(Locale.ROOT);
+            if (!cenario.contains(filtro)) continue;
+            CacheConsultas cache = new CacheConsultas(politica, CAPACIDADE_CACHE_ZIPF);
+            Catalogo catalogo = montar(midias, cache);
+            double[] r = medir(i -> {
+                Midia m = midias.get(sorteados[i & 0xFFFF]);
+                return (i % 10 < 3 ? catalogo.buscarPorTitulo(m.getTitulo()) : catalogo.buscarPorArtista(m.getArtistaOuAutor())).size();
+            });
+            imprimir(cenario, tamanho, r[0], r[1]);
+            System.err.printf(Locale.ROOT, "# %s;%d: acertos %.1f%%, despejos %d%n", cenario, tamanho, 100 * cache.taxaAcertos(), cache.despejos());
+        }
+    }
+
+    private static Catalogo montar(List<Midia> midias, CacheConsultas cache) {
+        Catalogo catalogo = new Catalogo(false, cache);
+        catalogo.adicionarTodos(midias);
+        return catalogo;
+    }
+
+    // Catálogo do GeradorCarga (artistas em Zipf, gêneros e durações por tipo), em memória.
+    static List<Midia> gerar(int quantidade, long semente) {
+        List<Midia> midias = new ArrayList<>(quantidade);
+        for (Midia m : new GeradorCarga(semente, quantidade)) midias.add(m);
+        return midias;
+    }
+
+    // Aplica uma edição da carga sintética direto nas playlists (sem diário); devolve o tamanho resultante.
+    private static long aplicar(GeradorCarga.Acao a, RegistroUsuarios registro, List<Midia> midias) {
+        Usuario u = registro.obter("carga" + a.usuario() + "@exemplo.com");
+        String nome = "p" + a.playlist();
+        switch (a.tipo()) {
+            case CRIAR_PLAYLIST -> u.criarPlaylist(nome);
+            case COPIAR -> u.copiarPlaylist(nome, "p" + a.destino());
+            case ADICIONAR -> u.obterPlaylist(nome).adicionar(midias.get((int) a.midia()));
+            case REMOVER -> u.obterPlaylist(nome).removerNaPosicao(a.posicao());
+            case MOVER -> u.obterPlaylist(nome).mover(a.posicao(), a.destino());
+        }
+        return u.obterPlaylist(nome).tamanho();
+    }
+
+    private static void rodar(String cenario, int tamanho, String filtro, Operacao operacao) {
+        if (!cenario.contains(filtro)) return;
+        double[] r = medir(operacao);
+        imprimir(cenario, tamanho, r[0], r[1]);
+    }
+
+    // {média, melhor} em ns por operação nas rodadas medidas.
+    private static double[] medir(Operacao operacao) {
+        for (int r = 0; r < RODADAS_AQUECIMENTO; r++) rodada(operacao);
+        double soma = 0, melhor = Double.MAX_VALUE;
+        for (int r = 0; r < RODADAS_MEDIDAS; r++) {
+            double ns = rodada(operacao);
+            soma += ns;
+            melhor = Math.min(melhor, ns);
+        }
+        return new double[] { soma / RODADAS_MEDIDAS, melhor };
+    }
+
+    // Repete a operação até passar NANOS_POR_RODADA (ao menos uma vez).
+    private static double rodada(Operacao operacao) {
+        long acumulado = 0;
+        int operacoes = 0;
+        long inicio = System.nanoTime(), agora;
+        do {
+            acumulado += operacao.executar(operacoes++);
+            agora = System.nanoTime();
+        } while (agora - inicio < NANOS_POR_RODADA);
+        consumo += acumulado;
+        return (agora - inicio) / (double) operacoes;
+    }
+
+    // Como medir(), com "threads" threads rodando juntas; a operação recebe o número da thread.
+    private static double[] medirConcorrente(int threads, Operacao operacao) throws InterruptedException {
+        for (int r = 0; r < RODADAS_AQUECIMENTO; r++) rodadaConcorrente(threads, operacao);
+        double soma = 0, melhor = Double.MAX_VALUE;
+        for (int r = 0; r < RODADAS_MEDIDAS; r++) {
+            double ns = rodadaConcorrente(threads, operacao);
+            soma += ns;
+            melhor = Math.min(melhor, ns);
+        }
+        return new double[] { soma / RODADAS_MEDIDAS, melhor };
+    }
+
+    private static double rodadaConcorrente(int threads, Operacao operacao) throws InterruptedException {
+        long[] operacoes = new long[threads];
+        CountDownLatch largada = new CountDownLatch(1);
+        Thread[] trabalhadoras = new Thread[threads];
+        long[] fim = new long[1];
+        for (int t = 0; t < threads; t++) {
+            int numero = t;
+            trabalhadoras[t] = new Thread(() -> {
+                try { largada.await(); } catch (InterruptedException e) { return; }
+                long acumulado = 0, n = 0;
+                long limite = fim[0];
+                while (System.nanoTime() < limite) { acumulado += operacao.executar(numero); n++; }
+                operacoes[numero] = n;
+                consumo += acumulado;
+            });
+            trabalhadoras[t].start();
+        }
+        long inicio = System.nanoTime();
+        fim[0] = inicio + NANOS_POR_RODADA;
+        largada.countDown();
+        for (Thread t : trabalhadoras) t.join();
+        long total = Math.max(1, Arrays.stream(operacoes).sum());
+        return (System.nanoTime() - inicio) / (double) total;
+    }
+
+    private static void imprimir(String cenario, int tamanho, double media, double melhor) {
+        System.out.printf(Locale.ROOT, "chatgpt;%s;%d;%.1f;%.1f%n", cenario, tamanho, media, melhor);
+    }
+}
+
+/****************************
+ * GERADOR DE CARGA HTTP    *
+ ****************************/
+// Cliente de carga para a API: mantém "conexoes" requisições em andamento o tempo
+// todo (cada conexão envia a próxima assim que recebe a resposta) durante
+// "segundos", e mede a latência de cada uma. Cada conexão cadastra o próprio
+// usuário e uma playlist; depois ~80% das requisições são buscas/sugestões e ~20%
+// inclusões na playlist.
+final class CargaHttp {
+    private static final String[] PREFIXOS = {"a", "b", "c", "d", "e", "g", "l", "m", "n", "o", "r", "s", "t"};
+    private static final int MAX_AMOSTRAS = 4_000_000;
+
+    private final HttpClient cliente = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(30))
+            .build();
+    private final String base;
+    private final long[] latencias = new long[MAX_AMOSTRAS]; // em microssegundos
+    private final AtomicInteger amostras = new AtomicInteger();
+    private final AtomicInteger falhas = new AtomicInteger();
+    private final List<String> ids = new ArrayList<>();
+    private volatile long prazo;
+
+    private CargaHttp(String base) {
+        this.base = base.endsWith("/") ? base.substring(0, base.length() - 1) : base;
+    }
+
+    static void executar(String url, int conexoes, int segundos) throws Exception {
+        CargaHttp carga = new CargaHttp(url);
+        carga.prepararIds();
+        String execucao = Long.toString(System.currentTimeMillis(), 36);
+        CountDownLatch fim = new CountDownLatch(conexoes);
+        carga.prazo = Long.MAX_VALUE;
+        long inicio = System.nanoTime();
+        for (int c = 0; c < conexoes; c++) carga.abrir(c, execucao, fim);
+        carga.prazo = System.nanoTime() + segundos * 1_000_000_000L;
+        fim.await();
+        double decorrido = (System.nanoTime() - inicio) / 1e9;
+        carga.relatar(conexoes, decorrido);
+    }
+
+    // Ids de mídias do catálogo para as inclusões em playlist.
+    private void prepararIds() throws IOException, InterruptedException {
+        HttpResponse<String> r = cliente.send(HttpRequest.newBuilder(URI.create(base + "/midias?limite=1000")).build(),
+                HttpResponse.BodyHandlers.ofString());
+        Matcher m = Pattern.compile("\"id\":\"([^\"]+)\"").matcher(r.body());
+        while (m.find()) ids.add(m.group(1));
+        if (ids.isEmpty()) throw new IllegalStateException("Catálogo vazio em " + base);
+    }
+
+    // Cadastro e playlist da conexão, depois o laço de requisições.
+    private void abrir(int conexao, String execucao, CountDownLatch fim) {
+        String email = "carga" + conexao + "-" + execucao + "@exemplo.com";
+        String usuario = base + "/usuarios/" + URLEncoder.encode(email, StandardCharsets.UTF_8);
+        enviar(post(base + "/usuarios", "{\"nome\":\"Carga " + conexao + "\",\"email\":\"" + email + "\"}"))
+                .thenCompose(r -> enviar(post(usuario + "/playlists", "{\"nome\":\"favoritas\"}")))
+                .whenComplete((r, e) -> proxima(new Random(conexao), usuario + "/playlists/favoritas/itens", fim));
+    }
+
+    private void proxima(Random aleatorio, String itens, CountDownLatch fim) {
+        if (System.nanoTime() >= prazo) {
+            fim.countDown();
+            return;
+        }
+        HttpRequest requisicao;
+        int sorteio = aleatorio.nextInt(10);
+        if (sorteio < 2) {
+            requisicao = post(itens, "{\"id\":\"" + ids.get(aleatorio.nextInt(ids.size())) + "\"}");
+        } else if (sorteio < 5) {
+            requisicao = get(base + "/sugestoes?prefixo=" + PREFIXOS[aleatorio.nextInt(PREFIXOS.length)]);
+        } else {
+            requisicao = get(base + "/midias?q=" + PREFIXOS[aleatorio.nextInt(PREFIXOS.length)] + "&limite=20");
+        }
+        enviar(requisicao).whenComplete((r, e) -> proxima(aleatorio, itens, fim));
+    }
+
+    private CompletableFuture<HttpResponse<Void>> enviar(HttpRequest requisicao) {
+        long inicio = System.nanoTime();
+        return cliente.sendAsync(requisicao, HttpResponse.BodyHandlers.discarding()).whenComplete((r, e) -> {
+            if (e != null || r.statusCode() >= 500) falhas.incrementAndGet();
+            int i = amostras.getAndIncrement();
+            if (i < MAX_AMOSTRAS) latencias[i] = (System.nanoTime() - inicio) / 1000;
+        });
+    }
+
+    private static HttpRequest get(String url) {
+        return HttpRequest.newBuilder(URI.create(url)).timeout(Duration.ofSeconds(60)).build();
+    }
+
+    private static HttpRequest post(String url, String json) {
+        return HttpRequest.newBuilder(URI.create(url)).timeout(Duration.ofSeconds(60))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(json)).build();
+    }
+
+    private void relatar(int conexoes, double segundos) {
+        int n = Math.min(amostras.get(), MAX_AMOSTRAS);
+        long[] ordenadas = Arrays.copyOf(latencias, n);
+        Arrays.sort(ordenadas);
+        System.out.printf("Conexões: %d | Requisições: %d em %.1f s (%.0f req/s) | Falhas: %d%n",
+                conexoes, amostras.get(), segundos, amostras.get() / segundos, falhas.get());
+        if (n == 0) return;
+        System.out.printf("Latência (ms): p50 %.2f | p90 %.2f | p99 %.2f | p99.9 %.2f | máx %.2f%n",
+                percentil(ordenadas, 0.50), percentil(ordenadas, 0.90), percentil(ordenadas, 0.99),
+                percentil(ordenadas, 0.999), ordenadas[n - 1] / 1000.0);
+    }
+
+    private static double percentil(long[] ordenadas, double p) {
+        return ordenadas[Math.min(ordenadas.length - 1, (int) (p * ordenadas.length))] / 1000.0;
+    }
+}
+
+/************************
+ * APLICAÇÃO (CLI)      *
+ ************************/
+public class Mini_Spotify_ChatGPT {
+    private static final Scanner scan = new Scanner(System.in);
+    // -Dminispotify.foraDoHeap=true guarda as colunas do catálogo fora do heap
+    private static final Catalogo catalogo = new Catalogo(Boolean.getBoolean("minispotify.foraDoHeap"));
+    private static final RegistroUsuarios usuarios = new RegistroUsuarios();
+    // Usuário da sessão do console
+    private static Usuario usuarioAtual = null;
+    // Arquivo onde o estado é salvo ao sair e lido ao iniciar
+    private static final Path arquivoSnapshot = Paths.get(System.getProperty("minispotify.snapshot", "minispotify.snap"));
+    // Diário com as mutações feitas desde o último snapshot (reaplicado ao iniciar)
+    private static final Path arquivoDiario = Paths.get(arquivoSnapshot + ".log");
+    private static final DiarioMutacoes.Durabilidade durabilidade =
+            DiarioMutacoes.Durabilidade.valueOf(System.getProperty("minispotify.durabilidade", "EM_LOTE"));
+    private static DiarioMutacoes diario = null;
+    private static final Object EXCLUSAO = new Object();   // uma exclusão de mídia por vez
+    private static long geracao = 0;
+
+    // Tipos de registro do diário
+    private static final byte REG_USUARIO = 1, REG_PLAYLIST = 2, REG_ITEM_ADICIONADO = 3, REG_ITEM_REMOVIDO = 4,
+            REG_PLAYLIST_REMOVIDA = 5, REG_ITEM_MOVIDO = 6, REG_PLAYLIST_COPIADA = 7, REG_EDICOES_DESFEITAS = 8,
+            REG_MIDIA_EXCLUIDA = 9;
+
+    // Sem argumentos: menu no console. "--servidor [porta]": API HTTP.
+    // "--listar [--page N] [--limit N]": imprime o catálogo e sai.
+    // "--carga [url] [conexoes] [segundos]": gerador de carga contra uma API já no ar.
+    // "--benchmark [tamanhos] [filtro]": mede os caminhos quentes em catálogos gerados.
+    // "--gerar quantidade [semente] [arquivo.csv]": catálogo sintético em CSV (padrão: saída padrão).
+    public static void main(String[] args) throws Exception {
+        if (args.length > 1 && args[0].equals("--gerar")) {
+            GeradorCarga gerador = new GeradorCarga(args.length > 2 ? Long.parseLong(args[2]) : 42, Long.parseLong(args[1]));
+            try (Writer saida = args.length > 3
+                    ? Files.newBufferedWriter(Paths.get(args[3]), StandardCharsets.UTF_8)
+                    : new OutputStreamWriter(new BufferedOutputStream(System.out, 1 << 16), StandardCharsets.UTF_8)) {
+                gerador.escreverCsv(saida);
+            }
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--benchmark")) {
+            Benchmarks.executar(args.length > 1 ? args[1] : "1000,100000,1000000", args.length > 2 ? args[2] : "");
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--carga")) {
+            CargaHttp.executar(args.length > 1 ? args[1] : "http://localhost:8080",
+                    args.length > 2 ? Integer.parseInt(args[2]) : 1000,
+                    args.length > 3 ? Integer.parseInt(args[3]) : 30);
+            return;
+        }
+        if (!carregarEstado()) return;
+        // Métricas no menu (opção 13) e no JMX, para o console e para a API
+        Metricas.registrarMedidores(catalogo::medidores);
+        Metricas.registrarMedidores(() -> Map.of("usuarios", (long) usuarios.tamanho()));
+        Metricas.registrarJmx();
+        if (args.length > 0 && args[0].equals("--servidor")) {
+            servir(args.length > 1 ? Integer.parseInt(args[1]) : 8080);
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--listar")) {
+            listarCatalogo(SaidaConsole.Pagina.ler(Arrays.copyOfRange(args, 1, args.length)));
+            if (diario != null) diario.close();
+            return;
+        }
+        System.out.println("=== Bem-vindo ao Mini Spotify ===");
+        boolean rodando = true;
+        while (rodando) {
+            try {
+                mostrarMenu();
+                String opc = scan.nextLine().trim();
+                switch (opc) {
+                    case "1" -> cadastrarUsuario();
+                    case "2" -> criarPlaylist();
+                    case "3" -> adicionarMidiaNaPlaylist();
+                    case "4" -> removerMidiaDaPlaylist();
+                    case "5" -> visualizarPlaylists();
+                    case "6" -> buscarNoCatalogo();
+                    case "7" -> listarCatalogo();
+                    case "8" -> importarCatalogo();
+                    case "9" -> entrar();
+                    case "10" -> moverMidiaNaPlaylist();
+                    case "11" -> desfazerNaPlaylist();
+                    case "12" -> copiarPlaylist();
+                    case "13" -> System.out.print(Metricas.relatorio());
+                    case "14" -> excluirDoCatalogo();
+                    case "0" -> { salvarEstado(false); System.out.println("Saindo. Até mais!"); rodando = false; }
+                    default -> System.out.println("Opção inválida. Tente novamente.\n");
+                }
+            } catch (DomainException | IllegalArgumentException e) {
+                System.out.println("[Erro] " + e.getMessage() + "\n");
+            } catch (Exception e) {
+                System.out.println("[Erro inesperado] " + e.getClass().getSimpleName() + ": " + e.getMessage());
+            }
+        }
+    }
+
+    // A API fica no ar até o processo ser encerrado (Ctrl+C); na saída é feito um checkpoint.
+    private static void servir(int porta) throws IOException {
+        ServidorHttp servidor = new ServidorHttp(porta, catalogo, usuarios);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            servidor.parar();
+            salvarEstado(false);
+        }));
+        servidor.iniciar();
+        System.out.println("API HTTP em http://localhost:" + servidor.porta() + "/ (Ctrl+C para sair)");
+    }
+
+    private static void mostrarMenu() {
+        System.out.println("\n--- Menu ---");
+        System.out.println("1) Cadastrar usuário");
+        System.out.println("2) Criar playlist");
+        System.out.println("3) Adicionar mídia em playlist");
+        System.out.println("4) Remover mídia da playlist");
+        System.out.println("5) Visualizar minhas playlists");
+        System.out.println("6) Buscar no catálogo");
+        System.out.println("7) Listar catálogo completo");
+        System.out.println("8) Importar mídias (CSV/JSONL)");
+        System.out.println("9) Entrar como outro usuário");
+        System.out.println("10) Mover mídia na playlist");
+        System.out.println("11) Desfazer alterações na playlist");
+        System.out.println("12) Copiar playlist");
+        System.out.println("13) Métricas de desempenho");
+        System.out.println("14) Excluir mídia do catálogo");
+        System.out.println("0) Sair");
+        System.out.print("Escolha: ");
+    }
+
+    private static void cadastrarUsuario() {
+        System.out.println("=== Cadastro de Usuário ===");
+        System.out.print("Digite seu nome: ");
+        String nome = scan.nextLine();
+        System.out.print("Digite seu e-mail: ");
+        String email = scan.nextLine();
+        usuarioAtual = incluirUsuario(nome, email);
+        System.out.println("Usuário cadastrado: " + usuarioAtual.getNome() + " (" + usuarioAtual.getEmail() + ")\n");
+    }
+
+    private static void entrar() {
+        System.out.print("E-mail: ");
+        usuarioAtual = usuarios.obter(scan.nextLine());
+        System.out.println("Olá, " + usuarioAtual.getNome() + "!\n");
+    }
+
+    private static void exigirUsuario() {
+        if (usuarioAtual == null) throw new UserNotFoundException("Nenhum usuário logado. Cadastre-se (opção 1) ou entre (opção 9)");
+    }
+
+    private static void criarPlaylist() {
+        exigirUsuario();
+        System.out.print("Nome da nova playlist: ");
+        String nome = scan.nextLine();
+        incluirPlaylist(usuarioAtual, nome);
+        System.out.println("Playlist criada com sucesso!\n");
+    }
+
+    private static void adicionarMidiaNaPlaylist() {
+        exigirUsuario();
+        System.out.print("Nome da playlist destino: ");
+        String nome = scan.nextLine();
+        Usuario u = usuarioAtual;
+        u.comTrava(() -> u.obterPlaylist(nome)); // valida antes de perguntar pela mídia
+        System.out.print("Buscar mídia por (1) Título, (2) Artista/Autor/Host, (3) Gênero: ");
+        String modo = scan.nextLine().trim();
+        List<Midia> resultados = new ArrayList<>();
+        switch (modo) {
+            case "1" -> {
+                System.out.print("Título exato: ");
+                resultados = catalogo.buscarPorTitulo(scan.nextLine());
+            }
+            case "2" -> {
+                System.out.print("Artista/Autor/Host exato: ");
+                resultados = catalogo.buscarPorArtista(scan.nextLine());
+            }
+            case "3" -> {
+                System.out.print("Gênero (ex: ROCK, POP, MPB, PODCAST, AUDIOBOOK): ");
+                Genero g = Genero.valueOf(scan.nextLine().trim().toUpperCase());
+                resultados = catalogo.buscarPorGenero(g);
+            }
+            default -> {
+                System.out.println("Modo inválido");
+                return;
+            }
+        }
+        if (resultados.isEmpty()) {
+            System.out.println("Nenhuma mídia encontrada.");
+            return;
+        }
+        System.out.println("Resultados:");
+        for (int i = 0; i < resultados.size(); i++) {
+            System.out.printf("%d) %s\n", i + 1, resultados.get(i));
+        }
+        System.out.print("Escolha o número para adicionar: ");
+        int idx = Integer.parseInt(scan.nextLine().trim());
+        if (idx < 1 || idx > resultados.size()) {
+            System.out.println("Índice inválido");
+            return;
+        }
+        Midia escolhida = resultados.get(idx - 1);
+        incluirItem(u, nome, escolhida);
+        System.out.println("Mídia adicionada à playlist!\n");
+    }
+
+    private static void removerMidiaDaPlaylist() {
+        exigirUsuario();
+        System.out.print("Nome da playlist: ");
+        String nome = scan.nextLine();
+        Usuario u = usuarioAtual;
+        u.comTrava(() -> u.obterPlaylist(nome));
+        System.out.print("Informe (1) índice na playlist OU (2) id da mídia: ");
+        String modo = scan.nextLine().trim();
+        if (modo.equals("1")) {
+            listarPlaylistDetalhada(u, nome);
+            System.out.print("Número do item para remover: ");
+            try {
+                int idx = Integer.parseInt(scan.nextLine().trim());
+                boolean ok = u.comTrava(() -> excluirItem(u, nome, u.obterPlaylist(nome).getItens().get(idx - 1).getId()));
+                System.out.println(ok ? "Removido!" : "Não encontrado.");
+            } catch (IndexOutOfBoundsException | NumberFormatException e) {
+                System.out.println("Índice inválido.");
+            }
+        } else if (modo.equals("2")) {
+            System.out.print("Digite o id: ");
+            String id = scan.nextLine().trim();
+            boolean ok = excluirItem(u, nome, id);
+            System.out.println(ok ? "Removido!" : "ID não encontrado na playlist.");
+        } else {
+            System.out.println("Modo inválido");
+        }
+    }
+
+    // Alterações de usuários e playlists, usadas pelo console e pela API HTTP: cada uma
+    // é aplicada sob a trava do usuário e gravada no diário antes de liberá-la.
+    static Usuario incluirUsuario(String nome, String email) {
+        return Metricas.medir(Metricas.Operacao.CADASTRAR_USUARIO, () -> usuarios.cadastrar(nome, email, u -> registrar(REG_USUARIO, u.getNome(), u.getEmail())));
+    }
+
+    static Playlist incluirPlaylist(Usuario u, String nome) {
+        return editar(Metricas.Operacao.CRIAR_PLAYLIST, u, nome, () -> {
+            u.criarPlaylist(nome);
+            Playlist p = u.obterPlaylist(nome);
+            registrar(REG_PLAYLIST, u.getEmail(), p.getNome());
+            return p;
+        });
+    }
+
+    static void excluirPlaylist(Usuario u, String nome) {
+        editar(Metricas.Operacao.EXCLUIR_PLAYLIST, u, nome, () -> {
+            String exato = u.obterPlaylist(nome).getNome();
+            u.removerPlaylist(nome);
+            registrar(REG_PLAYLIST_REMOVIDA, u.getEmail(), exato);
+            return null;
+        });
+    }
+
+    // O ordinal é obtido antes de mexer na playlist: se a mídia acabou de sair do catálogo
+    // a edição falha inteira, e se sair depois, excluirMidia a tira desta playlist também.
+    static void incluirItem(Usuario u, String playlist, Midia m) {
+        editar(Metricas.Operacao.ADICIONAR_NA_PLAYLIST, u, playlist, () -> {
+            Playlist p = u.obterPlaylist(playlist);
+            int ordinal = catalogo.ordinalDe(m.getId());
+            p.adicionar(m);
+            registrar(REG_ITEM_ADICIONADO, u.getEmail(), p.getNome(), ordinal);
+            return null;
+        });
+    }
+
+    static boolean excluirItem(Usuario u, String playlist, String id) {
+        return editar(Metricas.Operacao.REMOVER_DA_PLAYLIST, u, playlist, () -> {
+            Playlist p = u.obterPlaylist(playlist);
+            if (!p.contem(id)) return false;
+            int ordinal = catalogo.ordinalDe(id);
+            p.removerPrimeiraOcorrenciaPorId(id);
+            registrar(REG_ITEM_REMOVIDO, u.getEmail(), p.getNome(), ordinal);
+            return true;
+        });
+    }
+
+    // Exclui a mídia do catálogo e de todas as playlists. O registro entra no diário só
+    // depois de limpar as playlists: toda edição que ainda viu a mídia (incluirItem pega
+    // o ordinal sob a trava do usuário) já está no diário antes dele, e a reexecução
+    // encontra o ordinal ocupado pela mesma mídia.
+    static Midia excluirMidia(String id) {
+        synchronized (EXCLUSAO) {
+            int ordinal = catalogo.ordinalDe(id);
+            Midia m = catalogo.remover(id);
+            purgarDasPlaylists(id);
+            registrar(REG_MIDIA_EXCLUIDA, ordinal);
+            return m;
+        }
+    }
+
+    private static void purgarDasPlaylists(String id) {
+        for (Usuario u : usuarios.listar()) {
+            u.comTrava(() -> {
+                for (Playlist p : u.listarPlaylists()) p.purgar(id);
+                return null;
+            });
+        }
+    }
+
+    private static void excluirDoCatalogo() {
+        System.out.print("ID da mídia: ");
+        Midia m = excluirMidia(scan.nextLine().trim());
+        System.out.println("Excluída do catálogo e das playlists: " + m.getTitulo());
+    }
+
+    // Métricas, evento JFR e trava do usuário em volta de uma edição de playlist.
+    private static <T> T editar(Metricas.Operacao operacao, Usuario u, String playlist, Supplier<T> edicao) {
+        EventosJfr.EdicaoPlaylist evento = new EventosJfr.EdicaoPlaylist();
+        evento.begin();
+        T resultado = Metricas.medir(operacao, () -> u.comTrava(edicao));
+        if (evento.shouldCommit()) {
+            evento.operacao = operacao.nome();
+            evento.usuario = u.getEmail();
+            evento.playlist = playlist;
+            evento.commit();
+        }
+        return resultado;
+    }
+
+    // Posições a partir de 0, como em Playlist#mover.
+    static void moverItem(Usuario u, String playlist, int de, int para) {
+        editar(Metricas.Operacao.MOVER_NA_PLAYLIST, u, playlist, () -> {
+            Playlist p = u.obterPlaylist(playlist);
+            p.mover(de, para);
+            registrar(REG_ITEM_MOVIDO, u.getEmail(), p.getNome(), de, para);
+            return null;
+        });
+    }
+
+    private static void moverMidiaNaPlaylist() {
+        exigirUsuario();
+        System.out.print("Nome da playlist: ");
+        String nome = scan.nextLine();
+        Usuario u = usuarioAtual;
+        int total = u.comTrava(() -> u.obterPlaylist(nome).tamanho());
+        if (total < 2) {
+            System.out.println("A playlist precisa de pelo menos 2 itens.");
+            return;
+        }
+        try {
+            System.out.print("Número do item (1-" + total + "): ");
+            int de = Integer.parseInt(scan.nextLine().trim());
+            System.out.print("Nova posição (1-" + total + "): ");
+            int para = Integer.parseInt(scan.nextLine().trim());
+            moverItem(u, nome, de - 1, para - 1);
+            System.out.println("Movido!");
+        } catch (IndexOutOfBoundsException | NumberFormatException e) {
+            System.out.println("Posição inválida.");
+        }
+    }
+
+    static Playlist copiarPlaylist(Usuario u, String origem, String destino) {
+        return editar(Metricas.Operacao.COPIAR_PLAYLIST, u, origem, () -> {
+            Playlist copia = u.copiarPlaylist(origem, destino);
+            registrar(REG_PLAYLIST_COPIADA, u.getEmail(), u.obterPlaylist(origem).getNome(), copia.getNome());
+            return copia;
+        });
+    }
+
+    static int desfazerEdicoes(Usuario u, String playlist, int n) {
+        return editar(Metricas.Operacao.DESFAZER_EDICOES, u, playlist, () -> {
+            Playlist p = u.obterPlaylist(playlist);
+            int desfeitas = p.desfazer(n);
+            if (desfeitas > 0) registrar(REG_EDICOES_DESFEITAS, u.getEmail(), p.getNome(), desfeitas);
+            return desfeitas;
+        });
+    }
+
+    private static void desfazerNaPlaylist() {
+        exigirUsuario();
+        System.out.print("Nome da playlist: ");
+        String nome = scan.nextLine();
+        Usuario u = usuarioAtual;
+        int disponiveis = u.comTrava(() -> u.obterPlaylist(nome).edicoesDesfaziveis());
+        if (disponiveis == 0) {
+            System.out.println("Nada para desfazer nessa playlist.");
+            return;
+        }
+        System.out.print("Quantas alterações desfazer (1-" + disponiveis + ")? ");
+        try {
+            int n = Integer.parseInt(scan.nextLine().trim());
+            if (n < 1) throw new NumberFormatException();
+            System.out.println(desfazerEdicoes(u, nome, n) + " alteração(ões) desfeita(s).");
+        } catch (NumberFormatException e) {
+            System.out.println("Quantidade inválida.");
+        }
+    }
+
+    private static void copiarPlaylist() {
+        exigirUsuario();
+        System.out.print("Playlist de origem: ");
+        String origem = scan.nextLine();
+        System.out.print("Nome da cópia: ");
+        String destino = scan.nextLine();
+        Playlist copia = copiarPlaylist(usuarioAtual, origem, destino);
+        System.out.println("Playlist '" + copia.getNome() + "' criada com " + copia.tamanho() + " itens.");
+    }
+
+    private static void visualizarPlaylists() {
+        exigirUsuario();
+        Usuario u = usuarioAtual;
+        try (SaidaConsole saida = new SaidaConsole()) {
+            u.comTrava(() -> {
+                if (u.listarPlaylists().isEmpty()) saida.linha("Você ainda não tem playlists.");
+                for (Playlist p : u.listarPlaylists()) saida.resumo(p);
+                return null;
+            });
+        }
+    }
+
+    private static void listarPlaylistDetalhada(Usuario u, String nome) {
+        System.out.println(u.comTrava(() -> u.obterPlaylist(nome).resumo()));
+    }
+
+    private static void buscarNoCatalogo() {
+        System.out.println("=== Busca no Catálogo ===");
+        System.out.print("(1) Por título  (2) Por artista/autor/host  (3) Por gênero  (4) Sugestões por início: ");
+        String opc = scan.nextLine().trim();
+        if (opc.equals("4")) {
+            System.out.print("Comece a digitar: ");
+            List<String> sugestoes = catalogo.autocompletar(scan.nextLine(), 10);
+            if (sugestoes.isEmpty()) System.out.println("Nenhuma sugestão.");
+            else try (SaidaConsole saida = new SaidaConsole()) { sugestoes.forEach(t -> saida.linha("- " + t)); }
+            return;
+        }
+        List<Midia> res = switch (opc) {
+            case "1" -> { System.out.print("Título exato: "); yield catalogo.buscarPorTitulo(scan.nextLine()); }
+            case "2" -> { System.out.print("Artista/Autor/Host exato: "); yield catalogo.buscarPorArtista(scan.nextLine()); }
+            case "3" -> {
+                System.out.print("Gênero(s) (ex: ROCK, JAZZ -PODCAST): ");
+                Set<Genero> incluir = EnumSet.noneOf(Genero.class), excluir = EnumSet.noneOf(Genero.class);
+                lerGeneros(scan.nextLine(), incluir, excluir);
+                System.out.println("Total por gênero: " + catalogo.contarPorGenero(incluir, excluir));
+                yield catalogo.buscarPorGeneros(incluir, excluir);
+            }
+            default -> { System.out.println("Opção inválida"); yield List.of(); }
+        };
+        if (res.isEmpty()) System.out.println("Nenhum resultado.");
+        else try (SaidaConsole saida = new SaidaConsole()) { res.forEach(m -> saida.linha("- ", m)); }
+    }
+
+    // "ROCK, JAZZ -PODCAST": gêneros a incluir e, com "-", a excluir.
+    static void lerGeneros(String texto, Set<Genero> incluir, Set<Genero> excluir) {
+        for (String g : texto.trim().toUpperCase().split("[,\\s]+")) {
+            if (g.isEmpty()) continue;
+            if (g.startsWith("-")) excluir.add(Genero.valueOf(g.substring(1)));
+            else incluir.add(Genero.valueOf(g));
+        }
+    }
+
+    // Importações não passam pelo diário: ao final é feito um checkpoint (snapshot), também
+    // quando a importação falha no meio, se algum bloco já entrou no catálogo. Sem isso o
+    // diário seguinte apontaria para ordinais que o snapshot não tem.
+    private static void importarCatalogo() throws IOException {
+        System.out.print("Caminho do arquivo (.csv ou .jsonl): ");
+        Path arquivo = Paths.get(scan.nextLine().trim());
+        if (!Files.isRegularFile(arquivo)) throw new IllegalArgumentException("Arquivo não encontrado: " + arquivo);
+        long inicio = System.nanoTime();
+        int antes = catalogo.tamanho();
+        try {
+            ImportadorCatalogo.Relatorio relatorio = ImportadorCatalogo.importar(arquivo, catalogo, Runtime.getRuntime().availableProcessors());
+            System.out.printf("%s%nTempo: %d ms%n", relatorio, (System.nanoTime() - inicio) / 1_000_000);
+        } finally {
+            if (catalogo.tamanho() != antes) salvarEstado(true);
+        }
+    }
+
+    private static void listarCatalogo() {
+        System.out.print("Paginação (ex: --page 2 --limit 50; Enter = tudo): ");
+        listarCatalogo(SaidaConsole.Pagina.ler(scan.nextLine()));
+    }
+
+    private static void listarCatalogo(SaidaConsole.Pagina pagina) {
+        System.out.println("=== Catálogo Completo ===");
+        Catalogo.Pagina trecho = catalogo.listar(pagina.inicio(Integer.MAX_VALUE), pagina.limite() == 0 ? Integer.MAX_VALUE : pagina.limite());
+        if (trecho.total() == 0) { System.out.println("(vazio)"); return; }
+        try (SaidaConsole saida = new SaidaConsole()) {
+            saida.linha("Itens: " + trecho.total() + " | Artistas: " + catalogo.quantidadeArtistas()
+                    + " | Duração total: " + Midia.formatarDuracao((int) Math.min(Integer.MAX_VALUE, catalogo.duracaoTotalSegundos())));
+            for (Midia m : trecho.midias()) saida.linha("- ", m);
+            String rodape = pagina.rodape(trecho.total());
+            if (!rodape.isEmpty()) saida.linha(rodape);
+        }
+    }
+
+    // Snapshot (ou dados iniciais) + reaplicação do diário da mesma geração.
+    // Se o snapshot ou o diário não puderem ser lidos o programa não inicia: o estado em
+    // memória estaria incompleto e o checkpoint da saída sobrescreveria o snapshot e
+    // apagaria o diário. Os arquivos ficam intactos para serem corrigidos ou restaurados.
+    private static boolean carregarEstado() {
+        try {
+            if (Files.exists(arquivoSnapshot)) {
+                Snapshot.Conteudo conteudo = Snapshot.carregar(arquivoSnapshot, catalogo);
+                geracao = conteudo.geracao();
+                conteudo.usuarios().forEach(usuarios::adicionar);
+            } else {
+                seedCatalogo(); // dados iniciais
+            }
+        } catch (IOException | RuntimeException e) {
+            System.out.println("[Erro] Não foi possível ler " + arquivoSnapshot + ": " + e.getMessage());
+            System.out.println("Nada foi alterado. Restaure o arquivo ou mova-o para começar do zero.");
+            return false;
+        }
+        try {
+            long valido = DiarioMutacoes.reproduzir(arquivoDiario, geracao, Mini_Spotify_ChatGPT::aplicarRegistro);
+            diario = DiarioMutacoes.abrir(arquivoDiario, geracao, valido, durabilidade);
+        } catch (IOException | RuntimeException e) {
+            System.out.println("[Erro] Não foi possível recuperar " + arquivoDiario + ": " + e.getMessage());
+            System.out.println("Nada foi alterado. Corrija o diário ou mova-o para voltar ao último snapshot.");
+            return false;
+        }
+        // Com um único usuário salvo, a sessão já começa com ele
+        if (usuarios.tamanho() == 1) usuarioAtual = usuarios.listar().iterator().next();
+        return true;
+    }
+
+    // Checkpoint: grava o snapshot da próxima geração (dados e troca de nome já sincronizados
+    // quando salvar retorna) e só então descarta o diário. Se cair entre os dois passos, o
+    // diário antigo (geração anterior) é ignorado ao iniciar.
+    private static void salvarEstado(boolean continuar) {
+        long inicio = Metricas.iniciar(Metricas.Operacao.SALVAR_ESTADO);
+        try {
+            Snapshot.salvar(arquivoSnapshot, geracao + 1, catalogo, usuarios.listar());
+            geracao++;
+            if (diario != null) diario.close();
+            diario = null;
+            Files.deleteIfExists(arquivoDiario);
+            if (continuar) diario = DiarioMutacoes.abrir(arquivoDiario, geracao, -1, durabilidade);
+            System.out.println("Estado salvo em " + arquivoSnapshot);
+        } catch (IOException e) {
+            System.out.println("[Erro] Não foi possível salvar " + arquivoSnapshot + ": " + e.getMessage());
+        } finally {
+            Metricas.concluir(Metricas.Operacao.SALVAR_ESTADO, inicio);
+        }
+    }
+
+    // Grava no diário uma mutação já aplicada: campos String viram texto, Integer viram int.
+    private static void registrar(byte tipo, Object... campos) {
+        if (diario == null) throw new UncheckedIOException("Mutação aplicada, mas não gravada no diário", new IOException("Diário fechado"));
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(tipo);
+            for (Object campo : campos) {
+                if (campo instanceof Integer) out.writeInt((Integer) campo);
+                else Snapshot.escreverTexto(out, (String) campo);
+            }
+            diario.registrar(bytes.toByteArray());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Mutação aplicada, mas não gravada no diário", e);
+        }
+    }
+
+    private static void aplicarRegistro(ByteBuffer in) {
+        byte tipo = in.get();
+        switch (tipo) {
+            case REG_USUARIO -> usuarios.cadastrar(Snapshot.lerTexto(in), Snapshot.lerTexto(in), u -> {});
+            case REG_PLAYLIST -> usuarioDoRegistro(in).criarPlaylist(Snapshot.lerTexto(in));
+            case REG_PLAYLIST_REMOVIDA -> usuarioDoRegistro(in).removerPlaylist(Snapshot.lerTexto(in));
+            case REG_ITEM_ADICIONADO -> {
+                Playlist p = usuarioDoRegistro(in).obterPlaylist(Snapshot.lerTexto(in));
+                p.adicionar(catalogo.obterPorOrdinal(in.getInt()));
+            }
+            case REG_ITEM_REMOVIDO -> {
+                Playlist p = usuarioDoRegistro(in).obterPlaylist(Snapshot.lerTexto(in));
+                p.removerPrimeiraOcorrenciaPorId(catalogo.obterPorOrdinal(in.getInt()).getId());
+            }
+            case REG_ITEM_MOVIDO -> {
+                Playlist p = usuarioDoRegistro(in).obterPlaylist(Snapshot.lerTexto(in));
+                p.mover(in.getInt(), in.getInt());
+            }
+            case REG_PLAYLIST_COPIADA -> usuarioDoRegistro(in).copiarPlaylist(Snapshot.lerTexto(in), Snapshot.lerTexto(in));
+            case REG_EDICOES_DESFEITAS -> usuarioDoRegistro(in).obterPlaylist(Snapshot.lerTexto(in)).desfazer(in.getInt());
+            case REG_MIDIA_EXCLUIDA -> purgarDasPlaylists(catalogo.remover(catalogo.obterPorOrdinal(in.getInt()).getId()).getId());
+            default -> throw new IllegalStateException("Registro desconhecido no diário: " + tipo);
+        }
+    }
+
+    private static Usuario usuarioDoRegistro(ByteBuffer in) {
+        return usuarios.obter(Snapshot.lerTexto(in));
+    }
+
+    // Dados iniciais para testes
+    private static void seedCatalogo() {
+        catalogo.adicionar(new Musica("Garota de Ipanema", "Tom Jobim", 330, Genero.MPB));
+        catalogo.adicionar(new Musica("Bohemian Rhapsody", "Queen", 354, Genero.ROCK));
+        catalogo.adicionar(new Musica("Take Five", "Dave Brubeck", 325, Genero.JAZZ));
+        catalogo.adicionar(new Musica("Nocturne Op.9 No.2", "Chopin", 260, Genero.CLASSICA));
+        catalogo.adicionar(new Musica("Rolling in the Deep", "Adele", 228, Genero.POP));
+        catalogo.adicionar(new Podcast("Ciência Sem Filtro #42", "Dra. Ana Souza", 3600));
+        catalogo.adicionar(new Podcast("TechWeekly: IA na prática", "Carlos Lima", 2400));
+        catalogo.adicionar(new Audiobook("Dom Casmurro", "Machado de Assis", "João Silva", 28800));
+        catalogo.adicionar(new Audiobook("O Alienista", "Machado de Assis", "Maria Rocha", 21600));
+    }
+}